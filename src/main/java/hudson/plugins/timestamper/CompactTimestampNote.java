@@ -0,0 +1,294 @@
+package hudson.plugins.timestamper;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A compact alternative to {@link TimestampNote}, inserted at the start of each line of the console
+ * log by {@link TimestampNotesOutputStream} when the {@code
+ * hudson.plugins.timestamper.TimestampNotesOutputStream.compact} system property is set.
+ *
+ * <p>The note records the elapsed time since the start of the build as a variable-length integer
+ * followed by its signature, between a fixed preamble and postamble: {@code
+ * ESC[8mts:}<em>elapsed</em><em>signature</em>{@code ESC[0m}. Like a {@link
+ * hudson.console.ConsoleNote}, the text is concealed by terminals. Unlike a console note, it is not
+ * serialized and compressed, so it is typically 24 bytes rather than 200.
+ *
+ * <p>The elapsed time is zigzag encoded, so that negative values are also short, then written five
+ * bits at a time starting with the least significant bits. Each group of five bits is written as one
+ * of 32 characters, with a different set of 32 characters for the last group.
+ *
+ * <p>The signature is the first {@link #MAC_LENGTH} bytes of the HMAC-SHA256 of the encoded elapsed
+ * time, written as URL-safe Base64. Each build has its own random key, which is created on the
+ * controller when the build starts and stored with the build, and is sent to the agents with the
+ * console log filter. Notes are only decoded for builds which have a key, and only if their
+ * signature matches it, so that the output of a build cannot forge a time-stamp by printing a note.
+ *
+ * <p>The note does not start with {@link hudson.console.ConsoleNote#PREAMBLE}, so it is not removed
+ * from the plain text console output ({@code /consoleText}, {@link Run#getLog()} and downloads of
+ * the console log). It remains there as concealed text at the start of each line.
+ *
+ * <p>Instances are not thread-safe.
+ */
+@Restricted(NoExternalUse.class)
+public final class CompactTimestampNote {
+
+    private static final Logger LOGGER = Logger.getLogger(CompactTimestampNote.class.getName());
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /** The length in bytes of the key of each build. */
+    private static final int KEY_LENGTH = 32;
+
+    /** The number of bytes of the HMAC in each note. */
+    private static final int MAC_LENGTH = 6;
+
+    /** The number of characters of the HMAC in each note. */
+    private static final int MAC_CHARS = MAC_LENGTH * 4 / 3;
+
+    /** The URL-safe Base64 characters, which are used for the signature. */
+    private static final String MAC_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    /** The maximum number of characters of the elapsed time. */
+    private static final int MAX_DIGITS = 13;
+
+    /** Held while creating the key of a build, so that each build has one key. */
+    private static final Object KEY_LOCK = new Object();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final byte[] PREAMBLE = "\u001B[8mts:".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] POSTAMBLE = "\u001B[0m".getBytes(StandardCharsets.US_ASCII);
+
+    /** Characters for a group of five bits which is followed by another group. */
+    private static final String CONTINUATION_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ012345";
+
+    /** Characters for the last group of five bits. */
+    private static final String LAST_DIGITS = "abcdefghijklmnopqrstuvwxyz6789+/";
+
+    /** Returned by the decode methods if the line does not start with a note. */
+    public static final long NOT_A_NOTE = Long.MIN_VALUE;
+
+    /** The value of each character, or {@code -1}. Bit 5 is set for the last group. */
+    private static final byte[] DIGIT_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(DIGIT_VALUES, (byte) -1);
+        for (int i = 0; i < 32; i++) {
+            DIGIT_VALUES[CONTINUATION_DIGITS.charAt(i)] = (byte) i;
+            DIGIT_VALUES[LAST_DIGITS.charAt(i)] = (byte) (32 | i);
+        }
+    }
+
+    private final Mac mac;
+
+    /** The HMAC of the elapsed time being encoded or decoded. */
+    private final byte[] macBuffer;
+
+    /** The characters of the elapsed time being decoded. */
+    private final byte[] digits = new byte[MAX_DIGITS];
+
+    /** The expected characters of the signature being decoded. */
+    private final byte[] expectedMacChars = new byte[MAC_CHARS];
+
+    /**
+     * Create an encoder and decoder of the notes of a build.
+     *
+     * @param key the key of the build, as returned by {@link #createKey(Run)}
+     */
+    public CompactTimestampNote(byte[] key) {
+        try {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        macBuffer = new byte[mac.getMacLength()];
+    }
+
+    /**
+     * Create the key of a build which writes compact notes, or read it if it has already been
+     * created, e.g. by another {@code timestamps} block of the same Pipeline build.
+     *
+     * @param build the build, which must be running on the controller
+     * @return the key
+     * @throws IOException if the key cannot be stored with the build
+     */
+    public static byte[] createKey(Run<?, ?> build) throws IOException {
+        Path keyFile = TimestamperPaths.compactNoteKeyFile(build);
+        synchronized (KEY_LOCK) {
+            if (Files.isRegularFile(keyFile)) {
+                return Files.readAllBytes(keyFile);
+            }
+            byte[] key = new byte[KEY_LENGTH];
+            RANDOM.nextBytes(key);
+            Files.createDirectories(keyFile.getParent());
+            Files.write(keyFile, key);
+            return key;
+        }
+    }
+
+    /**
+     * Get a decoder of the notes of a build.
+     *
+     * @param build the build
+     * @return the decoder, or {@code null} if the build did not write compact notes
+     */
+    @CheckForNull
+    public static CompactTimestampNote forBuild(Run<?, ?> build) {
+        Path keyFile = TimestamperPaths.compactNoteKeyFile(build);
+        if (!Files.isRegularFile(keyFile)) {
+            return null;
+        }
+        try {
+            return new CompactTimestampNote(Files.readAllBytes(keyFile));
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Cannot read " + keyFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Encode a note.
+     *
+     * @param elapsedMillis the elapsed time in milliseconds since the start of the build
+     * @return the encoded note
+     */
+    public byte[] encode(long elapsedMillis) {
+        long value = (elapsedMillis << 1) ^ (elapsedMillis >> 63);
+        int length = 0;
+        while ((value & ~0x1FL) != 0) {
+            digits[length++] = (byte) CONTINUATION_DIGITS.charAt((int) (value & 0x1F));
+            value >>>= 5;
+        }
+        digits[length++] = (byte) LAST_DIGITS.charAt((int) value);
+
+        byte[] note = new byte[PREAMBLE.length + length + MAC_CHARS + POSTAMBLE.length];
+        System.arraycopy(PREAMBLE, 0, note, 0, PREAMBLE.length);
+        System.arraycopy(digits, 0, note, PREAMBLE.length, length);
+        sign(length, note, PREAMBLE.length + length);
+        System.arraycopy(POSTAMBLE, 0, note, PREAMBLE.length + length + MAC_CHARS, POSTAMBLE.length);
+        return note;
+    }
+
+    /**
+     * Decode the note at the start of a line of the console log, checking its signature.
+     *
+     * @return the elapsed time in milliseconds since the start of the build, or {@link #NOT_A_NOTE}
+     */
+    public long decode(CharSequence line) {
+        return decode(line, null, 0, line.length());
+    }
+
+    /**
+     * Decode the note at the start of a line of the console log, without decoding the line, and
+     * check its signature.
+     *
+     * @return the elapsed time in milliseconds since the start of the build, or {@link #NOT_A_NOTE}
+     */
+    public long decode(byte[] b, int off, int len) {
+        return decode(null, b, off, len);
+    }
+
+    /**
+     * Get the length of the note at the start of a line of the console log, which has been decoded.
+     *
+     * @param elapsedMillis the decoded elapsed time
+     * @return the length in characters or bytes
+     */
+    public static int length(long elapsedMillis) {
+        long value = (elapsedMillis << 1) ^ (elapsedMillis >> 63);
+        int digits = 1;
+        while ((value & ~0x1FL) != 0) {
+            digits++;
+            value >>>= 5;
+        }
+        return PREAMBLE.length + digits + MAC_CHARS + POSTAMBLE.length;
+    }
+
+    private long decode(CharSequence line, byte[] b, int off, int len) {
+        if (len < PREAMBLE.length + 1 + MAC_CHARS + POSTAMBLE.length) {
+            return NOT_A_NOTE;
+        }
+        for (int i = 0; i < PREAMBLE.length; i++) {
+            if (charAt(line, b, off + i) != PREAMBLE[i]) {
+                return NOT_A_NOTE;
+            }
+        }
+        long value = 0;
+        int index = PREAMBLE.length;
+        int length = 0;
+        for (int shift = 0; ; shift += 5) {
+            int c = charAt(line, b, off + index++);
+            int digit = c < DIGIT_VALUES.length ? DIGIT_VALUES[c] : -1;
+            if (digit < 0 || shift > 60) {
+                return NOT_A_NOTE;
+            }
+            digits[length++] = (byte) c;
+            value |= (long) (digit & 0x1F) << shift;
+            if ((digit & 32) != 0) {
+                // Only the shortest encoding is accepted, so that the length can be recalculated.
+                if (digit == 32 && shift > 0) {
+                    return NOT_A_NOTE;
+                }
+                break;
+            }
+            if (index == len) {
+                return NOT_A_NOTE;
+            }
+        }
+        if (len - index < MAC_CHARS + POSTAMBLE.length) {
+            return NOT_A_NOTE;
+        }
+        for (int i = 0; i < POSTAMBLE.length; i++) {
+            if (charAt(line, b, off + index + MAC_CHARS + i) != POSTAMBLE[i]) {
+                return NOT_A_NOTE;
+            }
+        }
+        sign(length, expectedMacChars, 0);
+        int mismatch = 0;
+        for (int i = 0; i < MAC_CHARS; i++) {
+            mismatch |= charAt(line, b, off + index + i) ^ expectedMacChars[i];
+        }
+        if (mismatch != 0) {
+            return NOT_A_NOTE;
+        }
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Write the signature of the characters of an elapsed time in {@link #digits}. */
+    private void sign(int length, byte[] out, int off) {
+        mac.update(digits, 0, length);
+        try {
+            mac.doFinal(macBuffer, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < MAC_LENGTH; i += 3) {
+            int bits = (macBuffer[i] & 0xFF) << 16 | (macBuffer[i + 1] & 0xFF) << 8 | (macBuffer[i + 2] & 0xFF);
+            for (int j = 0; j < 4; j++) {
+                out[off++] = (byte) MAC_DIGITS.charAt((bits >>> (18 - 6 * j)) & 0x3F);
+            }
+        }
+    }
+
+    private static int charAt(CharSequence line, byte[] b, int index) {
+        return line != null ? line.charAt(index) : b[index] & 0xFF;
+    }
+}
@@ -0,0 +1,99 @@
+package hudson.plugins.timestamper;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.plugins.timestamper.io.LogFingerprint;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Writes an index of the console log, which allows the line number at a position in the console
+ * log to be found without reading the whole log from the start.
+ *
+ * <p>The index consists of records of two 8-byte values and a 4-byte value: a position in the
+ * console log which immediately follows a new line character, the number of new line characters
+ * before that position, and the {@link LogFingerprint} of that position. A record is written after
+ * at least {@link #DEFAULT_INTERVAL} bytes of console log since the previous record.
+ */
+final class LineIndexWriter implements Closeable {
+
+    /** The minimum number of bytes of console log between index records. */
+    static final int DEFAULT_INTERVAL = Integer.getInteger(LineIndexWriter.class.getName() + ".interval", 64 * 1024);
+
+    private final Path lineIndexFile;
+
+    private final int interval;
+
+    @CheckForNull
+    private DataOutputStream lineIndexOutput;
+
+    /** The console log position of the last index record. */
+    private long lastPosition;
+
+    /**
+     * Create a new {@link LineIndexWriter}.
+     *
+     * @param lineIndexFile the index file, which is created when the first record is written
+     */
+    LineIndexWriter(Path lineIndexFile) {
+        this(lineIndexFile, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Create a new {@link LineIndexWriter}.
+     *
+     * @param lineIndexFile the index file, which is created when the first record is written
+     * @param interval the minimum number of bytes of console log between index records
+     */
+    LineIndexWriter(Path lineIndexFile, int interval) {
+        this.lineIndexFile = Objects.requireNonNull(lineIndexFile);
+        this.interval = interval;
+    }
+
+    /**
+     * Record the line number following a chunk of the console log, if an index record is due.
+     *
+     * @param b the chunk of the console log
+     * @param off the start offset of the chunk
+     * @param len the length of the chunk
+     * @param position the console log position following the chunk
+     * @param lineNumber the number of new line characters before that position
+     * @param fingerprint the bytes of the console log before the chunk
+     */
+    void write(byte[] b, int off, int len, long position, long lineNumber, LogFingerprint fingerprint)
+            throws IOException {
+        if (position - lastPosition < interval) {
+            return;
+        }
+        // Index the position following the last new line character in the chunk.
+        for (int i = off + len - 1; i >= off; i--) {
+            if (b[i] == NewlineCounter.NEWLINE) {
+                writeRecord(position - (off + len - 1 - i), lineNumber, fingerprint.fingerprint(b, off, i + 1));
+                return;
+            }
+        }
+    }
+
+    private void writeRecord(long position, long lineNumber, int fingerprint) throws IOException {
+        if (lineIndexOutput == null) {
+            Files.createDirectories(lineIndexFile.getParent());
+            lineIndexOutput = new DataOutputStream(Files.newOutputStream(lineIndexFile));
+        }
+        lineIndexOutput.writeLong(position);
+        lineIndexOutput.writeLong(lineNumber);
+        lineIndexOutput.writeInt(fingerprint);
+        lineIndexOutput.flush();
+        lastPosition = position;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        if (lineIndexOutput != null) {
+            lineIndexOutput.close();
+        }
+    }
+}
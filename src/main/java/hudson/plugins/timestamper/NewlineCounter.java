@@ -0,0 +1,43 @@
+package hudson.plugins.timestamper;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Counts the new line characters in the bytes of a console log.
+ *
+ * <p>{@link #get()} returns the word-at-a-time implementation unless the {@code
+ * hudson.plugins.timestamper.NewlineCounter.scalar} system property is set, in which case the
+ * byte-at-a-time implementation is used instead.
+ */
+@Restricted(NoExternalUse.class)
+public interface NewlineCounter {
+
+    /** The new line character. */
+    byte NEWLINE = 0x0A;
+
+    /** Examines one byte at a time. */
+    NewlineCounter SCALAR = new ScalarNewlineCounter();
+
+    /** Examines eight bytes at a time. */
+    NewlineCounter WORD_AT_A_TIME = new WordAtATimeNewlineCounter();
+
+    /**
+     * Count the new line characters in the given range of the byte array.
+     *
+     * @param b the byte array
+     * @param off the start offset
+     * @param len the number of bytes to examine
+     * @return the number of new line characters
+     */
+    int count(byte[] b, int off, int len);
+
+    /**
+     * Get the preferred implementation.
+     *
+     * @return the new line counter
+     */
+    static NewlineCounter get() {
+        return Boolean.getBoolean(NewlineCounter.class.getName() + ".scalar") ? SCALAR : WORD_AT_A_TIME;
+    }
+}
@@ -0,0 +1,17 @@
+package hudson.plugins.timestamper;
+
+/** Counts new line characters by examining one byte at a time. */
+final class ScalarNewlineCounter implements NewlineCounter {
+
+    /** {@inheritDoc} */
+    @Override
+    public int count(byte[] b, int off, int len) {
+        int count = 0;
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == NEWLINE) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package hudson.plugins.timestamper;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.console.LineTransformationOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -31,7 +32,7 @@ import java.util.Objects;
 
 /**
  * Output stream that writes each line to the provided delegate output stream after inserting a
- * {@link TimestampNote}.
+ * {@link TimestampNote}, or a {@link CompactTimestampNote} if requested.
  *
  * @author Steven G. Brown
  */
@@ -43,6 +44,13 @@ public class TimestampNotesOutputStream extends LineTransformationOutputStream {
     /** The build start time. */
     private final long buildStartTime;
 
+    /**
+     * The encoder of the {@link CompactTimestampNote}s to insert, or {@code null} to insert {@link
+     * TimestampNote}s.
+     */
+    @CheckForNull
+    private final CompactTimestampNote compactNote;
+
     /** The last note time. */
     private long lastTime;
 
@@ -56,8 +64,22 @@ public class TimestampNotesOutputStream extends LineTransformationOutputStream {
      * @param buildStartTime the build start time
      */
     public TimestampNotesOutputStream(OutputStream delegate, long buildStartTime) {
+        this(delegate, buildStartTime, null);
+    }
+
+    /**
+     * Create a new {@link TimestampNotesOutputStream}.
+     *
+     * @param delegate the delegate output stream
+     * @param buildStartTime the build start time
+     * @param compactNote the encoder of the {@link CompactTimestampNote}s to insert, or {@code null}
+     *     to insert {@link TimestampNote}s
+     */
+    public TimestampNotesOutputStream(
+            OutputStream delegate, long buildStartTime, @CheckForNull CompactTimestampNote compactNote) {
         this.delegate = Objects.requireNonNull(delegate);
         this.buildStartTime = buildStartTime;
+        this.compactNote = compactNote;
         this.lastTime = 0;
     }
 
@@ -66,7 +88,9 @@ public class TimestampNotesOutputStream extends LineTransformationOutputStream {
     protected void eol(byte[] b, int len) throws IOException {
         long now = System.currentTimeMillis();
         if (now != lastTime) {
-            lastNote = new TimestampNote(now - buildStartTime, now).encode().getBytes(StandardCharsets.UTF_8);
+            lastNote = compactNote != null
+                    ? compactNote.encode(now - buildStartTime)
+                    : new TimestampNote(now - buildStartTime, now).encode().getBytes(StandardCharsets.UTF_8);
             lastTime = now;
         }
         delegate.write(lastNote);
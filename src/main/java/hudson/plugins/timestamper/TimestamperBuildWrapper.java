@@ -23,6 +23,7 @@
  */
 package hudson.plugins.timestamper;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
@@ -32,6 +33,7 @@ import hudson.console.ConsoleLogFilter;
 import hudson.model.AbstractProject;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.plugins.timestamper.io.LiveTimestamps;
 import hudson.plugins.timestamper.io.TimestamperPaths;
 import hudson.plugins.timestamper.io.TimestampsWriter;
 import hudson.tasks.BuildWrapper;
@@ -60,6 +62,9 @@ public final class TimestamperBuildWrapper extends SimpleBuildWrapper {
 
     private static final Logger LOGGER = Logger.getLogger(TimestamperBuildWrapper.class.getName());
 
+    /** Buffer size of the time-stamps writer when the time-stamps are written in the background. */
+    private static final int BACKGROUND_FLUSH_THRESHOLD = 64 * 1024;
+
     /** Create a new {@link TimestamperBuildWrapper}. */
     @DataBoundConstructor
     public TimestamperBuildWrapper() {}
@@ -86,21 +91,43 @@ public final class TimestamperBuildWrapper extends SimpleBuildWrapper {
     private static class ConsoleLogFilterImpl extends ConsoleLogFilter implements Serializable {
         private static final long serialVersionUID = 1;
         private final File timestampsFile;
+        private final File lineIndexFile;
         private final long buildStartTime;
         private final boolean useTimestampNotes;
+        /**
+         * The key for signing a {@link CompactTimestampNote} rather than inserting a {@link
+         * TimestampNote}, if enabled by the {@code
+         * hudson.plugins.timestamper.TimestampNotesOutputStream.compact} system property. Created
+         * on the controller, so that it can be checked when the console log is displayed.
+         */
+        @CheckForNull
+        private final byte[] compactNoteKey;
+        /**
+         * Whether to write the time-stamps on a background thread, enabled by the {@code
+         * hudson.plugins.timestamper.TimestamperBuildWrapper.writeInBackground} system property.
+         */
+        private final boolean writeInBackground;
 
         ConsoleLogFilterImpl(Run<?, ?> build) {
             this.timestampsFile = TimestamperPaths.timestampsFile(build).toFile();
+            this.lineIndexFile = TimestamperPaths.lineIndexFile(build).toFile();
             this.buildStartTime = build.getStartTimeInMillis();
             useTimestampNotes = TimestampNote.useTimestampNotes(build.getClass())
                     || Boolean.getBoolean(TimestampNote.getSystemProperty());
+            compactNoteKey = useTimestampNotes
+                            && Boolean.getBoolean(TimestampNotesOutputStream.class.getName() + ".compact")
+                    ? compactNoteKey(build)
+                    : null;
+            writeInBackground = Boolean.getBoolean(TimestamperBuildWrapper.class.getName() + ".writeInBackground");
         }
 
         @SuppressWarnings("rawtypes")
         @Override
         public OutputStream decorateLogger(Run _ignore, OutputStream logger) throws IOException, InterruptedException {
             if (useTimestampNotes) {
-                return new TimestampNotesOutputStream(logger, buildStartTime);
+                CompactTimestampNote compactNote =
+                        compactNoteKey == null ? null : new CompactTimestampNote(compactNoteKey);
+                return new TimestampNotesOutputStream(logger, buildStartTime, compactNote);
             }
             Optional<MessageDigest> digest = Optional.empty();
             try {
@@ -109,14 +136,51 @@ public final class TimestamperBuildWrapper extends SimpleBuildWrapper {
                 LOGGER.log(Level.WARNING, ex.getMessage(), ex);
             }
             try {
-                TimestampsWriter timestampsWriter =
-                        new TimestampsWriter(timestampsFile.toPath(), buildStartTime, digest);
-                logger = new TimestamperOutputStream(logger, timestampsWriter);
+                if (writeInBackground) {
+                    // The queue flushes the writer after each batch of time-stamps.
+                    TimestampsWriter timestampsWriter = new TimestampsWriter(
+                            timestampsFile.toPath(),
+                            buildStartTime,
+                            digest,
+                            BACKGROUND_FLUSH_THRESHOLD,
+                            Long.MAX_VALUE);
+                    logger = new TimestamperOutputStream(
+                            logger,
+                            timestampsWriter,
+                            new TimestampsQueue(timestampsWriter),
+                            lineIndexWriter(),
+                            LiveTimestamps.register(timestampsFile.toPath()));
+                } else {
+                    TimestampsWriter timestampsWriter =
+                            new TimestampsWriter(timestampsFile.toPath(), buildStartTime, digest);
+                    logger = new TimestamperOutputStream(
+                            logger,
+                            timestampsWriter,
+                            null,
+                            lineIndexWriter(),
+                            LiveTimestamps.register(timestampsFile.toPath()));
+                }
             } catch (IOException ex) {
                 LOGGER.log(Level.WARNING, ex.getMessage(), ex);
             }
             return logger;
         }
+
+        @CheckForNull
+        private static byte[] compactNoteKey(Run<?, ?> build) {
+            try {
+                return CompactTimestampNote.createKey(build);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Cannot create the key for compact time-stamp notes", ex);
+                return null;
+            }
+        }
+
+        @CheckForNull
+        private LineIndexWriter lineIndexWriter() {
+            // null when deserialized from an earlier version
+            return lineIndexFile == null ? null : new LineIndexWriter(lineIndexFile.toPath());
+        }
     }
 
     /** Registers {@link TimestamperBuildWrapper} as a {@link BuildWrapper}. */
@@ -41,12 +41,15 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import jenkins.YesNoMaybe;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.verb.POST;
 
@@ -91,11 +94,31 @@ public final class TimestamperConfig extends GlobalConfiguration {
     /** Whether to activate {@link GlobalDecorator}. */
     private boolean allPipelines;
 
+    /** Incremented whenever the configuration changes, so that cached formats can be discarded. */
+    private final transient AtomicLong configVersion = new AtomicLong();
+
     /** Constructor. */
     public TimestamperConfig() {
         load();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void load() {
+        super.load();
+        configVersion.incrementAndGet();
+    }
+
+    /**
+     * Get the version of this configuration, which changes whenever the configuration changes.
+     *
+     * @return the configuration version
+     */
+    @Restricted(NoExternalUse.class)
+    public long getConfigVersion() {
+        return configVersion.get();
+    }
+
     /**
      * Get the format for displaying the system clock time.
      *
@@ -112,6 +135,7 @@ public final class TimestamperConfig extends GlobalConfiguration {
      */
     public void setSystemTimeFormat(@CheckForNull String timestampFormat) {
         this.timestampFormat = timestampFormat != null ? timestampFormat.trim() : null;
+        configVersion.incrementAndGet();
         save();
     }
 
@@ -142,6 +166,7 @@ public final class TimestamperConfig extends GlobalConfiguration {
      */
     public void setElapsedTimeFormat(@CheckForNull String elapsedTimeFormat) {
         this.elapsedTimeFormat = elapsedTimeFormat != null ? elapsedTimeFormat.trim() : null;
+        configVersion.incrementAndGet();
         save();
     }
 
@@ -176,6 +201,7 @@ public final class TimestamperConfig extends GlobalConfiguration {
 
     public void setAllPipelines(boolean allPipelines) {
         this.allPipelines = allPipelines;
+        configVersion.incrementAndGet();
         save();
     }
 }
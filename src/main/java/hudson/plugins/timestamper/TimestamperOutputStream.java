@@ -23,7 +23,10 @@
  */
 package hudson.plugins.timestamper;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.timestamper.io.LiveTimestamps;
+import hudson.plugins.timestamper.io.LogFingerprint;
 import hudson.plugins.timestamper.io.TimestampsWriter;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -48,6 +51,27 @@ final class TimestamperOutputStream extends OutputStream {
     /** Writer for the time-stamps. */
     private final TimestampsWriter timestampsWriter;
 
+    /**
+     * Queue for writing the time-stamps on a background thread, or {@code null} to write them on
+     * the thread which writes the console log.
+     */
+    @CheckForNull
+    private final TimestampsQueue timestampsQueue;
+
+    /** Writer for the index of the console log, or {@code null} to not write the index. */
+    @CheckForNull
+    private final LineIndexWriter lineIndexWriter;
+
+    /** The recent time-stamps of the running build, or {@code null} to not record them. */
+    @CheckForNull
+    private final LiveTimestamps liveTimestamps;
+
+    /** The last bytes of the console log, for the fingerprints of the recorded positions. */
+    private final LogFingerprint fingerprint = new LogFingerprint();
+
+    /** Counts the new lines in each chunk of the console log. */
+    private final NewlineCounter newlineCounter = NewlineCounter.get();
+
     /** Byte array that is re-used each time the {@link #write(int)} method is called. */
     private final byte[] oneElementByteArray = new byte[1];
 
@@ -57,6 +81,18 @@ final class TimestamperOutputStream extends OutputStream {
     /** Set to {@code true} when an error occurs while writing the time-stamps. */
     private boolean writeError;
 
+    /** Set to {@code true} when an error occurs while writing the index of the console log. */
+    private boolean lineIndexError;
+
+    /** The number of bytes processed. */
+    private long byteCount;
+
+    /** The number of new line characters processed. */
+    private long newlineCount;
+
+    /** The number of lines started. */
+    private long lineStartCount;
+
     /**
      * Create a new {@link TimestamperOutputStream}.
      *
@@ -65,8 +101,33 @@ final class TimestamperOutputStream extends OutputStream {
      *     when the {@link #close()} method is called
      */
     TimestamperOutputStream(OutputStream delegate, TimestampsWriter timestampsWriter) {
+        this(delegate, timestampsWriter, null, null, null);
+    }
+
+    /**
+     * Create a new {@link TimestamperOutputStream}.
+     *
+     * @param delegate the delegate output stream
+     * @param timestampsWriter will be used by this output stream to write the time-stamps and closed
+     *     when the {@link #close()} method is called
+     * @param timestampsQueue queue which passes the time-stamps to the time-stamps writer on a
+     *     background thread, or {@code null} to write the time-stamps directly
+     * @param lineIndexWriter writer for the index of the console log, or {@code null} to not write
+     *     the index; closed when the {@link #close()} method is called
+     * @param liveTimestamps the recent time-stamps of the running build, or {@code null} to not
+     *     record them; unregistered when the {@link #close()} method is called
+     */
+    TimestamperOutputStream(
+            OutputStream delegate,
+            TimestampsWriter timestampsWriter,
+            @CheckForNull TimestampsQueue timestampsQueue,
+            @CheckForNull LineIndexWriter lineIndexWriter,
+            @CheckForNull LiveTimestamps liveTimestamps) {
         this.delegate = Objects.requireNonNull(delegate);
         this.timestampsWriter = Objects.requireNonNull(timestampsWriter);
+        this.timestampsQueue = timestampsQueue;
+        this.lineIndexWriter = lineIndexWriter;
+        this.liveTimestamps = liveTimestamps;
     }
 
     /** {@inheritDoc} */
@@ -92,18 +153,57 @@ final class TimestamperOutputStream extends OutputStream {
     }
 
     private void writeTimestamps(byte[] b, int off, int len) {
-        int lineStartCount = 0;
-        for (int i = off; i < off + len; i++) {
-            if (previousCharacter == Integer.MIN_VALUE || previousCharacter == NEWLINE) {
-                lineStartCount++;
+        if (len <= 0) {
+            return;
+        }
+        // A line starts at each byte which follows a new line, so the last byte is not counted.
+        int newlines = newlineCounter.count(b, off, len - 1);
+        int lineStartCount = newlines;
+        if (previousCharacter == Integer.MIN_VALUE || previousCharacter == NEWLINE) {
+            lineStartCount++;
+        }
+        previousCharacter = b[off + len - 1];
+        if (previousCharacter == NEWLINE) {
+            newlines++;
+        }
+        byteCount += len;
+        newlineCount += newlines;
+
+        if (lineIndexWriter != null && !lineIndexError) {
+            try {
+                lineIndexWriter.write(b, off, len, byteCount, newlineCount, fingerprint);
+            } catch (IOException ex) {
+                lineIndexError = true;
+                LOGGER.log(Level.WARNING, "Error writing console log index", ex);
             }
-            previousCharacter = b[i];
+        }
+
+        Timestamp timestamp = null;
+        if (lineStartCount > 0) {
+            timestamp = timestampsWriter.timestamp(System.currentTimeMillis(), System.nanoTime());
+        }
+        this.lineStartCount += lineStartCount;
+        if (liveTimestamps != null) {
+            liveTimestamps.record(
+                    byteCount,
+                    newlineCount,
+                    previousCharacter == NEWLINE,
+                    previousCharacter == NEWLINE ? fingerprint.fingerprint(b, off, off + len) : 0,
+                    this.lineStartCount,
+                    timestamp == null ? 0 : timestamp.elapsedMillis,
+                    timestamp == null ? 0 : timestamp.millisSinceEpoch);
+        }
+        if (lineIndexWriter != null || liveTimestamps != null) {
+            fingerprint.update(b, off, len);
         }
 
         if (lineStartCount > 0 && !writeError) {
-            long currentTimeMillis = System.currentTimeMillis();
             try {
-                timestampsWriter.write(currentTimeMillis, lineStartCount);
+                if (timestampsQueue != null) {
+                    timestampsQueue.add(timestamp, lineStartCount);
+                } else {
+                    timestampsWriter.write(timestamp, lineStartCount);
+                }
             } catch (IOException ex) {
                 writeError = true;
                 LOGGER.log(Level.WARNING, "Error writing timestamps", ex);
@@ -114,22 +214,51 @@ final class TimestamperOutputStream extends OutputStream {
     /** {@inheritDoc} */
     @Override
     public void flush() throws IOException {
+        // The time-stamps queue flushes the time-stamps writer itself.
+        if (timestampsQueue == null && !writeError) {
+            try {
+                timestampsWriter.flush();
+            } catch (IOException ex) {
+                writeError = true;
+                LOGGER.log(Level.WARNING, "Error writing timestamps", ex);
+            }
+        }
         delegate.flush();
     }
 
     /** {@inheritDoc} */
     @Override
     public void close() throws IOException {
+        // Each step is attempted even if the previous steps fail.
         try {
-            timestampsWriter.close();
-
-            if (!writeError) {
-                timestampsWriter.writeDigest();
+            try {
+                try {
+                    if (timestampsQueue != null) {
+                        timestampsQueue.close();
+                    }
+                } finally {
+                    timestampsWriter.close();
+                }
+                if (!writeError) {
+                    timestampsWriter.writeDigest();
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+            } finally {
+                try {
+                    if (lineIndexWriter != null) {
+                        lineIndexWriter.close();
+                    }
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Error writing console log index", ex);
+                } finally {
+                    if (liveTimestamps != null) {
+                        liveTimestamps.unregister();
+                    }
+                }
             }
-        } catch (IOException ex) {
-            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+        } finally {
+            delegate.close();
         }
-
-        delegate.close();
     }
 }
@@ -0,0 +1,180 @@
+package hudson.plugins.timestamper;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import jenkins.util.Timer;
+
+/**
+ * Queue which passes the time-stamps recorded by {@link TimestamperOutputStream} to a background
+ * thread, so that the thread writing the console log does not wait for the time-stamps to be
+ * written to disk.
+ *
+ * <p>The queue is a bounded ring buffer with a single producer (the thread writing the console log)
+ * and a single consumer (the drain task), so no locking is required. When the queue is full, the
+ * producer waits for the drain task rather than dropping time-stamps.
+ */
+final class TimestampsQueue {
+
+    /** The default number of entries which can be held by the queue. */
+    static final int DEFAULT_CAPACITY = Integer.getInteger(TimestampsQueue.class.getName() + ".capacity", 4096);
+
+    /** The time to wait before checking again whether the drain task has made progress. */
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /** Writer for the time-stamps. Only used by the drain task once this queue has been created. */
+    private final TimestampsWriter timestampsWriter;
+
+    private final Executor executor;
+
+    /** The time-stamp of each entry. */
+    private final Timestamp[] timestamps;
+
+    /** The number of line starts of each entry. */
+    private final int[] counts;
+
+    /** The sequence number of the next entry to be added. Only updated by the producer. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The sequence number of the next entry to be written. Only updated by the consumer. */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Whether the drain task has been scheduled or the queue has been closed. */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /** Set when an error occurs while writing the time-stamps. */
+    @CheckForNull
+    private volatile IOException writeError;
+
+    private boolean closed;
+
+    /**
+     * Create a new {@link TimestampsQueue} which runs its drain task on the {@link Timer} executor
+     * of Jenkins. Each drain task only writes the entries which are already queued, so it does not
+     * occupy a thread of that executor for long.
+     *
+     * @param timestampsWriter the writer for the time-stamps
+     */
+    TimestampsQueue(TimestampsWriter timestampsWriter) {
+        this(timestampsWriter, DEFAULT_CAPACITY, Timer.get());
+    }
+
+    /**
+     * Create a new {@link TimestampsQueue}.
+     *
+     * @param timestampsWriter the writer for the time-stamps
+     * @param capacity the number of entries which can be held by the queue
+     * @param executor executor for the drain task
+     */
+    TimestampsQueue(TimestampsWriter timestampsWriter, int capacity, Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity is not positive: " + capacity);
+        }
+        this.timestampsWriter = Objects.requireNonNull(timestampsWriter);
+        this.executor = Objects.requireNonNull(executor);
+        this.timestamps = new Timestamp[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Add a time-stamp for a line of the console log. Waits for space in the queue if it is full.
+     *
+     * @param timestamp the time-stamp, as returned by {@link TimestampsWriter#timestamp(long, long)}
+     * @param times the number of times to write the time-stamp
+     * @throws IOException if an earlier time-stamp could not be written
+     */
+    void add(Timestamp timestamp, int times) throws IOException {
+        if (closed) {
+            throw new IOException("Time-stamps queue is closed");
+        }
+        checkWriteError();
+        long sequence = tail.get();
+        while (sequence - head.get() >= timestamps.length) {
+            scheduleDrain();
+            LockSupport.parkNanos(WAIT_NANOS);
+            checkWriteError();
+        }
+        int index = (int) (sequence % timestamps.length);
+        timestamps[index] = timestamp;
+        counts[index] = times;
+        tail.lazySet(sequence + 1);
+        scheduleDrain();
+    }
+
+    /**
+     * Write all queued time-stamps and wait for the drain task to finish. The time-stamps writer is
+     * not closed.
+     *
+     * @throws IOException if any time-stamp could not be written
+     */
+    void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Claim the drain task, so that nothing else writes to the time-stamps writer.
+        while (!draining.compareAndSet(false, true)) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        drainAvailable();
+        checkWriteError();
+    }
+
+    private void checkWriteError() throws IOException {
+        IOException error = writeError;
+        if (error != null) {
+            throw new IOException("Error writing timestamps", error);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!draining.get() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                drain();
+            }
+        }
+    }
+
+    /** The drain task. Entries added while it runs are written by another drain task. */
+    private void drain() {
+        drainAvailable();
+        draining.set(false);
+        // An entry may have been added after the queue was found to be empty, but before the
+        // drain task was marked as finished.
+        if (head.get() != tail.get()) {
+            scheduleDrain();
+        }
+    }
+
+    /** Write the entries currently in the queue. The queue is emptied even if writing fails. */
+    private void drainAvailable() {
+        long first = head.get();
+        long last = tail.get();
+        if (first == last) {
+            return;
+        }
+        if (writeError == null) {
+            try {
+                for (long sequence = first; sequence < last; sequence++) {
+                    int index = (int) (sequence % timestamps.length);
+                    timestampsWriter.write(timestamps[index], counts[index]);
+                }
+                timestampsWriter.flush();
+            } catch (IOException ex) {
+                writeError = ex;
+            } catch (RuntimeException ex) {
+                writeError = new IOException(ex);
+            }
+        }
+        head.lazySet(last);
+    }
+}
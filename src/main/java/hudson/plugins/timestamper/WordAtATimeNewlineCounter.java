@@ -0,0 +1,43 @@
+package hudson.plugins.timestamper;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Counts new line characters by examining eight bytes at a time as a {@code long} value (SIMD
+ * within a register). The remaining bytes at the end of the range are examined one at a time.
+ */
+final class WordAtATimeNewlineCounter implements NewlineCounter {
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** A new line character in every byte. */
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+    /** The low seven bits of every byte. */
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /** {@inheritDoc} */
+    @Override
+    public int count(byte[] b, int off, int len) {
+        int count = 0;
+        int end = off + len;
+        int i = off;
+        for (; i <= end - Long.BYTES; i += Long.BYTES) {
+            // Each byte of this word is zero if and only if it was a new line character.
+            long word = (long) LONG_VIEW.get(b, i) ^ NEWLINES;
+            // Set the high bit of each non-zero byte. Adding to the low seven bits cannot carry
+            // into the next byte.
+            long nonZero = ((word & LOW_BITS) + LOW_BITS) | word;
+            count += Long.bitCount(~(nonZero | LOW_BITS));
+        }
+        for (; i < end; i++) {
+            if (b[i] == NEWLINE) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,150 @@
+package hudson.plugins.timestamper.accessor;
+
+import hudson.plugins.timestamper.NewlineCounter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a console log as ranges of a reused byte array, so that a line is only decoded
+ * if its text is required.
+ *
+ * <p>Lines are separated by new line characters, which are not included in the line. A carriage
+ * return before the new line character is included. The last line of the console log need not end
+ * with a new line character.
+ */
+final class LogLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+
+    private final NewlineCounter newlineCounter = NewlineCounter.get();
+
+    /** Grows to hold the longest line of the console log. */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** The start of the bytes in {@link #buffer} which have not yet been read as a line. */
+    private int start;
+
+    /** The position in {@link #buffer} to continue searching for a new line character. */
+    private int searchFrom;
+
+    /** The end of the bytes in {@link #buffer}. */
+    private int end;
+
+    private boolean endOfFile;
+
+    private int lineOffset;
+
+    private int lineLength;
+
+    LogLineReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Advance to the next line. The previous line is no longer available.
+     *
+     * @return {@code false} if there are no more lines
+     */
+    boolean next() throws IOException {
+        while (true) {
+            for (int index = searchFrom; index < end; index++) {
+                if (buffer[index] == NewlineCounter.NEWLINE) {
+                    setLine(index, index + 1);
+                    return true;
+                }
+            }
+            searchFrom = end;
+            if (endOfFile) {
+                if (start == end) {
+                    return false;
+                }
+                setLine(end, end);
+                return true;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Skip the given number of lines, counting the new line characters a buffer at a time.
+     *
+     * @return the number of lines skipped, which is less than requested at the end of the file
+     */
+    long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            int newLines = newlineCounter.count(buffer, start, end - start);
+            if (newLines >= count - skipped || endOfFile) {
+                // The remaining lines end within the buffer, or at the end of the file.
+                while (skipped < count && next()) {
+                    skipped++;
+                }
+                return skipped;
+            }
+            if (newLines > 0) {
+                skipped += newLines;
+                start = lastNewLine() + 1;
+                searchFrom = start;
+            }
+            fill();
+        }
+        return skipped;
+    }
+
+    /** The array containing the current line, which is reused for the following lines. */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /** The position of the current line in {@link #buffer()}. */
+    int lineOffset() {
+        return lineOffset;
+    }
+
+    /** The length of the current line, excluding the new line character. */
+    int lineLength() {
+        return lineLength;
+    }
+
+    private void setLine(int lineEnd, int nextStart) {
+        lineOffset = start;
+        lineLength = lineEnd - start;
+        start = nextStart;
+        searchFrom = nextStart;
+    }
+
+    private int lastNewLine() {
+        int index = end - 1;
+        while (buffer[index] != NewlineCounter.NEWLINE) {
+            index--;
+        }
+        return index;
+    }
+
+    /** Read more of the console log, discarding the lines already read. */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            searchFrom -= start;
+            start = 0;
+        } else if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = inputStream.read(buffer, end, buffer.length - end);
+        if (read == -1) {
+            endOfFile = true;
+        } else {
+            end += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
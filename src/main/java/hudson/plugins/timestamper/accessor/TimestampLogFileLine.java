@@ -1,6 +1,8 @@
 package hudson.plugins.timestamper.accessor;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.plugins.timestamper.Timestamp;
+import java.nio.charset.Charset;
 import java.util.Optional;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -12,11 +14,51 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 @Restricted(NoExternalUse.class)
 public final class TimestampLogFileLine {
     private final Optional<Timestamp> timestamp;
-    private final Optional<String> logFileLine;
+    private Optional<String> logFileLine = Optional.empty();
+
+    /**
+     * The buffer of the {@link TimestampLogFileLineAccessor} which holds the undecoded log file line,
+     * or {@code null} once decoded or released.
+     */
+    @CheckForNull
+    private byte[] buffer;
+
+    private final int offset;
+
+    private final int length;
+
+    @CheckForNull
+    private final Charset charset;
+
+    /** Whether the buffer was reused for another line before this log file line was decoded. */
+    private boolean released;
 
     public TimestampLogFileLine(Timestamp timestamp, String logFileLine) {
         this.timestamp = Optional.ofNullable(timestamp);
         this.logFileLine = Optional.ofNullable(logFileLine);
+        this.offset = 0;
+        this.length = 0;
+        this.charset = null;
+    }
+
+    /**
+     * Create a record whose log file line is decoded when first requested. The line is not copied
+     * from the buffer, so it must be decoded before the buffer is reused for the next line.
+     */
+    TimestampLogFileLine(@CheckForNull Timestamp timestamp, byte[] buffer, int offset, int length, Charset charset) {
+        this.timestamp = Optional.ofNullable(timestamp);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+    }
+
+    /** Called before the buffer holding the undecoded log file line is reused. */
+    void release() {
+        if (buffer != null) {
+            buffer = null;
+            released = true;
+        }
     }
 
     /** Return the timestamp associated with the record, if present. */
@@ -24,12 +66,30 @@ public final class TimestampLogFileLine {
         return timestamp;
     }
 
+    /** Return whether a log file line is associated with the record, without decoding it. */
+    public boolean hasLogFileLine() {
+        return buffer != null || released || logFileLine.isPresent();
+    }
+
     /**
      * Return the log file line associated with the record, if present. This log file line may
      * contain console notes. It is the caller's responsibility to remove any console notes if
      * desired.
+     *
+     * <p>The log file line of a record returned by {@link TimestampLogFileLineAccessor#readLine()}
+     * must first be requested before the next line is read, and is then kept by this record.
+     *
+     * @throws IllegalStateException if the next line has been read before the log file line was
+     *     requested
      */
     public Optional<String> getLogFileLine() {
+        if (released) {
+            throw new IllegalStateException("The log file line was not requested before the next line was read");
+        }
+        if (buffer != null) {
+            logFileLine = Optional.of(new String(buffer, offset, length, charset));
+            buffer = null;
+        }
         return logFileLine;
     }
 }
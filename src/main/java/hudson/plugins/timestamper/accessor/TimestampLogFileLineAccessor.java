@@ -1,21 +1,26 @@
 package hudson.plugins.timestamper.accessor;
 
 import com.google.common.base.Suppliers;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.console.ConsoleNote;
 import hudson.model.Run;
+import hudson.plugins.timestamper.CompactTimestampNote;
+import hudson.plugins.timestamper.NewlineCounter;
 import hudson.plugins.timestamper.Timestamp;
 import hudson.plugins.timestamper.TimestampNote;
 import hudson.plugins.timestamper.action.TimestampsActionOutput;
+import hudson.plugins.timestamper.annotator.LineIndexReader;
 import hudson.plugins.timestamper.io.TimestampsReader;
 import hudson.plugins.timestamper.pipeline.GlobalAnnotator;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Scanner;
 import java.util.function.Supplier;
 import org.apache.commons.io.input.CountingInputStream;
 import org.kohsuke.accmod.Restricted;
@@ -30,14 +35,28 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 @Restricted(NoExternalUse.class)
 public class TimestampLogFileLineAccessor implements Closeable {
 
+    /** The number of time-stamps read from {@link #timestampsReader} at a time. */
+    private static final int BATCH_SIZE = 1024;
+
+    /** The size of the buffer used to count the lines of the log file. */
+    private static final int COUNT_BUFFER_SIZE = 64 * 1024;
+
     /** The build whose timestamps and log file lines we are accessing. */
     private final Run<?, ?> build;
 
+    /** The character set of the log file. */
+    private final Charset charset;
+
     /**
-     * A {@link Scanner} for the log file. Note that this may be backed by an external stream as of
-     * JEP 210.
+     * A reader for the lines of the log file, or {@code null} until the first line is read or
+     * skipped. Note that this may be backed by an external stream as of JEP 210.
      */
-    private final Scanner logFileReader;
+    @CheckForNull
+    private LogLineReader logFileReader;
+
+    /** The last line returned by {@link #readLine()}, which refers to the buffer of the reader. */
+    @CheckForNull
+    private TimestampLogFileLine lastLine;
 
     /**
      * A reader for the timestamps file. Note that the timestamps file is only present for Freestyle
@@ -46,40 +65,167 @@ public class TimestampLogFileLineAccessor implements Closeable {
      */
     private final TimestampsReader timestampsReader;
 
+    /**
+     * Whether this is a Pipeline build. The lines of a Pipeline build which start with a time-stamp
+     * written by {@link hudson.plugins.timestamper.pipeline.GlobalDecorator} have no entry in the
+     * timestamps file.
+     */
+    private final boolean pipelineBuild;
+
+    /** Decodes the time-stamp notes in the log file, or {@code null} until the first is found. */
+    @CheckForNull
+    private TimestampNoteDecoder timestampNoteDecoder;
+
+    /** The elapsed times of the time-stamps read ahead from {@link #timestampsReader}. */
+    private final long[] elapsedMillis = new long[BATCH_SIZE];
+
+    /** The times since the epoch of the time-stamps read ahead from {@link #timestampsReader}. */
+    private final long[] millisSinceEpoch = new long[BATCH_SIZE];
+
+    /** The index of the next read-ahead time-stamp. */
+    private int batchIndex;
+
+    /** The number of read-ahead time-stamps. */
+    private int batchLength;
+
+    /** Whether {@link #compactNote} has been resolved. */
+    private boolean compactNoteResolved;
+
+    /** The decoder of the compact time-stamp notes of the build, if it wrote them. */
+    @CheckForNull
+    private CompactTimestampNote compactNote;
+
     /**
      * A memoizing {@link Supplier} of the line count of the log file. Counting the lines of an
      * entire log file may be an expensive operation, especially if it is backed by an external
      * stream. Furthermore, in the common case (where negative numbers are not supplied as input to
      * startLine and endLine in {@link TimestampsActionOutput}, counting lines isn't even necessary
      * at all. Therefore, we only do this operation if we need to and cache the result once it is
-     * done.
+     * done. The new line characters are counted in the raw bytes of the log file, starting from the
+     * last position recorded in the line index.
      */
     private final Supplier<Integer> lineCount;
 
     public TimestampLogFileLineAccessor(Run<?, ?> build) throws IOException {
         this.build = Objects.requireNonNull(build);
-        this.logFileReader = new Scanner(build.getLogReader()).useDelimiter("\n");
+        this.charset = build.getCharset();
         this.timestampsReader = new TimestampsReader(build);
+        this.pipelineBuild = TimestampNote.useTimestampNotes(build.getClass());
         this.lineCount = Suppliers.memoize(() -> {
-            int lineCount = 0;
-            try (Scanner lineCountReader = new Scanner(build.getLogReader()).useDelimiter("\n")) {
-                while (lineCountReader.hasNext()) {
-                    lineCountReader.next();
-                    lineCount++;
-                }
+            try {
+                return countLines();
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
-            return lineCount;
         })::get;
     }
 
+    /** Get the reader for the log file, opening it at the first line if necessary. */
+    private LogLineReader logFileReader() throws IOException {
+        releaseLastLine();
+        if (logFileReader == null) {
+            logFileReader = new LogLineReader(build.getLogInputStream());
+        }
+        return logFileReader;
+    }
+
     /** Skip forward one line in the associated record file(s). */
     public void skipLine() throws IOException {
-        timestampsReader.read();
-        if (logFileReader.hasNext()) {
-            logFileReader.next();
+        if (pipelineBuild) {
+            readLine();
+            return;
+        }
+        nextTimestamp();
+        logFileReader().next();
+    }
+
+    /**
+     * Skip forward the given number of lines in the associated record file(s). This is faster than
+     * calling {@link #skipLine()} repeatedly when the timestamps file has been indexed, and when
+     * skipping from the first line of a log file which has been indexed. Nothing is skipped if the
+     * count is not positive.
+     */
+    public void skipLines(int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        if (pipelineBuild) {
+            for (int line = 0; line < count; line++) {
+                readLine();
+            }
+            return;
+        }
+        int skippedFromBatch = Math.min(count, batchLength - batchIndex);
+        batchIndex += skippedFromBatch;
+        timestampsReader.skip(count - skippedFromBatch);
+        if (logFileReader == null && count > 0) {
+            logFileReader = openLogFileReaderAt(count);
+            return;
+        }
+        logFileReader().skip(count);
+    }
+
+    /**
+     * Open a reader for the log file at the given line, starting from the last position before it
+     * recorded in the line index.
+     */
+    private LogLineReader openLogFileReaderAt(int lineNumber) throws IOException {
+        Optional<LineIndexReader.Checkpoint> checkpoint = LineIndexReader.floorLine(build, lineNumber);
+        InputStream inputStream = checkpoint.isPresent() ? openAt(checkpoint.get()) : null;
+        long linesToSkip = lineNumber;
+        if (inputStream != null) {
+            linesToSkip -= checkpoint.get().lineNumber;
+        } else {
+            inputStream = build.getLogInputStream();
+        }
+        LogLineReader reader = new LogLineReader(inputStream);
+        reader.skip(linesToSkip);
+        return reader;
+    }
+
+    /**
+     * Open the log file at a position recorded in the line index.
+     *
+     * @return the stream, or {@code null} if the log file does not match the index
+     */
+    @CheckForNull
+    private InputStream openAt(LineIndexReader.Checkpoint checkpoint) throws IOException {
+        InputStream inputStream = build.getLogInputStream();
+        // Each indexed position follows a new line character, which its fingerprint includes.
+        if (checkpoint.skipTo(inputStream)) {
+            return inputStream;
+        }
+        inputStream.close();
+        return null;
+    }
+
+    /** Count the lines of the log file, including a last line without a new line character. */
+    private int countLines() throws IOException {
+        Optional<LineIndexReader.Checkpoint> checkpoint = LineIndexReader.floor(build, Long.MAX_VALUE);
+        InputStream inputStream = checkpoint.isPresent() ? openAt(checkpoint.get()) : null;
+        long lines = 0;
+        if (inputStream != null) {
+            lines = checkpoint.get().lineNumber;
+        } else {
+            inputStream = build.getLogInputStream();
+        }
+        try (InputStream in = inputStream) {
+            NewlineCounter newlineCounter = NewlineCounter.get();
+            byte[] buffer = new byte[COUNT_BUFFER_SIZE];
+            // The checkpoint, if any, follows a new line character.
+            int lastByte = NewlineCounter.NEWLINE;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (read > 0) {
+                    lines += newlineCounter.count(buffer, 0, read);
+                    lastByte = buffer[read - 1];
+                }
+            }
+            if (lastByte != NewlineCounter.NEWLINE) {
+                lines++;
+            }
         }
+        return Math.toIntExact(lines);
     }
 
     /**
@@ -90,36 +236,114 @@ public class TimestampLogFileLineAccessor implements Closeable {
      * present, EOF has been reached and callers should stop retrieving further records.
      */
     public TimestampLogFileLine readLine() throws IOException {
-        String logFileLine = logFileReader.hasNext() ? logFileReader.next() : null;
+        LogLineReader logFileReader = logFileReader();
+        if (!logFileReader.next()) {
+            return new TimestampLogFileLine(nextTimestamp(), null);
+        }
+        byte[] buffer = logFileReader.buffer();
+        int lineOffset = logFileReader.lineOffset();
+        int lineLength = logFileReader.lineLength();
+
+        // The lines of a Pipeline build which are decorated with a time-stamp by GlobalDecorator
+        // have no entry in the timestamps file, so check for the decoration first.
+        Timestamp timestamp = null;
+        if (pipelineBuild) {
+            timestamp = GlobalAnnotator.parseTimestamp(buffer, lineOffset, lineLength, build.getStartTimeInMillis())
+                    .orElse(null);
+            if (timestamp != null) {
+                return stripDecoration(timestamp, buffer, lineOffset, lineLength);
+            }
+        }
 
         // Attempt to read the timestamp from the timestamps file, if present. This covers Freestyle
         // builds of version 1.4 or later where the "timestamper-consolenotes" system property was
-        // _not_ set.
-        Timestamp timestamp = timestampsReader.read().orElse(null);
-        if (timestamp == null && logFileLine != null) {
+        // _not_ set, and Pipeline builds with the timestamps file enabled.
+        timestamp = nextTimestamp();
+        if (timestamp == null) {
             // If a timestamps file is not present, attempt to read the timestamp from the log file.
             // The log file is decorated with GlobalDecorator for Pipeline builds of version 1.9 or
             // later.
-            timestamp = GlobalAnnotator.parseTimestamp(logFileLine, build.getStartTimeInMillis())
-                    .orElse(null);
+            if (!pipelineBuild) {
+                timestamp = GlobalAnnotator.parseTimestamp(
+                                buffer, lineOffset, lineLength, build.getStartTimeInMillis())
+                        .orElse(null);
+            }
             if (timestamp != null) {
                 // If we succeeded, then the log file was decorated by GlobalDecorator. Strip the
                 // timestamp decoration from the front of the line.
-                if (logFileLine.length() > 27) {
-                    logFileLine = logFileLine.substring(27);
-                } else {
-                    logFileLine = "";
-                }
-            } else {
-                // Attempt to read the timestamp from TimestampNotes embedded in the log file.
-                // Such TimestampNotes are present for Pipeline builds prior to version 1.9 as well
-                // as Freestyle builds prior to version 1.4 or where the
-                // "timestamper-consolenotes" system property was set.
-                timestamp = readTimestamp(logFileLine).orElse(null);
+                return stripDecoration(timestamp, buffer, lineOffset, lineLength);
+            }
+            // Attempt to read the timestamp from a CompactTimestampNote at the start of the line, as
+            // inserted by TimestampNotesOutputStream when requested. Only the notes signed with the
+            // key of the build are accepted.
+            CompactTimestampNote compactNote = compactNote();
+            long elapsedMillis = compactNote == null
+                    ? CompactTimestampNote.NOT_A_NOTE
+                    : compactNote.decode(buffer, lineOffset, lineLength);
+            if (elapsedMillis != CompactTimestampNote.NOT_A_NOTE) {
+                timestamp = new Timestamp(elapsedMillis, build.getStartTimeInMillis() + elapsedMillis);
+                int noteLength = CompactTimestampNote.length(elapsedMillis);
+                return line(timestamp, buffer, lineOffset + noteLength, lineOffset + lineLength);
             }
+            // Attempt to read the timestamp from TimestampNotes embedded in the log file.
+            // Such TimestampNotes are present for Pipeline builds prior to version 1.9 as well
+            // as Freestyle builds prior to version 1.4 or where the
+            // "timestamper-consolenotes" system property was set.
+            timestamp = readTimestamp(buffer, lineOffset, lineLength).orElse(null);
+        }
+
+        return line(timestamp, buffer, lineOffset, lineOffset + lineLength);
+    }
+
+    @CheckForNull
+    private CompactTimestampNote compactNote() {
+        if (!compactNoteResolved) {
+            compactNote = CompactTimestampNote.forBuild(build);
+            compactNoteResolved = true;
+        }
+        return compactNote;
+    }
+
+    /** Strip the time-stamp decoration added by GlobalDecorator from the front of the line. */
+    private TimestampLogFileLine stripDecoration(Timestamp timestamp, byte[] buffer, int lineOffset, int lineLength) {
+        int lineEnd = lineOffset + lineLength;
+        return line(timestamp, buffer, Math.min(lineOffset + 27, lineEnd), lineEnd);
+    }
+
+    /**
+     * Refer to the line in the reused buffer without copying it, since the caller may not need it.
+     * The line is released before the buffer is reused.
+     */
+    private TimestampLogFileLine line(@CheckForNull Timestamp timestamp, byte[] buffer, int from, int to) {
+        lastLine = new TimestampLogFileLine(timestamp, buffer, from, to - from, charset);
+        return lastLine;
+    }
+
+    /** Release the last line returned by {@link #readLine()}, before its buffer is reused. */
+    private void releaseLastLine() {
+        if (lastLine != null) {
+            lastLine.release();
+            lastLine = null;
         }
+    }
 
-        return new TimestampLogFileLine(timestamp, logFileLine);
+    /**
+     * Read the next time-stamp from the timestamps file, reading ahead in batches.
+     *
+     * @return the time-stamp, or {@code null} if there are no more to read
+     */
+    @CheckForNull
+    private Timestamp nextTimestamp() throws IOException {
+        if (batchIndex == batchLength) {
+            batchIndex = 0;
+            batchLength = timestampsReader.readBatch(elapsedMillis, millisSinceEpoch, 0, BATCH_SIZE);
+            if (batchLength == 0) {
+                return null;
+            }
+        }
+        Timestamp timestamp = new Timestamp(elapsedMillis[batchIndex], millisSinceEpoch[batchIndex]);
+        batchIndex++;
+        return timestamp;
     }
 
     /**
@@ -127,18 +351,30 @@ public class TimestampLogFileLineAccessor implements Closeable {
      *
      * @return the time-stamp
      */
-    private Optional<Timestamp> readTimestamp(String line) {
-        byte[] bytes = line.getBytes(build.getCharset());
-        int length = bytes.length;
+    private Optional<Timestamp> readTimestamp(byte[] buffer, int lineOffset, int lineLength) {
+        int lineEnd = lineOffset + lineLength;
 
-        int index = 0;
+        int index = lineOffset;
         while (true) {
-            index = ConsoleNote.findPreamble(bytes, index, length - index);
+            index = ConsoleNote.findPreamble(buffer, index, lineEnd - index);
             if (index == -1) {
                 return Optional.empty();
             }
+
+            // Most time-stamp notes can be decoded without deserializing them.
+            if (timestampNoteDecoder == null) {
+                timestampNoteDecoder = new TimestampNoteDecoder();
+            }
+            TimestampNote decoded = timestampNoteDecoder.decode(buffer, index, lineEnd - index);
+            if (decoded == TimestampNoteDecoder.OTHER_NOTE) {
+                index++;
+                continue;
+            } else if (decoded != null) {
+                return Optional.of(decoded.getTimestamp(build));
+            }
+
             CountingInputStream inputStream =
-                    new CountingInputStream(new ByteArrayInputStream(bytes, index, length - index));
+                    new CountingInputStream(new ByteArrayInputStream(buffer, index, lineEnd - index));
 
             try {
                 ConsoleNote<?> consoleNote = ConsoleNote.readFrom(new DataInputStream(inputStream));
@@ -164,7 +400,13 @@ public class TimestampLogFileLineAccessor implements Closeable {
 
     @Override
     public void close() throws IOException {
+        releaseLastLine();
         timestampsReader.close();
-        logFileReader.close();
+        if (logFileReader != null) {
+            logFileReader.close();
+        }
+        if (timestampNoteDecoder != null) {
+            timestampNoteDecoder.close();
+        }
     }
 }
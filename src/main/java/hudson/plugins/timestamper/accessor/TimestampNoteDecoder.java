@@ -0,0 +1,260 @@
+package hudson.plugins.timestamper.accessor;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.console.ConsoleNote;
+import hudson.plugins.timestamper.TimestampNote;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.function.BiPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import jenkins.security.HMACConfidentialKey;
+
+/**
+ * Decodes a {@link TimestampNote} from an encoded console note without deserializing it.
+ *
+ * <p>An encoded console note is the {@link ConsoleNote#PREAMBLE}, the Base64 encoding of a signed
+ * and gzipped serialized object, then the {@link ConsoleNote#POSTAMBLE}. The serialized form of a
+ * time-stamp note only varies in the values of its two fields, so it is compared with the
+ * serialized form of a note created in this JVM and the values are read from their positions.
+ * Console notes whose serialized form starts with a different class name are not time-stamp notes,
+ * so they are not deserialized either.
+ *
+ * <p>The signature of a console note is checked as by {@link ConsoleNote#readFrom}, so that a build
+ * cannot forge a time-stamp by writing a console note. Notes which are unsigned or have an invalid
+ * signature are left to {@link ConsoleNote#readFrom}, which refuses them unless configured
+ * otherwise.
+ */
+final class TimestampNoteDecoder implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(TimestampNoteDecoder.class.getName());
+
+    /** Returned by {@link #decode} for a console note which is not a {@link TimestampNote}. */
+    static final TimestampNote OTHER_NOTE = new TimestampNote(0, 0);
+
+    /** The magic number, version and {@code TC_OBJECT TC_CLASSDESC} of a serialized object. */
+    private static final byte[] OBJECT_HEADER = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05, 0x73, 0x72};
+
+    /** The header of a gzip stream written by {@link java.util.zip.GZIPOutputStream}. */
+    private static final byte[] GZIP_HEADER = {0x1F, (byte) 0x8B, 0x08, 0x00};
+
+    private static final int GZIP_HEADER_LENGTH = 10;
+
+    private static final byte ESCAPE = 0x1B;
+
+    /** The key used by {@link ConsoleNote} to sign the encoded console notes. */
+    private static final HMACConfidentialKey MAC = new HMACConfidentialKey(ConsoleNote.class, "MAC");
+
+    @CheckForNull
+    private static final Template TEMPLATE = Template.create();
+
+    /** Checks the signature of a serialized console note: the gzipped object and then the MAC. */
+    private final BiPredicate<byte[], byte[]> macCheck;
+
+    private final Inflater inflater = new Inflater(true);
+
+    /** The serialized object, with room for one more byte than the template. */
+    private final byte[] serialized = new byte[TEMPLATE == null ? 0 : TEMPLATE.bytes.length + 1];
+
+    TimestampNoteDecoder() {
+        this(MAC::checkMac);
+    }
+
+    TimestampNoteDecoder(BiPredicate<byte[], byte[]> macCheck) {
+        this.macCheck = macCheck;
+    }
+
+    /**
+     * Decode the console note which starts at the given position.
+     *
+     * @param b the bytes containing the console note, starting with {@link ConsoleNote#PREAMBLE}
+     * @param off the position of the console note
+     * @param len the number of bytes available
+     * @return the time-stamp note, {@link #OTHER_NOTE} for a console note of another type, or
+     *     {@code null} if the console note must be deserialized
+     */
+    @CheckForNull
+    TimestampNote decode(byte[] b, int off, int len) {
+        Template template = TEMPLATE;
+        int start = off + ConsoleNote.PREAMBLE.length;
+        int end = indexOf(b, ESCAPE, start, off + len);
+        if (template == null || end == -1 || !startsWith(b, end, off + len, ConsoleNote.POSTAMBLE)) {
+            return null;
+        }
+
+        ByteBuffer decoded;
+        try {
+            decoded = Base64.getDecoder().decode(ByteBuffer.wrap(b, start, end - start));
+            int macLength = -decoded.getInt();
+            if (macLength <= 0) {
+                // unsigned
+                return null;
+            }
+            byte[] mac = new byte[macLength];
+            decoded.get(mac);
+            int size = decoded.getInt();
+            if (size != decoded.remaining()) {
+                return null;
+            }
+            byte[] gzipped = Arrays.copyOfRange(decoded.array(), decoded.position(), decoded.limit());
+            if (!macCheck.test(gzipped, mac)) {
+                return null;
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            // not Base64, or truncated
+            return null;
+        }
+
+        int length = inflate(decoded);
+        if (length < template.classNameEnd || !startsWith(serialized, 0, length, OBJECT_HEADER)) {
+            return null;
+        }
+        if (Arrays.mismatch(serialized, 0, template.classNameEnd, template.bytes, 0, template.classNameEnd) != -1) {
+            return OTHER_NOTE;
+        }
+        if (!inflater.finished() || length != template.bytes.length || !template.matches(serialized)) {
+            // e.g. written by a different version
+            return null;
+        }
+        return new TimestampNote(
+                readLong(serialized, template.elapsedMillisOffset),
+                readLong(serialized, template.millisSinceEpochOffset));
+    }
+
+    /**
+     * Inflate the gzipped serialized object into {@link #serialized}, until it is full.
+     *
+     * @return the number of bytes inflated, or {@code -1} if the gzip stream is invalid
+     */
+    private int inflate(ByteBuffer gzipped) {
+        if (gzipped.remaining() < GZIP_HEADER_LENGTH
+                || !startsWith(gzipped.array(), gzipped.position(), gzipped.limit(), GZIP_HEADER)) {
+            return -1;
+        }
+        inflater.reset();
+        inflater.setInput(
+                gzipped.array(), gzipped.position() + GZIP_HEADER_LENGTH, gzipped.remaining() - GZIP_HEADER_LENGTH);
+        int length = 0;
+        try {
+            while (length < serialized.length && !inflater.finished()) {
+                int inflated = inflater.inflate(serialized, length, serialized.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // truncated
+                    break;
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            return -1;
+        }
+        return length;
+    }
+
+    private static int indexOf(byte[] b, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] b, int from, int to, byte[] prefix) {
+        return to - from >= prefix.length
+                && Arrays.equals(b, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static long readLong(byte[] b, int off) {
+        long value = 0;
+        for (int i = off; i < off + Long.BYTES; i++) {
+            value = value << 8 | (b[i] & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    /** The serialized form of a {@link TimestampNote} in this JVM. */
+    private static final class Template {
+
+        private static final long ELAPSED_MILLIS = 0x0123456789ABCDEFL;
+
+        private static final long MILLIS_SINCE_EPOCH = 0x7EDCBA9876543210L;
+
+        final byte[] bytes;
+
+        /** The end of the class name of the serialized object. */
+        final int classNameEnd;
+
+        final int elapsedMillisOffset;
+
+        final int millisSinceEpochOffset;
+
+        private Template(byte[] bytes, int elapsedMillisOffset, int millisSinceEpochOffset) {
+            this.bytes = bytes;
+            this.classNameEnd = OBJECT_HEADER.length + 2 + ((bytes[6] & 0xFF) << 8 | (bytes[7] & 0xFF));
+            this.elapsedMillisOffset = elapsedMillisOffset;
+            this.millisSinceEpochOffset = millisSinceEpochOffset;
+        }
+
+        @CheckForNull
+        static Template create() {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+                objectOutputStream.writeObject(new TimestampNote(ELAPSED_MILLIS, MILLIS_SINCE_EPOCH));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Cannot serialize a time-stamp note", e);
+                return null;
+            }
+            byte[] bytes = outputStream.toByteArray();
+            int elapsedMillisOffset = offsetOf(bytes, ELAPSED_MILLIS);
+            int millisSinceEpochOffset = offsetOf(bytes, MILLIS_SINCE_EPOCH);
+            if (elapsedMillisOffset == -1
+                    || millisSinceEpochOffset == -1
+                    || !startsWith(bytes, 0, bytes.length, OBJECT_HEADER)) {
+                return null;
+            }
+            return new Template(bytes, elapsedMillisOffset, millisSinceEpochOffset);
+        }
+
+        /** Find the only occurrence of the given value. */
+        private static int offsetOf(byte[] bytes, long value) {
+            int offset = -1;
+            for (int i = 0; i <= bytes.length - Long.BYTES; i++) {
+                if (readLong(bytes, i) == value) {
+                    if (offset != -1) {
+                        return -1;
+                    }
+                    offset = i;
+                }
+            }
+            return offset;
+        }
+
+        /** Whether the given serialized object differs from this template only in its values. */
+        boolean matches(byte[] serialized) {
+            for (int i = 0; i < bytes.length; i++) {
+                if (serialized[i] != bytes[i] && !isValue(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isValue(int index) {
+            return (index >= elapsedMillisOffset && index < elapsedMillisOffset + Long.BYTES)
+                    || (index >= millisSinceEpochOffset && index < millisSinceEpochOffset + Long.BYTES);
+        }
+    }
+}
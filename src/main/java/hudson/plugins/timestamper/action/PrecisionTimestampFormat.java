@@ -55,6 +55,16 @@ final class PrecisionTimestampFormat implements Function<Timestamp, String> {
             return String.valueOf(seconds);
         }
         long millis = timestamp.elapsedMillis % 1000;
+        if (millis >= 0) {
+            // Avoid String.format, as this is called for every line of the page.
+            char[] digits = {(char) ('0' + millis / 100), (char) ('0' + millis / 10 % 10), (char) ('0' + millis % 10)};
+            StringBuilder result = new StringBuilder(24 + precision).append(seconds).append('.');
+            result.append(digits, 0, Math.min(precision, 3));
+            for (int place = 3; place < precision; place++) {
+                result.append('0');
+            }
+            return result.toString();
+        }
         String fractional = String.format("%03d", millis);
         if (precision <= 3) {
             fractional = fractional.substring(0, precision);
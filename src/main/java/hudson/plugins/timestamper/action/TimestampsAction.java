@@ -25,9 +25,7 @@ package hudson.plugins.timestamper.action;
 
 import hudson.model.Action;
 import hudson.model.Run;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -81,25 +79,24 @@ public final class TimestampsAction implements Action {
     public void doIndex(StaplerRequest2 request, StaplerResponse2 response) throws IOException {
         response.setContentType("text/plain;charset=UTF-8");
 
-        PrintWriter writer = response.getWriter();
+        // The page is written to the response as it is generated. No content length is set, so the
+        // page is sent with chunked transfer encoding as each buffer is filled.
+        Utf8StreamWriter writer = new Utf8StreamWriter(response.getOutputStream());
+        String lineSeparator = System.lineSeparator();
 
         try {
             // throws RuntimeException for invalid query
             TimestampsActionQuery query = TimestampsActionQuery.create(request.getQueryString());
 
-            try (BufferedReader reader = TimestampsActionOutput.open(build, query)) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    writer.println(line);
-                }
-            }
+            TimestampsActionOutput.write(build, query, writer, lineSeparator);
 
         } catch (RuntimeException | IOException e) {
             String urlWithQueryString = request.getRequestURLWithQueryString().toString();
-            writer.println(urlWithQueryString);
-            String exceptionMessage = e.getMessage() == null ? "" : e.getMessage();
-            writer.println(e.getClass().getSimpleName() + (exceptionMessage.isEmpty() ? "" : ": " + exceptionMessage));
             LOGGER.log(Level.WARNING, urlWithQueryString, e);
+            writer.append(urlWithQueryString).append(lineSeparator);
+            String exceptionMessage = e.getMessage() == null ? "" : e.getMessage();
+            writer.append(e.getClass().getSimpleName() + (exceptionMessage.isEmpty() ? "" : ": " + exceptionMessage))
+                    .append(lineSeparator);
         } finally {
             writer.flush();
         }
@@ -23,6 +23,7 @@
  */
 package hudson.plugins.timestamper.action;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.console.ConsoleNote;
 import hudson.model.Run;
@@ -30,15 +31,14 @@ import hudson.plugins.timestamper.Timestamp;
 import hudson.plugins.timestamper.accessor.TimestampLogFileLine;
 import hudson.plugins.timestamper.accessor.TimestampLogFileLineAccessor;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
 import java.util.TimeZone;
-import java.util.function.Function;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 
 /**
@@ -81,110 +81,174 @@ public class TimestampsActionOutput {
      * @return a {@link BufferedReader}
      */
     public static BufferedReader open(Run<?, ?> build, TimestampsActionQuery query) {
-        long buildStartTime = build.getStartTimeInMillis();
-        long millisSinceEpoch = System.currentTimeMillis();
-        Timestamp currentTimestamp = new Timestamp(millisSinceEpoch - buildStartTime, millisSinceEpoch);
-
-        return open(query, currentTimestamp, build);
+        return open(query, currentTimestamp(build), build);
     }
 
     static BufferedReader open(
             final TimestampsActionQuery query, final Timestamp currentTimestamp, final Run<?, ?> build) {
         if (query.currentTime) {
-            List<String> parts = new ArrayList<>();
-            for (Function<Timestamp, String> format : query.timestampFormats) {
-                parts.add(format.apply(currentTimestamp));
-            }
-            String result = String.join(" ", parts) + "\n";
-            return new BufferedReader(new StringReader(result));
+            StringBuilder result = new StringBuilder();
+            appendTimestamp(result, query, currentTimestamp);
+            result.append('\n');
+            return new BufferedReader(new StringReader(result.toString()));
         }
 
-        final StringBuilder buffer = new StringBuilder();
+        final Lines lines = new Lines(query, build);
 
         Reader reader = new Reader() {
-            int linesRead;
-            Optional<Integer> endLine = Optional.empty();
-            boolean started;
-            TimestampLogFileLineAccessor timestampLogFileLineAccessor;
+            /** The lines which have been read but not yet returned. */
+            final StringBuilder buffer = new StringBuilder();
+
+            /** The position of the first character in {@link #buffer} not yet returned. */
+            int position;
 
             @Override
             public int read(@NonNull char[] cbuf, int off, int len) throws IOException {
-                if (!started) {
-                    timestampLogFileLineAccessor = new TimestampLogFileLineAccessor(build);
-                    linesRead = readToStartLine(query);
-                    endLine = resolveEndLine(query);
-                    started = true;
+                if (len == 0) {
+                    return 0;
                 }
-                while (buffer.length() < len) {
-                    Optional<String> nextLine = readNextLine(query);
-                    if (!nextLine.isPresent()) {
-                        break;
+                if (position == buffer.length()) {
+                    buffer.setLength(0);
+                    position = 0;
+                    while (buffer.length() < len && lines.appendNextLine(buffer)) {
+                        buffer.append('\n');
                     }
-                    linesRead++;
-                    if (endLine.isPresent() && linesRead > endLine.get()) {
-                        break;
+                    if (buffer.length() == 0) {
+                        return -1;
                     }
-                    buffer.append(nextLine.get());
-                    buffer.append("\n");
                 }
-                int numRead = new StringReader(buffer.toString()).read(cbuf, off, len);
-                buffer.delete(0, numRead >= 0 ? numRead : buffer.length());
+                int numRead = Math.min(len, buffer.length() - position);
+                buffer.getChars(position, position + numRead, cbuf, off);
+                position += numRead;
                 return numRead;
             }
 
-            private int readToStartLine(TimestampsActionQuery query) throws IOException {
-                int linesToSkip = Math.max(query.startLine - 1, 0);
-                if (query.startLine < 0) {
-                    linesToSkip = timestampLogFileLineAccessor.getLineCount() + query.startLine;
-                }
+            @Override
+            public void close() throws IOException {
+                lines.close();
+            }
+        };
 
-                for (int line = 0; line < linesToSkip; line++) {
-                    timestampLogFileLineAccessor.skipLine();
-                }
-                return linesToSkip;
+        return new BufferedReader(reader);
+    }
+
+    /**
+     * Write the page of time-stamps. Each line is formatted into a reused buffer and encoded
+     * directly by the given writer, so that the page is streamed without holding it in memory.
+     *
+     * @param writer the writer for the page
+     * @param lineSeparator the string written after each line
+     */
+    static void write(Run<?, ?> build, TimestampsActionQuery query, Writer writer, String lineSeparator)
+            throws IOException {
+        StringBuilder line = new StringBuilder();
+        if (query.currentTime) {
+            appendTimestamp(line, query, currentTimestamp(build));
+            writer.append(line).append(lineSeparator);
+            return;
+        }
+        try (Lines lines = new Lines(query, build)) {
+            while (lines.appendNextLine(line)) {
+                writer.append(line).append(lineSeparator);
+                line.setLength(0);
             }
+        }
+    }
 
-            private Optional<Integer> resolveEndLine(TimestampsActionQuery query) throws IOException {
-                if (query.endLine.isPresent() && query.endLine.get() < 0) {
-                    return Optional.of(timestampLogFileLineAccessor.getLineCount() + query.endLine.get() + 1);
-                }
-                return query.endLine;
+    private static Timestamp currentTimestamp(Run<?, ?> build) {
+        long buildStartTime = build.getStartTimeInMillis();
+        long millisSinceEpoch = System.currentTimeMillis();
+        return new Timestamp(millisSinceEpoch - buildStartTime, millisSinceEpoch);
+    }
+
+    private static void appendTimestamp(StringBuilder line, TimestampsActionQuery query, Timestamp timestamp) {
+        for (int i = 0; i < query.timestampFormats.size(); i++) {
+            if (i > 0) {
+                line.append(' ');
             }
+            line.append(query.timestampFormats.get(i).apply(timestamp));
+        }
+    }
 
-            private Optional<String> readNextLine(TimestampsActionQuery query) throws IOException {
+    /** The lines of the page of time-stamps, other than for the "currentTime" query parameter. */
+    private static final class Lines implements Closeable {
 
-                TimestampLogFileLine timestampLogFileLine = timestampLogFileLineAccessor.readLine();
-                Optional<Timestamp> timestamp = timestampLogFileLine.getTimestamp();
-                Optional<String> logFileLine = timestampLogFileLine.getLogFileLine();
+        private final TimestampsActionQuery query;
 
-                String result = "";
-                if (timestamp.isPresent()) {
-                    List<String> parts = new ArrayList<>();
-                    for (Function<Timestamp, String> format : query.timestampFormats) {
-                        parts.add(format.apply(timestamp.get()));
-                    }
-                    result = String.join(" ", parts);
-                }
-                if (query.appendLogLine) {
-                    result += "  ";
-                    if (logFileLine.isPresent()) {
-                        result += ConsoleNote.removeNotes(logFileLine.get());
-                    }
-                }
+        private final Run<?, ?> build;
+
+        private int linesRead;
+
+        private Optional<Integer> endLine = Optional.empty();
+
+        /** Opened when the first line is read. */
+        @CheckForNull
+        private TimestampLogFileLineAccessor timestampLogFileLineAccessor;
+
+        Lines(TimestampsActionQuery query, Run<?, ?> build) {
+            this.query = query;
+            this.build = build;
+        }
 
-                if (!timestamp.isPresent() && !logFileLine.isPresent()) {
-                    return Optional.empty();
+        /**
+         * Append the next line of the page, without a line separator.
+         *
+         * @return {@code false} if there are no more lines
+         */
+        boolean appendNextLine(StringBuilder line) throws IOException {
+            if (timestampLogFileLineAccessor == null) {
+                timestampLogFileLineAccessor = new TimestampLogFileLineAccessor(build);
+                linesRead = readToStartLine(timestampLogFileLineAccessor);
+                endLine = resolveEndLine(timestampLogFileLineAccessor);
+            }
+
+            TimestampLogFileLine timestampLogFileLine = timestampLogFileLineAccessor.readLine();
+            Optional<Timestamp> timestamp = timestampLogFileLine.getTimestamp();
+            if (!timestamp.isPresent() && !timestampLogFileLine.hasLogFileLine()) {
+                return false;
+            }
+            linesRead++;
+            if (endLine.isPresent() && linesRead > endLine.get()) {
+                return false;
+            }
+
+            if (timestamp.isPresent()) {
+                appendTimestamp(line, query, timestamp.get());
+            }
+            if (query.appendLogLine) {
+                // Only decode the line of the console log if it is displayed.
+                Optional<String> logFileLine = timestampLogFileLine.getLogFileLine();
+                line.append("  ");
+                if (logFileLine.isPresent()) {
+                    line.append(ConsoleNote.removeNotes(logFileLine.get()));
                 }
-                return Optional.of(result);
             }
+            return true;
+        }
 
-            @Override
-            public void close() throws IOException {
-                timestampLogFileLineAccessor.close();
+        private int readToStartLine(TimestampLogFileLineAccessor accessor) throws IOException {
+            int linesToSkip = Math.max(query.startLine - 1, 0);
+            if (query.startLine < 0) {
+                linesToSkip = accessor.getLineCount() + query.startLine;
             }
-        };
 
-        return new BufferedReader(reader);
+            accessor.skipLines(linesToSkip);
+            return linesToSkip;
+        }
+
+        private Optional<Integer> resolveEndLine(TimestampLogFileLineAccessor accessor) {
+            if (query.endLine.isPresent() && query.endLine.get() < 0) {
+                return Optional.of(accessor.getLineCount() + query.endLine.get() + 1);
+            }
+            return query.endLine;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (timestampLogFileLineAccessor != null) {
+                timestampLogFileLineAccessor.close();
+            }
+        }
     }
 
     private TimestampsActionOutput() {}
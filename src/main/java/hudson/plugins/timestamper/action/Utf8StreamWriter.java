@@ -0,0 +1,135 @@
+package hudson.plugins.timestamper.action;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Writer which encodes characters as UTF-8 directly into a reusable byte buffer, which is written to
+ * the underlying stream each time it fills up. Unlike {@link java.io.OutputStreamWriter}, appending a
+ * {@link CharSequence} such as a {@link StringBuilder} does not copy it into a new {@link String}.
+ *
+ * <p>Unpaired surrogates are encoded as {@code '?'}, as for {@link String#getBytes}.
+ */
+final class Utf8StreamWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The maximum number of bytes written for a single character. */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    private final OutputStream outputStream;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int bufferLength;
+
+    /** A high surrogate which has not yet been followed by a character, or zero. */
+    private char highSurrogate;
+
+    Utf8StreamWriter(OutputStream outputStream) {
+        this.outputStream = Objects.requireNonNull(outputStream);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        for (int i = off; i < off + len; i++) {
+            encode(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        append(str, off, off + len);
+    }
+
+    @Override
+    public Utf8StreamWriter append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Utf8StreamWriter append(CharSequence csq, int start, int end) throws IOException {
+        Objects.checkFromToIndex(start, end, csq.length());
+        for (int i = start; i < end; i++) {
+            encode(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8StreamWriter append(char c) throws IOException {
+        encode(c);
+        return this;
+    }
+
+    private void encode(char c) throws IOException {
+        if (bufferLength > buffer.length - MAX_BYTES_PER_CHAR) {
+            flushBuffer();
+        }
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[bufferLength++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[bufferLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[bufferLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[bufferLength++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            buffer[bufferLength++] = '?';
+            encode(c);
+            return;
+        }
+        if (c < 0x80) {
+            buffer[bufferLength++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[bufferLength++] = (byte) (0xC0 | (c >> 6));
+            buffer[bufferLength++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[bufferLength++] = '?';
+        } else {
+            buffer[bufferLength++] = (byte) (0xE0 | (c >> 12));
+            buffer[bufferLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[bufferLength++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (bufferLength > 0) {
+            outputStream.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+    }
+
+    /** Write the buffered bytes to the underlying stream and flush it. */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        outputStream.flush();
+    }
+
+    /**
+     * Write the buffered bytes and close the underlying stream. A trailing high surrogate is encoded
+     * as {@code '?'}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            encode('?');
+        }
+        flushBuffer();
+        outputStream.close();
+    }
+}
@@ -0,0 +1,78 @@
+package hudson.plugins.timestamper.annotator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.MarkupText;
+import hudson.console.ConsoleAnnotator;
+import hudson.console.ConsoleAnnotatorFactory;
+import hudson.model.Run;
+import hudson.plugins.timestamper.CompactTimestampNote;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.format.TimestampFormat;
+import hudson.plugins.timestamper.format.TimestampFormatProvider;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import java.nio.file.Files;
+
+/**
+ * Inserts formatted time-stamps into the annotated console output for the lines which start with a
+ * {@link CompactTimestampNote} signed with the key of the build, and hides the note.
+ */
+public final class CompactTimestampNoteAnnotator extends ConsoleAnnotator<Run<?, ?>> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Whether {@link #buildStartTime} and {@link #compactNote} have been resolved. Reset when this
+     * annotator is deserialized for the next chunk of the console log, so that the key of the build
+     * is not sent to the browser with the state of this annotator.
+     */
+    private transient boolean resolved;
+
+    @CheckForNull
+    private transient CompactTimestampNote compactNote;
+
+    private transient long buildStartTime;
+
+    @CheckForNull
+    private transient TimestampFormat format;
+
+    CompactTimestampNoteAnnotator() {}
+
+    @Override
+    public ConsoleAnnotator<Run<?, ?>> annotate(@NonNull Run<?, ?> build, @NonNull MarkupText text) {
+        if (!resolved) {
+            compactNote = CompactTimestampNote.forBuild(build);
+            if (compactNote == null) {
+                return null;
+            }
+            buildStartTime = build.getStartTimeInMillis();
+            format = TimestampFormatProvider.get();
+            resolved = true;
+        }
+        long elapsedMillis = compactNote.decode(text.getText());
+        if (elapsedMillis == CompactTimestampNote.NOT_A_NOTE) {
+            return this;
+        }
+        format.markup(text, new Timestamp(elapsedMillis, buildStartTime + elapsedMillis));
+        text.addMarkup(
+                0, CompactTimestampNote.length(elapsedMillis), "<span style=\"display: none\">", "</span>");
+        return this;
+    }
+
+    /** Provides the initial {@link CompactTimestampNoteAnnotator} for an annotated console output. */
+    @Extension
+    public static final class Factory extends ConsoleAnnotatorFactory<Run<?, ?>> {
+
+        @Override
+        public ConsoleAnnotator<Run<?, ?>> newInstance(Run<?, ?> build) {
+            if (Files.isRegularFile(TimestamperPaths.timestampsFile(build))) {
+                return null; // the time-stamps are recorded in the time-stamps file instead
+            }
+            if (!Files.isRegularFile(TimestamperPaths.compactNoteKeyFile(build))) {
+                return null; // the build did not write compact notes
+            }
+            return new CompactTimestampNoteAnnotator();
+        }
+    }
+}
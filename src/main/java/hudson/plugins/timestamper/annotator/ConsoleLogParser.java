@@ -25,11 +25,13 @@ package hudson.plugins.timestamper.annotator;
 
 import com.google.common.io.ByteStreams;
 import hudson.model.Run;
+import hudson.plugins.timestamper.io.LiveTimestamps;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.util.Objects;
+import java.util.Optional;
 import net.jcip.annotations.Immutable;
 import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -70,13 +72,27 @@ class ConsoleLogParser implements Serializable {
             return result;
         }
 
+        if (build.isBuilding() || pos > 0) {
+            long posFromStart = pos;
+            if (pos < 0) {
+                posFromStart = logLength + pos;
+            }
+            Optional<LineIndexReader.Checkpoint> checkpoint = floor(build, posFromStart);
+            if (checkpoint.isPresent()) {
+                Optional<ConsoleLogParser.Result> result = parseFromCheckpoint(build, posFromStart, checkpoint.get());
+                if (result.isPresent()) {
+                    return result.get();
+                }
+            }
+        }
+
         try (InputStream inputStream = new BufferedInputStream(build.getLogInputStream())) {
             if (build.isBuilding() || pos > 0) {
                 long posFromStart = pos;
                 if (pos < 0) {
                     posFromStart = logLength + pos;
                 }
-                return parseFromStart(inputStream, posFromStart);
+                return parseFromStart(inputStream, posFromStart, false);
             } else {
                 ByteStreams.skipFully(inputStream, logLength + pos - 1);
                 return parseFromFinish(new BoundedInputStream(inputStream, -pos));
@@ -84,8 +100,49 @@ class ConsoleLogParser implements Serializable {
         }
     }
 
-    private ConsoleLogParser.Result parseFromStart(InputStream inputStream, long posFromStart) throws IOException {
+    /**
+     * Find the last known position before the given position which follows a new line. The
+     * positions recorded in memory for a running build are the most recent, so they are checked
+     * before the line index.
+     */
+    private static Optional<LineIndexReader.Checkpoint> floor(Run<?, ?> build, long posFromStart)
+            throws IOException {
+        LiveTimestamps liveTimestamps = LiveTimestamps.get(build);
+        LiveTimestamps.LineStart lineStart = liveTimestamps == null ? null : liveTimestamps.floor(posFromStart);
+        if (lineStart != null) {
+            return Optional.of(
+                    new LineIndexReader.Checkpoint(lineStart.position, lineStart.lineNumber, lineStart.fingerprint));
+        }
+        return LineIndexReader.floor(build, posFromStart);
+    }
+
+    /**
+     * Parse the console log from a position recorded in the line index or in memory.
+     *
+     * @return the result, or {@link Optional#empty()} if the console log does not match the index
+     */
+    private Optional<ConsoleLogParser.Result> parseFromCheckpoint(
+            Run<?, ?> build, long posFromStart, LineIndexReader.Checkpoint checkpoint) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(build.getLogInputStream())) {
+            // Each indexed position follows a new line character, which its fingerprint includes.
+            if (!checkpoint.skipTo(inputStream)) {
+                return Optional.empty();
+            }
+            ConsoleLogParser.Result result = parseFromStart(inputStream, posFromStart - checkpoint.position, true);
+            result.lineNumber += (int) checkpoint.lineNumber;
+            return Optional.of(result);
+        }
+    }
+
+    /**
+     * Parse the console log from the current position of the input stream.
+     *
+     * @param atNewLine whether the character before the current position was a new line
+     */
+    private ConsoleLogParser.Result parseFromStart(InputStream inputStream, long posFromStart, boolean atNewLine)
+            throws IOException {
         ConsoleLogParser.Result result = new ConsoleLogParser.Result();
+        result.atNewLine = atNewLine;
 
         for (long i = 0; i < posFromStart; i++) {
             int value = inputStream.read();
@@ -0,0 +1,120 @@
+package hudson.plugins.timestamper.annotator;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.io.LogFingerprint;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.function.Predicate;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Reads the index of the console log written by {@code LineIndexWriter}.
+ *
+ * <p>The index consists of records of two 8-byte values and a 4-byte value: a position in the
+ * console log which immediately follows a new line character, the number of new line characters
+ * before that position, and the {@link LogFingerprint} of that position. The records are in
+ * ascending order, so they can be binary searched in place.
+ */
+@Restricted(NoExternalUse.class)
+public final class LineIndexReader {
+
+    private static final int RECORD_SIZE = 2 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * A position in the console log, the number of new line characters before it, and its {@link
+     * LogFingerprint}.
+     */
+    public static final class Checkpoint {
+
+        public final long position;
+
+        public final long lineNumber;
+
+        public final int fingerprint;
+
+        public Checkpoint(long position, long lineNumber, int fingerprint) {
+            this.position = position;
+            this.lineNumber = lineNumber;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Skip to this position of the console log.
+         *
+         * @param inputStream the console log, at its start
+         * @return whether the input stream is now at this position, with the bytes before it
+         *     matching the fingerprint
+         */
+        public boolean skipTo(InputStream inputStream) throws IOException {
+            return LogFingerprint.skipTo(inputStream, position, fingerprint);
+        }
+    }
+
+    /**
+     * Find the last indexed position before the given position in the console log.
+     *
+     * @param build the build to inspect
+     * @param position the position in the console log
+     * @return the indexed position, or {@link Optional#empty()} if there is none
+     */
+    public static Optional<Checkpoint> floor(Run<?, ?> build, long position) throws IOException {
+        return last(build, checkpoint -> checkpoint.position < position);
+    }
+
+    /**
+     * Find the last indexed position at or before the start of the given line of the console log.
+     *
+     * @param build the build to inspect
+     * @param lineNumber the line number, starting at line zero
+     * @return the indexed position, or {@link Optional#empty()} if there is none
+     */
+    public static Optional<Checkpoint> floorLine(Run<?, ?> build, long lineNumber) throws IOException {
+        return last(build, checkpoint -> checkpoint.lineNumber <= lineNumber);
+    }
+
+    /** Binary search for the last record which matches the given predicate. */
+    private static Optional<Checkpoint> last(Run<?, ?> build, Predicate<Checkpoint> predicate) throws IOException {
+        Path lineIndexFile = TimestamperPaths.lineIndexFile(build);
+        if (!Files.isRegularFile(lineIndexFile)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(lineIndexFile, StandardOpenOption.READ)) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            long low = 0;
+            long high = channel.size() / RECORD_SIZE - 1;
+            Optional<Checkpoint> result = Optional.empty();
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                Checkpoint checkpoint = readRecord(channel, record, mid);
+                if (predicate.test(checkpoint)) {
+                    result = Optional.of(checkpoint);
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static Checkpoint readRecord(FileChannel channel, ByteBuffer buffer, long record) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, record * RECORD_SIZE + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return new Checkpoint(buffer.getLong(0), buffer.getLong(Long.BYTES), buffer.getInt(2 * Long.BYTES));
+    }
+
+    private LineIndexReader() {}
+}
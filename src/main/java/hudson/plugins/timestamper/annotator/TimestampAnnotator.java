@@ -31,8 +31,10 @@ import hudson.model.Run;
 import hudson.plugins.timestamper.Timestamp;
 import hudson.plugins.timestamper.format.TimestampFormat;
 import hudson.plugins.timestamper.format.TimestampFormatProvider;
+import hudson.plugins.timestamper.io.TimestampsCache;
 import hudson.plugins.timestamper.io.TimestampsReader;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -51,8 +53,37 @@ public final class TimestampAnnotator extends ConsoleAnnotator<Run<?, ?>> {
 
     private final ConsoleLogParser logParser;
 
+    /**
+     * The next time-stamp entry to read, or {@code -1} if the console log has not been parsed yet.
+     *
+     * <p>This and the following fields are the position of {@link #timestampsReader}, which is
+     * stored in place of the reader when this annotator is serialized between polls of the console
+     * log.
+     */
+    private long entry = -1;
+
+    /** The position of {@link #entry} in the time-stamps file, or {@code -1} if it is not known. */
+    private long filePointer = -1;
+
+    private long elapsedMillis;
+
+    private long millisSinceEpoch;
+
+    /**
+     * Reader for the time-stamps file, if the time-stamps are not cached.
+     *
+     * <p>Transient: created again from the stored position when needed.
+     */
+    @CheckForNull
+    private transient TimestampsReader timestampsReader;
+
+    /**
+     * The cached time-stamps of a completed build, read from {@link #entry}.
+     *
+     * <p>Transient: retrieved from the cache again when needed.
+     */
     @CheckForNull
-    private TimestampsReader timestampsReader;
+    private transient TimestampsCache.Column cachedTimestamps;
 
     @CheckForNull
     private transient TimestampFormat format;
@@ -70,27 +101,32 @@ public final class TimestampAnnotator extends ConsoleAnnotator<Run<?, ?>> {
     @Override
     public ConsoleAnnotator<Run<?, ?>> annotate(@NonNull Run<?, ?> build, @NonNull MarkupText text) {
         try {
-            if (timestampsReader == null) {
+            if (entry < 0 && timestampsReader == null) {
                 ConsoleLogParser.Result logPosition = logParser.seek(build);
                 if (logPosition.endOfFile) {
                     return null; // do not annotate the following lines
                 }
 
-                if (logPosition.lineNumber < 0) {
-                    try (TimestampsReader temporaryTimestampsReader = new TimestampsReader(build)) {
-                        logPosition.lineNumber = temporaryTimestampsReader.getAbs(logPosition.lineNumber);
+                cachedTimestamps = TimestampsCache.get().get(build);
+                if (cachedTimestamps != null) {
+                    entry = logPosition.lineNumber < 0
+                            ? Math.max(cachedTimestamps.size() + logPosition.lineNumber, 0)
+                            : logPosition.lineNumber;
+                } else {
+                    timestampsReader = new TimestampsReader(build);
+                    if (logPosition.lineNumber < 0) {
+                        timestampsReader.seekFromEnd(-logPosition.lineNumber);
+                    } else {
+                        timestampsReader.skip(logPosition.lineNumber);
                     }
                 }
-
-                timestampsReader = new TimestampsReader(build);
-                timestampsReader.skip(logPosition.lineNumber);
-                Optional<Timestamp> timestamp = timestampsReader.read();
+                Optional<Timestamp> timestamp = read(build);
                 if (logPosition.atNewLine && timestamp.isPresent()) {
                     markup(text, timestamp.get());
                 }
                 return this;
             }
-            Optional<Timestamp> timestamp = timestampsReader.read();
+            Optional<Timestamp> timestamp = read(build);
             if (timestamp.isPresent()) {
                 markup(text, timestamp.get());
                 return this;
@@ -104,10 +140,47 @@ public final class TimestampAnnotator extends ConsoleAnnotator<Run<?, ?>> {
         return null; // do not annotate the following lines
     }
 
+    /**
+     * Read the next time-stamp, from the cache if possible.
+     *
+     * @return the next time-stamp, or {@link Optional#empty()} if there are no more to read
+     */
+    private Optional<Timestamp> read(Run<?, ?> build) throws IOException {
+        if (timestampsReader == null && cachedTimestamps == null) {
+            // deserialized
+            cachedTimestamps = TimestampsCache.get().get(build);
+            if (cachedTimestamps == null) {
+                timestampsReader = new TimestampsReader(
+                        build, new TimestampsReader.Position(entry, filePointer, elapsedMillis, millisSinceEpoch));
+            } else {
+                filePointer = -1;
+            }
+        }
+        if (cachedTimestamps != null) {
+            if (entry >= cachedTimestamps.size()) {
+                return Optional.empty();
+            }
+            return Optional.of(cachedTimestamps.get((int) entry++));
+        }
+        return timestampsReader.read();
+    }
+
     private void markup(MarkupText text, Timestamp timestamp) {
         if (format == null) {
             format = TimestampFormatProvider.get();
         }
         format.markup(text, timestamp);
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (timestampsReader != null) {
+            TimestampsReader.Position position = timestampsReader.position();
+            entry = position.entry;
+            filePointer = position.filePointer;
+            elapsedMillis = position.elapsedMillis;
+            millisSinceEpoch = position.millisSinceEpoch;
+            timestampsReader.close();
+        }
+        out.defaultWriteObject();
+    }
 }
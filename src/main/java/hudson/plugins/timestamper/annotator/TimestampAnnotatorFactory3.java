@@ -69,7 +69,8 @@ public final class TimestampAnnotatorFactory3 extends ConsoleAnnotatorFactory<Ru
      *
      * @return the offset in bytes
      */
-    private static long getOffset(StaplerRequest2 request) {
+    @Restricted(NoExternalUse.class)
+    public static long getOffset(StaplerRequest2 request) {
         String path = request.getPathInfo();
         if (path == null) {
             // JENKINS-16438
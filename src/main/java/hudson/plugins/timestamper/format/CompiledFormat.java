@@ -0,0 +1,205 @@
+package hudson.plugins.timestamper.format;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A date or duration pattern whose literal HTML has been sanitized once, so that the output of the
+ * pattern does not need to be sanitized for every line.
+ *
+ * <p>The literal text of the pattern which contains HTML is removed from the pattern and replaced
+ * by a marker character, leaving a plain pattern. The removed literal text is sanitized once as a
+ * template, with a placeholder for each run of output of the plain pattern. The runs of output are
+ * then inserted into the sanitized template, provided they only contain characters which the
+ * sanitizer leaves unchanged in text, such as letters and digits. If a run contains any other
+ * character, the output must be sanitized as before.
+ *
+ * <p>Patterns whose literal HTML could interact with the runs of output, e.g. by forming a
+ * character reference or a tag name, are not compiled. This is detected by checking that every
+ * placeholder survives sanitization of the template as text, in order.
+ */
+final class CompiledFormat {
+
+    /** Separates the runs of output of the plain pattern. */
+    private static final char MARKER = '\u0000';
+
+    private static final String PLACEHOLDER_PREFIX = "timestamperfield";
+
+    private static final String PLACEHOLDER_SUFFIX = "end";
+
+    /** The pattern with the literal HTML replaced by {@link #MARKER}. */
+    private final String plainPattern;
+
+    /** The sanitized literal HTML before, between and after the runs of output. */
+    private final String[] sanitizedLiterals;
+
+    private CompiledFormat(String plainPattern, String[] sanitizedLiterals) {
+        this.plainPattern = plainPattern;
+        this.sanitizedLiterals = sanitizedLiterals;
+    }
+
+    /**
+     * Compile a date or duration pattern.
+     *
+     * @param pattern the pattern, in {@link org.apache.commons.lang3.time.FastDateFormat} or {@link
+     *     org.apache.commons.lang3.time.DurationFormatUtils} syntax
+     * @return the compiled pattern, or {@code null} if the output of this pattern must be sanitized
+     *     for every line
+     */
+    @CheckForNull
+    static CompiledFormat compile(String pattern) {
+        // The two syntaxes treat doubled quotes and square brackets differently, and the sanitizer
+        // treats curly brackets depending on the neighbouring text.
+        if (pattern.contains("''") || containsAny(pattern, "[]{}") || pattern.indexOf(MARKER) >= 0) {
+            return null;
+        }
+
+        List<String> runs = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        StringBuilder literal = null;
+        int i = 0;
+        while (i < pattern.length()) {
+            String source;
+            String text;
+            if (pattern.charAt(i) == '\'') {
+                int end = pattern.indexOf('\'', i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                source = pattern.substring(i, end + 1);
+                text = pattern.substring(i + 1, end);
+                i = end + 1;
+            } else {
+                source = pattern.substring(i, i + 1);
+                text = source;
+                i++;
+            }
+            if (isInert(text)) {
+                if (literal != null) {
+                    literals.add(literal.toString());
+                    runs.add(run.toString());
+                    literal = null;
+                    run = new StringBuilder();
+                }
+                run.append(source);
+            } else {
+                if (text.indexOf('&') >= 0) {
+                    return null;
+                }
+                if (literal == null) {
+                    literal = new StringBuilder();
+                }
+                literal.append(text);
+            }
+        }
+        if (literal != null) {
+            literals.add(literal.toString());
+            runs.add(run.toString());
+            run = new StringBuilder();
+        }
+        runs.add(run.toString());
+
+        StringBuilder template = new StringBuilder();
+        StringBuilder plainPattern = new StringBuilder();
+        for (int j = 0; j < runs.size(); j++) {
+            if (j > 0) {
+                template.append(literals.get(j - 1));
+                plainPattern.append('\'').append(MARKER).append('\'');
+            }
+            template.append(placeholder(j));
+            plainPattern.append(runs.get(j));
+        }
+
+        String sanitizedTemplate = TimestampFormatUtils.sanitize(template.toString());
+        String[] sanitizedLiterals = new String[runs.size() + 1];
+        int start = 0;
+        for (int j = 0; j < runs.size(); j++) {
+            String placeholder = placeholder(j);
+            int index = sanitizedTemplate.indexOf(placeholder, start);
+            if (index < 0 || sanitizedTemplate.indexOf(placeholder, index + 1) >= 0) {
+                return null;
+            }
+            sanitizedLiterals[j] = sanitizedTemplate.substring(start, index);
+            start = index + placeholder.length();
+        }
+        sanitizedLiterals[runs.size()] = sanitizedTemplate.substring(start);
+        return new CompiledFormat(plainPattern.toString(), sanitizedLiterals);
+    }
+
+    /**
+     * Get the pattern to format time-stamps with before calling {@link #render(String)}.
+     *
+     * @return the pattern without the literal HTML
+     */
+    String getPlainPattern() {
+        return plainPattern;
+    }
+
+    /**
+     * Insert the output of the plain pattern into the sanitized literal HTML.
+     *
+     * @param plainOutput the output of the plain pattern
+     * @return the sanitized output, or {@code null} if the output contains characters which must be
+     *     sanitized
+     */
+    @CheckForNull
+    String render(String plainOutput) {
+        StringBuilder result = new StringBuilder(plainOutput.length() + 32);
+        int start = 0;
+        int lastRun = sanitizedLiterals.length - 2;
+        for (int j = 0; j <= lastRun; j++) {
+            int end = j < lastRun ? plainOutput.indexOf(MARKER, start) : plainOutput.length();
+            if (end < 0) {
+                return null;
+            }
+            for (int i = start; i < end; i++) {
+                if (!isInert(plainOutput.charAt(i))) {
+                    return null;
+                }
+            }
+            result.append(sanitizedLiterals[j]).append(plainOutput, start, end);
+            start = end + 1;
+        }
+        return result.append(sanitizedLiterals[lastRun + 1]).toString();
+    }
+
+    private static String placeholder(int run) {
+        return PLACEHOLDER_PREFIX + run + PLACEHOLDER_SUFFIX;
+    }
+
+    private static boolean isInert(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!isInert(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether the sanitizer leaves the given character unchanged in text. */
+    private static boolean isInert(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9')
+                    || c == ' '
+                    || c == ':'
+                    || c == '.'
+                    || c == ','
+                    || c == '-'
+                    || c == '/';
+        }
+        return Character.isLetter(c);
+    }
+
+    private static boolean containsAny(String text, String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            if (text.indexOf(chars.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
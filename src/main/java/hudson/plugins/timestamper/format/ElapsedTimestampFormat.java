@@ -23,6 +23,7 @@
  */
 package hudson.plugins.timestamper.format;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.plugins.timestamper.Timestamp;
 import java.util.Objects;
@@ -38,20 +39,56 @@ public final class ElapsedTimestampFormat extends TimestampFormat {
 
     private final String elapsedTimeFormat;
 
+    /**
+     * Whether the format shows milliseconds, otherwise lines in the same second look the same.
+     *
+     * <p>Transient: derived from the pattern.
+     */
+    private final transient boolean showsMillis;
+
+    /** Transient: rendered values are not part of the identity of this format. */
+    private final transient RenderingCache cache = new RenderingCache();
+
+    /**
+     * The pattern with its literal HTML sanitized in advance, or {@code null} if the output must be
+     * sanitized for every line.
+     *
+     * <p>Transient: derived from the pattern.
+     */
+    @CheckForNull
+    private final transient CompiledFormat compiledFormat;
+
     public ElapsedTimestampFormat(String elapsedTimeFormat) {
         this.elapsedTimeFormat = Objects.requireNonNull(elapsedTimeFormat);
+        this.showsMillis = RenderingCache.showsMillis(elapsedTimeFormat);
+        this.compiledFormat = CompiledFormat.compile(elapsedTimeFormat);
     }
 
     /** {@inheritDoc} */
     @Override
     public String apply(@NonNull Timestamp timestamp) {
         if (timestamp.elapsedMillisKnown) {
-            String result = DurationFormatUtils.formatDuration(timestamp.elapsedMillis, elapsedTimeFormat);
-            return TimestampFormatUtils.sanitize(result);
+            long elapsedMillis = timestamp.elapsedMillis;
+            if (!showsMillis && elapsedMillis >= 0) {
+                elapsedMillis = RenderingCache.truncateToSecond(elapsedMillis);
+            }
+            return cache.get(elapsedMillis, this::render);
         }
         return "";
     }
 
+    private String render(long elapsedMillis) {
+        if (compiledFormat != null) {
+            String result = compiledFormat.render(
+                    DurationFormatUtils.formatDuration(elapsedMillis, compiledFormat.getPlainPattern()));
+            if (result != null) {
+                return result;
+            }
+        }
+        String result = DurationFormatUtils.formatDuration(elapsedMillis, elapsedTimeFormat);
+        return TimestampFormatUtils.sanitize(result);
+    }
+
     @Override
     public void validate() throws FormatParseException, InvalidHtmlException {
         String result;
@@ -0,0 +1,70 @@
+package hudson.plugins.timestamper.format;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.function.LongFunction;
+
+/**
+ * Remembers the most recently rendered time-stamp of a format, so that consecutive lines which
+ * share the same rendered value are only formatted and sanitized once.
+ *
+ * <p>The key is whatever value determines the output of the format, e.g. the time truncated to the
+ * second for a format which does not show milliseconds.
+ */
+final class RenderingCache {
+
+    /** The milliseconds per second, for truncating times to the second. */
+    static final long MILLIS_PER_SECOND = 1000L;
+
+    @CheckForNull
+    private Entry last;
+
+    /**
+     * Get the rendered value for the given key, rendering it if it differs from the previous key.
+     *
+     * @param key the value which determines the output
+     * @param renderer renders the output for a key
+     * @return the rendered value
+     */
+    String get(long key, LongFunction<String> renderer) {
+        Entry entry = last;
+        if (entry == null || entry.key != key) {
+            entry = new Entry(key, renderer.apply(key));
+            last = entry;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Truncate a time to the second, rounding down for negative times.
+     *
+     * @param millis the time in milliseconds
+     * @return the first millisecond of the second containing that time
+     */
+    static long truncateToSecond(long millis) {
+        return Math.floorDiv(millis, MILLIS_PER_SECOND) * MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Whether a date or duration pattern shows milliseconds. Quoted text is not excluded, so this
+     * may return {@code true} for a pattern that does not show milliseconds.
+     *
+     * @param pattern the pattern
+     * @return {@code false} if the pattern certainly does not show milliseconds
+     */
+    static boolean showsMillis(String pattern) {
+        return pattern.indexOf('S') >= 0;
+    }
+
+    /** Immutable, so that it can be shared without synchronization. */
+    private static final class Entry {
+
+        final long key;
+
+        final String value;
+
+        Entry(long key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
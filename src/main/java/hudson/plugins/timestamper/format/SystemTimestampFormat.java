@@ -23,6 +23,7 @@
  */
 package hudson.plugins.timestamper.format;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.plugins.timestamper.Timestamp;
 import java.util.Date;
@@ -50,6 +51,33 @@ public final class SystemTimestampFormat extends TimestampFormat {
 
     private final Optional<String> timeZoneId;
 
+    /**
+     * Whether the format shows milliseconds, otherwise lines in the same second look the same.
+     *
+     * <p>Transient: derived from the pattern.
+     */
+    private final transient boolean showsMillis;
+
+    /** Transient: rendered values are not part of the identity of this format. */
+    private final transient RenderingCache cache = new RenderingCache();
+
+    /**
+     * The pattern with its literal HTML sanitized in advance, or {@code null} if the output must be
+     * sanitized for every line.
+     *
+     * <p>Transient: derived from the pattern.
+     */
+    @CheckForNull
+    private final transient CompiledFormat compiledFormat;
+
+    /**
+     * Formats the plain pattern of {@link #compiledFormat}.
+     *
+     * <p>Transient: derived from the pattern.
+     */
+    @CheckForNull
+    private final transient FastDateFormat plainFormat;
+
     public SystemTimestampFormat(String systemTimeFormat, Optional<String> timeZoneId, Locale locale) {
         TimeZone timeZone = null;
         if (timeZoneId.isPresent()) {
@@ -66,12 +94,39 @@ public final class SystemTimestampFormat extends TimestampFormat {
             throw new FormatParseException(e);
         }
         this.timeZoneId = timeZoneId;
+        this.showsMillis = RenderingCache.showsMillis(format.getPattern());
+        CompiledFormat compiledFormat = CompiledFormat.compile(systemTimeFormat);
+        FastDateFormat plainFormat = null;
+        if (compiledFormat != null) {
+            try {
+                plainFormat = FastDateFormat.getInstance(compiledFormat.getPlainPattern(), timeZone, locale);
+            } catch (IllegalArgumentException e) {
+                compiledFormat = null;
+            }
+        }
+        this.compiledFormat = compiledFormat;
+        this.plainFormat = plainFormat;
     }
 
     /** {@inheritDoc} */
     @Override
     public String apply(@NonNull Timestamp timestamp) {
-        String result = format.format(new Date(timestamp.millisSinceEpoch));
+        long millisSinceEpoch = timestamp.millisSinceEpoch;
+        if (!showsMillis) {
+            millisSinceEpoch = RenderingCache.truncateToSecond(millisSinceEpoch);
+        }
+        return cache.get(millisSinceEpoch, this::render);
+    }
+
+    private String render(long millisSinceEpoch) {
+        Date date = new Date(millisSinceEpoch);
+        if (compiledFormat != null && plainFormat != null) {
+            String result = compiledFormat.render(plainFormat.format(date));
+            if (result != null) {
+                return result;
+            }
+        }
+        String result = format.format(date);
         return TimestampFormatUtils.sanitize(result);
     }
 
@@ -38,14 +38,16 @@ import org.kohsuke.stapler.StaplerRequest2;
  */
 public class TimestampFormatProvider {
 
+    /** The request attribute which holds the format selected for that request. */
+    private static final String REQUEST_ATTRIBUTE = TimestampFormatProvider.class.getName() + ".format";
+
     private static Supplier<TimestampFormat> SUPPLIER = () -> {
         TimestamperConfig config = TimestamperConfig.get();
         StaplerRequest2 request = Stapler.getCurrentRequest2();
         if (request == null) {
             return EmptyTimestampFormat.INSTANCE;
         }
-        return TimestampFormatProvider.get(
-                config.getSystemTimeFormat(), config.getElapsedTimeFormat(), request, Locale.getDefault());
+        return TimestampFormatProvider.get(config, request, Locale.getDefault());
     };
 
     /**
@@ -57,6 +59,25 @@ public class TimestampFormatProvider {
         return SUPPLIER.get();
     }
 
+    /**
+     * Get the time-stamp format for the given request. The format is remembered as an attribute of
+     * the request, so that the cookies are only read once per request rather than once per line.
+     */
+    static TimestampFormat get(TimestamperConfig config, StaplerRequest2 request, Locale locale) {
+        // Read the version first, so that a concurrent change is detected by the next call.
+        long configVersion = config.getConfigVersion();
+        Object attribute = request.getAttribute(REQUEST_ATTRIBUTE);
+        if (attribute instanceof RequestFormat) {
+            RequestFormat requestFormat = (RequestFormat) attribute;
+            if (requestFormat.configVersion == configVersion && requestFormat.locale.equals(locale)) {
+                return requestFormat.format;
+            }
+        }
+        TimestampFormat format = get(config.getSystemTimeFormat(), config.getElapsedTimeFormat(), request, locale);
+        request.setAttribute(REQUEST_ATTRIBUTE, new RequestFormat(format, configVersion, locale));
+        return format;
+    }
+
     static TimestampFormat get(
             String systemTimeFormat, String elapsedTimeFormat, StaplerRequest2 request, Locale locale) {
 
@@ -105,4 +126,20 @@ public class TimestampFormatProvider {
         long offsetInMillis = -Integer.parseInt(offset);
         return TimeZoneUtils.getTimeZoneId(offsetInMillis);
     }
+
+    /** The format selected for a request, and the configuration it was selected with. */
+    private static final class RequestFormat {
+
+        final TimestampFormat format;
+
+        final long configVersion;
+
+        final Locale locale;
+
+        RequestFormat(TimestampFormat format, long configVersion, Locale locale) {
+            this.format = format;
+            this.configVersion = configVersion;
+            this.locale = locale;
+        }
+    }
 }
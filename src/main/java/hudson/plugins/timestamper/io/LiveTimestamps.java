@@ -0,0 +1,277 @@
+package hudson.plugins.timestamper.io;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The recent time-stamps of a running build, recorded in memory as the console log is written, so
+ * that the latest lines of the console log and their time-stamps can be found without reading the
+ * files of the build.
+ *
+ * <p>A ring buffer holds a record for each of the most recent writes to the console log: the
+ * position in the console log after the write, the numbers of new lines and time-stamp entries
+ * before that position, the {@link LogFingerprint} of that position if it follows a new line, and
+ * the time-stamp of the lines which were started by the write.
+ *
+ * <p>Running builds are registered by their time-stamps file. The registry only holds weak
+ * references, so the time-stamps of a build are discarded with its console log output stream even
+ * if that stream is never closed. The registry is split into stripes with separate locks, so that
+ * the builds which start and finish at the same time rarely contend for the same lock.
+ */
+@Restricted(NoExternalUse.class)
+public final class LiveTimestamps {
+
+    /** The default number of writes to the console log which are remembered for each build. */
+    static final int DEFAULT_CAPACITY = Integer.getInteger(LiveTimestamps.class.getName() + ".capacity", 1024);
+
+    private static final Stripe[] STRIPES = new Stripe[16];
+
+    static {
+        for (int i = 0; i < STRIPES.length; i++) {
+            STRIPES[i] = new Stripe();
+        }
+    }
+
+    private final Path timestampsFile;
+
+    /** The position in the console log after each write. */
+    private final long[] positions;
+
+    /** The number of new lines in the console log before {@link #positions}. */
+    private final long[] lineCounts;
+
+    /** Whether the last byte of each write was a new line. */
+    private final boolean[] atNewLine;
+
+    /** The fingerprint of {@link #positions} which follow a new line. */
+    private final int[] fingerprints;
+
+    /** The number of time-stamp entries before {@link #positions}. */
+    private final long[] entryCounts;
+
+    /** The elapsed time of the lines which were started by each write. */
+    private final long[] elapsedMillis;
+
+    /** The clock time of the lines which were started by each write. */
+    private final long[] millisSinceEpoch;
+
+    /** The number of writes recorded, including those no longer in the ring buffer. */
+    private long records;
+
+    private LiveTimestamps(Path timestampsFile, int capacity) {
+        this.timestampsFile = timestampsFile;
+        this.positions = new long[capacity];
+        this.lineCounts = new long[capacity];
+        this.atNewLine = new boolean[capacity];
+        this.fingerprints = new int[capacity];
+        this.entryCounts = new long[capacity];
+        this.elapsedMillis = new long[capacity];
+        this.millisSinceEpoch = new long[capacity];
+    }
+
+    /**
+     * Register a running build, replacing any previous registration for the same time-stamps file.
+     *
+     * @param timestampsFile the time-stamps file of the build
+     * @return the time-stamps to record as the console log is written
+     */
+    public static LiveTimestamps register(Path timestampsFile) {
+        return register(timestampsFile, DEFAULT_CAPACITY);
+    }
+
+    static LiveTimestamps register(Path timestampsFile, int capacity) {
+        LiveTimestamps liveTimestamps = new LiveTimestamps(timestampsFile, capacity);
+        Stripe stripe = stripe(timestampsFile);
+        synchronized (stripe) {
+            stripe.builds.values().removeIf(reference -> reference.get() == null);
+            stripe.builds.put(timestampsFile, new WeakReference<>(liveTimestamps));
+        }
+        return liveTimestamps;
+    }
+
+    /**
+     * Get the recent time-stamps of a running build.
+     *
+     * @return the time-stamps, or {@code null} if the build is not running or is not registered
+     */
+    @CheckForNull
+    public static LiveTimestamps get(Run<?, ?> build) {
+        return build.isBuilding() ? get(TimestamperPaths.timestampsFile(build)) : null;
+    }
+
+    /**
+     * Get the recent time-stamps of a running build.
+     *
+     * @param timestampsFile the time-stamps file of the build
+     * @return the time-stamps, or {@code null} if the build is not registered
+     */
+    @CheckForNull
+    static LiveTimestamps get(Path timestampsFile) {
+        Stripe stripe = stripe(timestampsFile);
+        synchronized (stripe) {
+            WeakReference<LiveTimestamps> reference = stripe.builds.get(timestampsFile);
+            return reference == null ? null : reference.get();
+        }
+    }
+
+    /** Remove the registration of this build, once its console log is complete. */
+    public void unregister() {
+        Stripe stripe = stripe(timestampsFile);
+        synchronized (stripe) {
+            WeakReference<LiveTimestamps> reference = stripe.builds.get(timestampsFile);
+            if (reference != null && reference.get() == this) {
+                stripe.builds.remove(timestampsFile);
+            }
+        }
+    }
+
+    private static Stripe stripe(Path timestampsFile) {
+        return STRIPES[Math.floorMod(timestampsFile.hashCode(), STRIPES.length)];
+    }
+
+    /**
+     * Record a write to the console log.
+     *
+     * @param position the position in the console log after the write
+     * @param lineCount the number of new lines before that position
+     * @param atNewLine whether the last byte written was a new line
+     * @param fingerprint the fingerprint of the position, if the last byte written was a new line
+     * @param entryCount the number of time-stamp entries before that position
+     * @param elapsedMillis the elapsed time of the lines which were started by the write
+     * @param millisSinceEpoch the clock time of the lines which were started by the write, as stored
+     *     in the time-stamps file
+     */
+    public synchronized void record(
+            long position,
+            long lineCount,
+            boolean atNewLine,
+            int fingerprint,
+            long entryCount,
+            long elapsedMillis,
+            long millisSinceEpoch) {
+        int slot = (int) (records % positions.length);
+        positions[slot] = position;
+        lineCounts[slot] = lineCount;
+        this.atNewLine[slot] = atNewLine;
+        fingerprints[slot] = fingerprint;
+        entryCounts[slot] = entryCount;
+        this.elapsedMillis[slot] = elapsedMillis;
+        this.millisSinceEpoch[slot] = millisSinceEpoch;
+        records++;
+    }
+
+    /**
+     * Find the last recorded position before the given position which follows a new line.
+     *
+     * @param position the position in the console log
+     * @return the recorded position, or {@code null} if there is none
+     */
+    @CheckForNull
+    public synchronized LineStart floor(long position) {
+        long low = firstRecord();
+        long high = records - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            if (positions[slot(mid)] < position) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (long record = high; record >= firstRecord(); record--) {
+            if (atNewLine[slot(record)]) {
+                return new LineStart(positions[slot(record)], lineCounts[slot(record)], fingerprints[slot(record)]);
+            }
+        }
+        return null;
+    }
+
+    /** @return the number of time-stamp entries recorded */
+    synchronized long entryCount() {
+        return records == 0 ? 0 : entryCounts[slot(records - 1)];
+    }
+
+    /**
+     * Whether the given entry is within the recorded time-stamps, or is the next entry to be
+     * recorded.
+     */
+    synchronized boolean contains(long entry) {
+        return entry >= firstEntry() && entry <= entryCount();
+    }
+
+    /**
+     * Get a recorded time-stamp.
+     *
+     * @param entry the time-stamp entry
+     * @return the time-stamp, or {@code null} if it is not within the recorded time-stamps
+     */
+    @CheckForNull
+    synchronized Timestamp get(long entry) {
+        if (entry < firstEntry() || entry >= entryCount()) {
+            return null;
+        }
+        // Find the first write after which there were more entries.
+        long low = firstRecord();
+        long high = records - 1;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (entryCounts[slot(mid)] > entry) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return new Timestamp(elapsedMillis[slot(low)], millisSinceEpoch[slot(low)]);
+    }
+
+    /** @return the first record which is still in the ring buffer */
+    private long firstRecord() {
+        return Math.max(records - positions.length, 0);
+    }
+
+    /**
+     * @return the first entry for which the time-stamp is recorded, which is the first entry
+     *     started after the oldest write in the ring buffer, unless that is the first write
+     */
+    private long firstEntry() {
+        if (records <= positions.length) {
+            return 0;
+        }
+        return entryCounts[slot(firstRecord())];
+    }
+
+    private int slot(long record) {
+        return (int) (record % positions.length);
+    }
+
+    /**
+     * A position in the console log which follows a new line, the number of new lines before it, and
+     * its {@link LogFingerprint}.
+     */
+    public static final class LineStart {
+
+        public final long position;
+
+        public final long lineNumber;
+
+        public final int fingerprint;
+
+        LineStart(long position, long lineNumber, int fingerprint) {
+            this.position = position;
+            this.lineNumber = lineNumber;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static final class Stripe {
+
+        final Map<Path, WeakReference<LiveTimestamps>> builds = new HashMap<>();
+    }
+}
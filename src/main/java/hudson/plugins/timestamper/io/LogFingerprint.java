@@ -0,0 +1,128 @@
+package hudson.plugins.timestamper.io;
+
+import com.google.common.io.ByteStreams;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Fingerprint of the bytes of the console log before a position, which is recorded with that
+ * position so that readers can check that the console log file still has the same bytes there.
+ * The console log file can differ from the output seen by {@code TimestamperOutputStream}, e.g.
+ * when a decorator which runs after it changes the length of the lines, in which case the recorded
+ * positions must not be used.
+ *
+ * <p>The fingerprint is the CRC-32 of the {@link #LENGTH} bytes before the position, or of all of
+ * the bytes before it if there are fewer. Each instance also holds the last bytes written to the
+ * console log, so that the fingerprint of a position within a write can be calculated.
+ */
+@Restricted(NoExternalUse.class)
+public final class LogFingerprint {
+
+    /** The number of bytes before a position which are included in its fingerprint. */
+    static final int LENGTH = 32;
+
+    private static final byte NEWLINE = 0x0A;
+
+    private final CRC32 crc = new CRC32();
+
+    /** The last bytes written, oldest first. */
+    private final byte[] tail = new byte[LENGTH];
+
+    /** The number of bytes in {@link #tail}. */
+    private int tailLength;
+
+    /**
+     * Get the fingerprint of a position within or after a chunk of the console log which has not
+     * yet been passed to {@link #update(byte[], int, int)}.
+     *
+     * @param b the chunk of the console log
+     * @param off the start offset of the chunk
+     * @param end the offset of the position within the chunk
+     * @return the fingerprint
+     */
+    public int fingerprint(byte[] b, int off, int end) {
+        crc.reset();
+        int length = end - off;
+        if (length < LENGTH) {
+            int fromTail = Math.min(LENGTH - length, tailLength);
+            crc.update(tail, tailLength - fromTail, fromTail);
+            crc.update(b, off, length);
+        } else {
+            crc.update(b, end - LENGTH, LENGTH);
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Record a chunk of the console log which has been written.
+     *
+     * @param b the chunk of the console log
+     * @param off the start offset of the chunk
+     * @param len the length of the chunk
+     */
+    public void update(byte[] b, int off, int len) {
+        if (len >= LENGTH) {
+            System.arraycopy(b, off + len - LENGTH, tail, 0, LENGTH);
+            tailLength = LENGTH;
+            return;
+        }
+        int kept = Math.min(tailLength, LENGTH - len);
+        System.arraycopy(tail, tailLength - kept, tail, 0, kept);
+        System.arraycopy(b, off, tail, kept, len);
+        tailLength = kept + len;
+    }
+
+    /**
+     * Skip to a recorded position of the console log which follows a new line, checking its
+     * fingerprint.
+     *
+     * @param inputStream the console log, at its start
+     * @param position the recorded position
+     * @param fingerprint the recorded fingerprint
+     * @return whether the input stream is now at that position, with a new line before it and the
+     *     bytes before it matching the fingerprint
+     */
+    public static boolean skipTo(InputStream inputStream, long position, int fingerprint) throws IOException {
+        return new LogFingerprint().resumeAt(inputStream, position, fingerprint);
+    }
+
+    /**
+     * Skip to a recorded position of the console log which follows a new line, checking its
+     * fingerprint. If it matches, the bytes before the position are recorded as the last bytes
+     * written, so that the fingerprints of the following positions can be calculated.
+     *
+     * @param inputStream the console log, at its start
+     * @param position the recorded position
+     * @param fingerprint the recorded fingerprint
+     * @return whether the input stream is now at that position, with a new line before it and the
+     *     bytes before it matching the fingerprint
+     */
+    public boolean resumeAt(InputStream inputStream, long position, int fingerprint) throws IOException {
+        if (position <= 0) {
+            return false;
+        }
+        int length = (int) Math.min(position, LENGTH);
+        byte[] bytes = new byte[length];
+        try {
+            ByteStreams.skipFully(inputStream, position - length);
+            ByteStreams.readFully(inputStream, bytes);
+        } catch (EOFException e) {
+            return false;
+        }
+        if (bytes[length - 1] != NEWLINE) {
+            return false;
+        }
+        crc.reset();
+        crc.update(bytes);
+        if ((int) crc.getValue() != fingerprint) {
+            return false;
+        }
+        tailLength = 0;
+        update(bytes, 0, length);
+        return true;
+    }
+}
@@ -26,21 +26,25 @@ package hudson.plugins.timestamper.io;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.model.Run;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
-import java.util.Collections;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Optional;
-import org.apache.commons.io.input.CountingInputStream;
+import java.util.TreeMap;
 
 /**
  * Read the time-shifts for a build from disk.
  *
- * <p>The time-shifts files were written by earlier versions of this plug-in.
+ * <p>A time shift records the clock time of a time-stamp entry, when it differs from the clock time
+ * calculated from the elapsed time. Earlier versions of this plug-in wrote a time shift whenever
+ * the clock time of a line was not the clock time of the previous line plus the elapsed time. The
+ * {@link TimestampsWriter} now only writes a time shift when the clock has been changed.
  *
  * @author Steven G. Brown
  */
@@ -48,16 +52,36 @@ class TimeShiftsReader implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /** The maximum number of time-shifts files for which the time shifts are cached. */
+    private static final int MAX_CACHED_FILES = 64;
+
+    /**
+     * The time shifts read from each time-shifts file, so that a reader which is deserialized for
+     * each poll of the console log does not read the file again.
+     */
+    private static final Map<Path, TimeShifts> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, TimeShifts> eldest) {
+            return size() > MAX_CACHED_FILES;
+        }
+    };
+
     private final File timeShiftsFile;
 
     /**
-     * Cache of the time shifts for each entry.
+     * Cache of the time shifts.
      *
      * <p>Transient: derived from the contents of {@link #timeShiftsFile}.
      */
     @CheckForNull
     @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
-    private transient Map<Long, Long> timeShifts;
+    private transient TimeShifts timeShifts;
+
+    /**
+     * The index of the first time shift which may apply to the next entry. The entries are usually
+     * read in order, so this only moves forward.
+     */
+    private transient int cursor;
 
     TimeShiftsReader(Run<?, ?> build) {
         this.timeShiftsFile = TimestamperPaths.timeShiftsFile(build).toFile();
@@ -66,29 +90,139 @@ class TimeShiftsReader implements Serializable {
     /**
      * Get the time recorded for the given time-stamp entry.
      *
-     * @return the recorded number of milliseconds since the epoch, or {@link Optional#empty()} if no
-     *     time shift was recorded for that time-stamp entry
+     * @param timestampEntry the time-stamp entry
+     * @param defaultTime the time to return if no time shift was recorded for that entry
+     * @return the recorded number of milliseconds since the epoch, or {@code defaultTime}
      */
-    Optional<Long> getTime(long timestampEntry) throws IOException {
+    long getTime(long timestampEntry, long defaultTime) throws IOException {
         if (timeShifts == null) {
-            timeShifts = Collections.unmodifiableMap(readTimeShifts());
+            timeShifts = readTimeShifts();
+        }
+        long[] entries = timeShifts.entries;
+        if (entries.length == 0) {
+            return defaultTime;
         }
-        return Optional.ofNullable(timeShifts.get(timestampEntry));
+        // the time shifts may have been read again since the cursor was set
+        int index = Math.min(cursor, entries.length);
+        if (index > 0 && entries[index - 1] >= timestampEntry) {
+            // moved backwards
+            index = lowerBound(entries, 0, index, timestampEntry);
+        } else if (index < entries.length && entries[index] < timestampEntry) {
+            // moved forwards past the next time shift
+            index = index + 1 < entries.length && entries[index + 1] >= timestampEntry
+                    ? index + 1
+                    : lowerBound(entries, index + 1, entries.length, timestampEntry);
+        }
+        if (index < entries.length && entries[index] == timestampEntry) {
+            cursor = index + 1;
+            return timeShifts.times[index];
+        }
+        cursor = index;
+        return defaultTime;
+    }
+
+    /**
+     * Read the time-shifts file again when it is next needed, if it has changed. Called while the
+     * build is running, because time shifts may have been written since the file was read.
+     */
+    void refresh() {
+        timeShifts = null;
+    }
+
+    /** Find the index of the first value in the sorted range which is not less than the key. */
+    private static int lowerBound(long[] values, int fromIndex, int toIndex, long key) {
+        int index = Arrays.binarySearch(values, fromIndex, toIndex, key);
+        return index >= 0 ? index : -index - 1;
     }
 
-    private Map<Long, Long> readTimeShifts() throws IOException {
-        if (!Files.isRegularFile(timeShiftsFile.toPath())) {
-            return Collections.emptyMap();
+    private TimeShifts readTimeShifts() throws IOException {
+        Path path = timeShiftsFile.toPath();
+        if (!Files.isRegularFile(path)) {
+            return TimeShifts.EMPTY;
         }
-        Map<Long, Long> timeShifts = new HashMap<>();
-        try (CountingInputStream inputStream =
-                new CountingInputStream(new BufferedInputStream(Files.newInputStream(timeShiftsFile.toPath())))) {
-            while (inputStream.getCount() < Files.size(timeShiftsFile.toPath())) {
-                long entry = Varint.read(inputStream);
-                long shift = Varint.read(inputStream);
-                timeShifts.put(entry, shift);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        synchronized (CACHE) {
+            TimeShifts cached = CACHE.get(path);
+            if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                return cached;
             }
         }
+        TimeShifts timeShifts = TimeShifts.read(path, size, lastModified);
+        synchronized (CACHE) {
+            CACHE.put(path, timeShifts);
+        }
         return timeShifts;
     }
+
+    /**
+     * The time shifts read from a time-shifts file, sorted by entry, with the size and modification
+     * time of the file.
+     */
+    private static final class TimeShifts {
+
+        static final TimeShifts EMPTY = new TimeShifts(0, 0, new long[0], new long[0]);
+
+        final long size;
+
+        final long lastModified;
+
+        /** The time-stamp entries, in ascending order. */
+        final long[] entries;
+
+        /** The time recorded for each of {@link #entries}. */
+        final long[] times;
+
+        private TimeShifts(long size, long lastModified, long[] entries, long[] times) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.entries = entries;
+            this.times = times;
+        }
+
+        /**
+         * Read a time-shifts file, which contains pairs of Varints: the time-stamp entry and the
+         * time. An incomplete pair at the end of the file is ignored.
+         */
+        static TimeShifts read(Path path, long size, long lastModified) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            int limit = buffer.limit();
+            long[] entries = new long[16];
+            long[] times = new long[16];
+            int count = 0;
+            boolean sorted = true;
+            int position = 0;
+            while (position < limit) {
+                int entryLength = Varint.length(buffer, position, limit);
+                int timeLength = entryLength < 0 ? -1 : Varint.length(buffer, position + entryLength, limit);
+                if (timeLength < 0) {
+                    break;
+                }
+                if (count == entries.length) {
+                    entries = Arrays.copyOf(entries, count * 2);
+                    times = Arrays.copyOf(times, count * 2);
+                }
+                entries[count] = Varint.read(buffer, position);
+                times[count] = Varint.read(buffer, position + entryLength);
+                sorted &= count == 0 || entries[count] > entries[count - 1];
+                count++;
+                position += entryLength + timeLength;
+            }
+            if (!sorted) {
+                // The last time shift recorded for an entry applies.
+                TreeMap<Long, Long> timeShifts = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    timeShifts.put(entries[i], times[i]);
+                }
+                count = 0;
+                for (Map.Entry<Long, Long> timeShift : timeShifts.entrySet()) {
+                    entries[count] = timeShift.getKey();
+                    times[count] = timeShift.getValue();
+                    count++;
+                }
+            }
+            return new TimeShifts(size, lastModified, Arrays.copyOf(entries, count), Arrays.copyOf(times, count));
+        }
+    }
 }
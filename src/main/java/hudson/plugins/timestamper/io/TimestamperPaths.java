@@ -38,9 +38,27 @@ public class TimestamperPaths {
         return timestamperDir.resolve("timestamps");
     }
 
-    static Path timeShiftsFile(Run<?, ?> build) {
+    public static Path lineIndexFile(Run<?, ?> build) {
+        Path timestamperDir = timestamperDir(build);
+        return timestamperDir.resolve("lines.idx");
+    }
+
+    public static Path entryIndexFile(Run<?, ?> build) {
+        Path timestamperDir = timestamperDir(build);
+        return timestamperDir.resolve("entries.idx");
+    }
+
+    public static Path compactNoteKeyFile(Run<?, ?> build) {
         Path timestamperDir = timestamperDir(build);
-        return timestamperDir.resolve("timeshifts");
+        return timestamperDir.resolve("compact-notes.key");
+    }
+
+    static Path timeShiftsFile(Run<?, ?> build) {
+        return timeShiftsFile(timestampsFile(build));
+    }
+
+    static Path timeShiftsFile(Path timestampsFile) {
+        return timestampsFile.resolveSibling("timeshifts");
     }
 
     private static Path timestamperDir(Run<?, ?> build) {
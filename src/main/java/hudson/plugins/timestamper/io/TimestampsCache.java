@@ -0,0 +1,298 @@
+package hudson.plugins.timestamper.io;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Bounded cache of the decoded time-stamps of completed builds, so that viewing the console log of
+ * a build again does not read and decode its time-stamps file again.
+ *
+ * <p>Each build's time-stamps are cached as a {@link Column}, which takes eight bytes per line. The
+ * cache is keyed by the time-stamps file and validated against its size, modification time and
+ * digest, if one was written. The least recently used columns are evicted when the total size
+ * exceeds the heap budget, which is set by the {@code
+ * hudson.plugins.timestamper.io.TimestampsCache.maxBytes} system property. A budget of zero
+ * disables the cache. Builds which would use more than a quarter of the budget are not cached, so
+ * that viewing one very large build does not evict all of the others.
+ *
+ * <p>A build's time-stamps are only read by one thread at a time; other threads which view the same
+ * build meanwhile wait for that thread and share its column.
+ */
+@Restricted(NoExternalUse.class)
+public final class TimestampsCache {
+
+    /** The default heap budget, in bytes. */
+    static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /** The approximate size of a column, excluding its arrays. */
+    private static final long COLUMN_OVERHEAD = 128;
+
+    private static final TimestampsCache INSTANCE =
+            new TimestampsCache(Long.getLong(TimestampsCache.class.getName() + ".maxBytes", DEFAULT_MAX_BYTES));
+
+    private final long maxBytes;
+
+    /** The cached columns, keyed by time-stamps file, from least to most recently used. */
+    private final LinkedHashMap<Path, Column> columns = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    /** The columns which are being read, keyed by time-stamps file. */
+    private final Map<Path, CompletableFuture<Column>> loads = new ConcurrentHashMap<>();
+
+    TimestampsCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Get the cache which is shared by all builds. */
+    public static TimestampsCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the time-stamps of the given build, reading them if they are not cached.
+     *
+     * @param build the build
+     * @return the time-stamps, or {@code null} if they cannot be cached, e.g. because the build is
+     *     still running or has no time-stamps file
+     */
+    @CheckForNull
+    public Column get(Run<?, ?> build) throws IOException {
+        if (maxBytes <= 0 || build.isBuilding()) {
+            return null;
+        }
+        Path timestampsFile = TimestamperPaths.timestampsFile(build);
+        if (!Files.isRegularFile(timestampsFile)) {
+            return null;
+        }
+        long fileSize = Files.size(timestampsFile);
+        // Each time-stamp takes at least one byte in the file.
+        if (fileSize > Integer.MAX_VALUE / Long.BYTES || fileSize * Long.BYTES + COLUMN_OVERHEAD > maxBytes / 4) {
+            return null;
+        }
+        String fingerprint = fingerprint(timestampsFile, fileSize);
+
+        Column column = cached(timestampsFile, fingerprint);
+        if (column != null) {
+            return column;
+        }
+        CompletableFuture<Column> load = new CompletableFuture<>();
+        CompletableFuture<Column> pending = loads.putIfAbsent(timestampsFile, load);
+        if (pending != null) {
+            column = await(pending);
+            if (column == null || column.fingerprint.equals(fingerprint)) {
+                return column;
+            }
+            // The other thread read an earlier version of the file.
+            return put(timestampsFile, Column.read(build, (int) fileSize, fingerprint));
+        }
+        try {
+            // Another thread may have finished reading the file since it was looked up.
+            column = cached(timestampsFile, fingerprint);
+            if (column == null) {
+                column = put(timestampsFile, Column.read(build, (int) fileSize, fingerprint));
+            }
+            load.complete(column);
+            return column;
+        } catch (IOException | RuntimeException | Error ex) {
+            load.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loads.remove(timestampsFile, load);
+        }
+    }
+
+    @CheckForNull
+    private synchronized Column cached(Path timestampsFile, String fingerprint) {
+        Column column = columns.get(timestampsFile);
+        return column != null && column.fingerprint.equals(fingerprint) ? column : null;
+    }
+
+    /** Cache a column, evicting the least recently used columns if the budget is exceeded. */
+    @CheckForNull
+    private synchronized Column put(Path timestampsFile, @CheckForNull Column column) {
+        if (column == null) {
+            return null;
+        }
+        Column previous = columns.put(timestampsFile, column);
+        if (previous != null) {
+            bytes -= previous.bytes();
+        }
+        bytes += column.bytes();
+        Iterator<Column> eldest = columns.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+        return column;
+    }
+
+    /** Wait for another thread to read a column. */
+    @CheckForNull
+    private static Column await(CompletableFuture<Column> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /** @return the total size of the cached columns, in bytes */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /** @return the number of cached columns */
+    synchronized int size() {
+        return columns.size();
+    }
+
+    private static String fingerprint(Path timestampsFile, long fileSize) throws IOException {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(fileSize).append(' ').append(Files.getLastModifiedTime(timestampsFile).toMillis());
+        Path digestFile = timestampsFile.resolveSibling(timestampsFile.getFileName() + ".SHA-1");
+        if (Files.isRegularFile(digestFile)) {
+            fingerprint
+                    .append(' ')
+                    .append(new String(Files.readAllBytes(digestFile), StandardCharsets.US_ASCII).trim());
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * The decoded time-stamps of a completed build.
+     *
+     * <p>The elapsed time is stored for each line. The difference between the clock time and the
+     * elapsed time only changes when a time shift was recorded, so it is stored for each change.
+     */
+    public static final class Column {
+
+        /** The number of time-stamps which are read at a time. */
+        private static final int BATCH_SIZE = 1024;
+
+        private final String fingerprint;
+
+        private final long[] elapsedMillis;
+
+        /** The entries at which the clock time minus the elapsed time changes, starting with zero. */
+        private final int[] shiftEntries;
+
+        /** The clock time minus the elapsed time, from each of {@link #shiftEntries}. */
+        private final long[] shiftOffsets;
+
+        private Column(String fingerprint, long[] elapsedMillis, int[] shiftEntries, long[] shiftOffsets) {
+            this.fingerprint = fingerprint;
+            this.elapsedMillis = elapsedMillis;
+            this.shiftEntries = shiftEntries;
+            this.shiftOffsets = shiftOffsets;
+        }
+
+        /**
+         * Read all of the time-stamps of a build.
+         *
+         * <p>The column is sized from the {@link TimestampsIndex} of the time-stamps file, which
+         * gives the number of entries up to its last record. Without an index, the column starts
+         * small and is grown as the time-stamps are read.
+         *
+         * @param capacity the maximum number of time-stamps, which is the size of the time-stamps
+         *     file
+         * @return the column, or {@code null} if there are more time-stamps than the capacity
+         */
+        @CheckForNull
+        static Column read(Run<?, ?> build, int capacity, String fingerprint) throws IOException {
+            TimestampsIndex index = TimestampsIndex.read(TimestamperPaths.timestampsFile(build));
+            long expected = index.isEmpty() ? BATCH_SIZE : index.maxEntries(capacity);
+            long[] elapsedMillis = new long[(int) Math.min(expected, capacity)];
+            long[] batchElapsedMillis = new long[BATCH_SIZE];
+            long[] batchMillisSinceEpoch = new long[BATCH_SIZE];
+            int size = 0;
+            int shifts = 0;
+            int[] shiftEntries = new int[1];
+            long[] shiftOffsets = new long[1];
+            try (TimestampsReader reader = new TimestampsReader(build)) {
+                while (true) {
+                    if (size == elapsedMillis.length) {
+                        if (size == capacity) {
+                            if (reader.read().isPresent()) {
+                                return null;
+                            }
+                            break;
+                        }
+                        elapsedMillis = Arrays.copyOf(elapsedMillis, (int) Math.min(2L * size + BATCH_SIZE, capacity));
+                    }
+                    int length = Math.min(BATCH_SIZE, elapsedMillis.length - size);
+                    int count = reader.readBatch(batchElapsedMillis, batchMillisSinceEpoch, 0, length);
+                    for (int i = 0; i < count; i++) {
+                        long offset = batchMillisSinceEpoch[i] - batchElapsedMillis[i];
+                        if (shifts == 0 || offset != shiftOffsets[shifts - 1]) {
+                            if (shifts == shiftEntries.length) {
+                                shiftEntries = Arrays.copyOf(shiftEntries, shifts * 2);
+                                shiftOffsets = Arrays.copyOf(shiftOffsets, shifts * 2);
+                            }
+                            shiftEntries[shifts] = size + i;
+                            shiftOffsets[shifts] = offset;
+                            shifts++;
+                        }
+                    }
+                    System.arraycopy(batchElapsedMillis, 0, elapsedMillis, size, count);
+                    size += count;
+                    if (count < length) {
+                        break;
+                    }
+                }
+            }
+            return new Column(
+                    fingerprint,
+                    size == elapsedMillis.length ? elapsedMillis : Arrays.copyOf(elapsedMillis, size),
+                    Arrays.copyOf(shiftEntries, shifts),
+                    Arrays.copyOf(shiftOffsets, shifts));
+        }
+
+        /** @return the number of time-stamps */
+        public int size() {
+            return elapsedMillis.length;
+        }
+
+        /**
+         * Get a time-stamp.
+         *
+         * @param entry the time-stamp entry, starting at zero
+         * @return the time-stamp
+         */
+        public Timestamp get(int entry) {
+            Objects.checkIndex(entry, elapsedMillis.length);
+            int shift = Arrays.binarySearch(shiftEntries, entry);
+            if (shift < 0) {
+                shift = -shift - 2;
+            }
+            long elapsed = elapsedMillis[entry];
+            return new Timestamp(elapsed, elapsed + shiftOffsets[shift]);
+        }
+
+        /** @return the approximate size of this column, in bytes */
+        long bytes() {
+            return COLUMN_OVERHEAD
+                    + (long) elapsedMillis.length * Long.BYTES
+                    + (long) shiftEntries.length * (Integer.BYTES + Long.BYTES);
+        }
+    }
+}
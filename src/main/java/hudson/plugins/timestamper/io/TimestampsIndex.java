@@ -0,0 +1,170 @@
+package hudson.plugins.timestamper.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sparse index of a time-stamps file, which allows {@link TimestampsReader} to skip to a time-stamp
+ * entry without decoding all of the preceding entries.
+ *
+ * <p>The index file is written by {@link TimestampsWriter} alongside the time-stamps file. It
+ * contains a record for every {@link #interval}th entry, each consisting of four 8-byte values: the
+ * entry number, the position of that entry in the time-stamps file, and the elapsed time and clock
+ * time of the preceding entry. Records are only written after the time-stamps they refer to, so
+ * every complete record refers to a complete entry. Builds without an index file are read from the
+ * start of the time-stamps file.
+ */
+final class TimestampsIndex {
+
+    /** The number of time-stamp entries between index records. */
+    static int interval = Integer.getInteger(TimestampsIndex.class.getName() + ".interval", 1000);
+
+    /** The number of bytes in each index record. */
+    static final int RECORD_SIZE = 4 * Long.BYTES;
+
+    private static final TimestampsIndex EMPTY = new TimestampsIndex(0);
+
+    private final long[] entries;
+
+    private final long[] filePointers;
+
+    private final long[] elapsedMillis;
+
+    private final long[] millisSinceEpoch;
+
+    private int size;
+
+    private TimestampsIndex(int capacity) {
+        entries = new long[capacity];
+        filePointers = new long[capacity];
+        elapsedMillis = new long[capacity];
+        millisSinceEpoch = new long[capacity];
+    }
+
+    /**
+     * Get the index file for the given time-stamps file.
+     *
+     * @param timestampsFile the time-stamps file
+     * @return the index file
+     */
+    static Path indexFile(Path timestampsFile) {
+        return timestampsFile.resolveSibling(timestampsFile.getFileName() + ".idx");
+    }
+
+    /**
+     * Read the index of the given time-stamps file.
+     *
+     * @param timestampsFile the time-stamps file
+     * @return the index, which is empty if there is no index file
+     */
+    static TimestampsIndex read(Path timestampsFile) throws IOException {
+        Path indexFile = indexFile(timestampsFile);
+        if (!Files.isRegularFile(indexFile) || !Files.isRegularFile(timestampsFile)) {
+            return EMPTY;
+        }
+        // Read the time-stamps file size first. Records written after this point are ignored.
+        long timestampsFileSize = Files.size(timestampsFile);
+        int capacity = (int) Math.min(Files.size(indexFile) / RECORD_SIZE, Integer.MAX_VALUE);
+        TimestampsIndex index = new TimestampsIndex(capacity);
+        try (DataInputStream inputStream =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            for (int i = 0; i < capacity; i++) {
+                long entry = inputStream.readLong();
+                long filePointer = inputStream.readLong();
+                long elapsed = inputStream.readLong();
+                long time = inputStream.readLong();
+                if (filePointer > timestampsFileSize || (i > 0 && entry <= index.entries[i - 1])) {
+                    break;
+                }
+                index.entries[i] = entry;
+                index.filePointers[i] = filePointer;
+                index.elapsedMillis[i] = elapsed;
+                index.millisSinceEpoch[i] = time;
+                index.size++;
+            }
+        }
+        return index;
+    }
+
+    /** @return whether the index has no records */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the maximum number of entries in the time-stamps file. These are the entries before the
+     * last record, and at most one entry for each byte after it.
+     *
+     * @param timestampsFileSize the size of the time-stamps file
+     * @return the maximum number of entries
+     */
+    long maxEntries(long timestampsFileSize) {
+        if (size == 0) {
+            return timestampsFileSize;
+        }
+        return entries[size - 1] + Math.max(timestampsFileSize - filePointers[size - 1], 0);
+    }
+
+    /**
+     * Find the last record at or before the given entry.
+     *
+     * @param entry the entry number
+     * @return the record number, or {@code -1} if there is no such record
+     */
+    int floor(long entry) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid] <= entry) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Find the last record at or before the given position in the time-stamps file.
+     *
+     * @param filePointer the position in the time-stamps file
+     * @return the record number, or {@code -1} if there is no such record
+     */
+    int floorFilePointer(long filePointer) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (filePointers[mid] <= filePointer) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /** @return the entry number of the given record */
+    long entry(int record) {
+        return entries[record];
+    }
+
+    /** @return the position in the time-stamps file of the given record */
+    long filePointer(int record) {
+        return filePointers[record];
+    }
+
+    /** @return the elapsed time of the entry preceding the given record */
+    long elapsedMillis(int record) {
+        return elapsedMillis[record];
+    }
+
+    /** @return the clock time of the entry preceding the given record */
+    long millisSinceEpoch(int record) {
+        return millisSinceEpoch[record];
+    }
+}
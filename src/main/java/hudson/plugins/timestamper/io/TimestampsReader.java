@@ -23,20 +23,23 @@
  */
 package hudson.plugins.timestamper.io;
 
-import com.google.common.io.ByteStreams;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.model.Run;
 import hudson.plugins.timestamper.Timestamp;
-import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
 import java.util.Optional;
-import org.apache.commons.io.input.CountingInputStream;
 
 /**
  * Read the time-stamps for a build from disk.
@@ -47,8 +50,31 @@ public class TimestampsReader implements Serializable, Closeable {
 
     private static final long serialVersionUID = 1L;
 
+    /** The number of bytes read at a time when counting the entries of the time-stamps file. */
+    private static final int REVERSE_SCAN_BUFFER_SIZE = 8192;
+
+    /** The number of bytes read at a time from the time-stamps file of a running build. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * The number of bytes read at a time from the time-stamps file of a completed build, which no
+     * longer grows, so fewer and larger reads are made.
+     */
+    private static final int COMPLETED_READ_BUFFER_SIZE = 64 * 1024;
+
     private final File timestampsFile;
 
+    /** Whether the build had completed when this reader was created. */
+    private final boolean completed;
+
+    private final long buildStartTime;
+
+    /**
+     * Whether the time-stamps up to {@link #entry} were read from the {@link LiveTimestamps} of the
+     * running build, so that {@link #filePointer} does not refer to that entry.
+     */
+    private boolean detached;
+
     private long filePointer;
 
     private long elapsedMillis;
@@ -59,14 +85,77 @@ public class TimestampsReader implements Serializable, Closeable {
 
     private final TimeShiftsReader timeShiftsReader;
 
+    /**
+     * The time-stamps file, opened for positional reads starting at {@link #filePointer}.
+     *
+     * <p>Transient: opened again when needed.
+     */
+    @CheckForNull
+    private transient FileChannel channel;
+
+    /**
+     * The bytes of the time-stamps file starting at {@link #readBufferStart}.
+     *
+     * <p>Transient: read again when needed.
+     */
     @CheckForNull
-    private transient InputStream inputStream;
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient ByteBuffer readBuffer;
+
+    private transient long readBufferStart;
+
+    /**
+     * Cache of the index of the time-stamps file.
+     *
+     * <p>Transient: derived from the contents of the index file.
+     */
+    @CheckForNull
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient TimestampsIndex index;
+
+    /**
+     * The recent time-stamps of the running build, if it is registered.
+     *
+     * <p>Transient: looked up again when needed.
+     */
+    @CheckForNull
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient LiveTimestamps liveTimestamps;
+
+    private transient boolean liveTimestampsResolved;
 
     /** Create a time-stamps reader for the given build. */
     public TimestampsReader(Run<?, ?> build) {
         this.timestampsFile = TimestamperPaths.timestampsFile(build).toFile();
         this.timeShiftsReader = new TimeShiftsReader(build);
-        this.millisSinceEpoch = build.getStartTimeInMillis();
+        this.buildStartTime = build.getStartTimeInMillis();
+        this.millisSinceEpoch = buildStartTime;
+        this.completed = !build.isBuilding();
+    }
+
+    /**
+     * Create a time-stamps reader for the given build, which continues from a position returned by
+     * {@link #position()}. The time-stamps file is not read up to that position.
+     */
+    public TimestampsReader(Run<?, ?> build, Position position) {
+        this(build);
+        this.entry = position.entry;
+        this.elapsedMillis = position.elapsedMillis;
+        this.millisSinceEpoch = position.millisSinceEpoch;
+        if (position.filePointer >= 0) {
+            this.filePointer = position.filePointer;
+        } else {
+            this.detached = true;
+        }
+    }
+
+    /**
+     * Get the current position of this reader, which can be stored in place of this reader.
+     *
+     * @see #TimestampsReader(Run, Position)
+     */
+    public Position position() {
+        return new Position(entry, detached ? -1 : filePointer, elapsedMillis, millisSinceEpoch);
     }
 
     /**
@@ -75,14 +164,44 @@ public class TimestampsReader implements Serializable, Closeable {
      * @param count the number of time-stamp entries to skip
      */
     public void skip(int count) throws IOException {
-        for (int i = 0; i < count; i++) {
-            Optional<Timestamp> timestamp = read();
-            if (!timestamp.isPresent()) {
+        long target = entry + count;
+        LiveTimestamps live = liveTimestamps();
+        if (live != null && live.contains(target)) {
+            entry = target;
+            detached = true;
+            return;
+        }
+        if (detached) {
+            reattach(target);
+            return;
+        }
+        seek(target);
+        while (entry < target) {
+            if (!advance()) {
                 return;
             }
         }
     }
 
+    /**
+     * Move forward to the closest indexed entry at or before the given entry, if the time-stamps
+     * file has been indexed.
+     *
+     * @param target the entry number
+     */
+    private void seek(long target) throws IOException {
+        if (index == null) {
+            index = TimestampsIndex.read(timestampsFile.toPath());
+        }
+        int record = index.floor(target);
+        if (record >= 0 && index.entry(record) > entry) {
+            entry = index.entry(record);
+            filePointer = index.filePointer(record);
+            elapsedMillis = index.elapsedMillis(record);
+            millisSinceEpoch = index.millisSinceEpoch(record);
+        }
+    }
+
     /**
      * Convert negative line number that was calculated from end of file to absolute line number (from
      * head)
@@ -91,15 +210,87 @@ public class TimestampsReader implements Serializable, Closeable {
      * @return absolute line
      */
     public int getAbs(int lineNumber) throws IOException {
-        skip(-lineNumber);
+        return seekFromEnd(-lineNumber);
+    }
 
-        int numberOfTimestampsFromStart = 0;
-        while (true) {
-            Optional<Timestamp> timestamp = read();
-            if (!timestamp.isPresent()) {
-                return numberOfTimestampsFromStart;
+    /**
+     * Move forward to the given number of time-stamp entries before the end of the time-stamps file.
+     *
+     * <p>The last byte of each Varint is the only byte with the high bit clear, so the time-stamps
+     * file is scanned backwards from the end to find the position of the entry without decoding the
+     * entries after it. The entries between the closest indexed entry and that position are then
+     * counted in the same way to find the entry number, and only those entries are decoded.
+     *
+     * @param count the number of time-stamp entries to leave before the end
+     * @return the entry number of the new position
+     */
+    public int seekFromEnd(int count) throws IOException {
+        Path path = timestampsFile.toPath();
+        if (!Files.isRegularFile(path)) {
+            return (int) entry;
+        }
+        long target;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = positionFromEnd(channel, count);
+            if (index == null) {
+                index = TimestampsIndex.read(path);
+            }
+            int record = index.floorFilePointer(position);
+            long recordFilePointer = record >= 0 ? index.filePointer(record) : 0;
+            long recordEntry = record >= 0 ? index.entry(record) : 0;
+            target = recordEntry + countVarints(channel, recordFilePointer, position);
+        }
+        if (target > entry) {
+            skip((int) Math.min(target - entry, Integer.MAX_VALUE));
+        }
+        return (int) entry;
+    }
+
+    /**
+     * Find the position of the given number of complete Varints before the end of the file.
+     *
+     * @return the position, which is zero if there are fewer Varints in the file
+     */
+    private static long positionFromEnd(FileChannel channel, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(REVERSE_SCAN_BUFFER_SIZE);
+        long varints = 0;
+        for (long end = channel.size(); end > 0; end -= buffer.capacity()) {
+            int length = (int) Math.min(buffer.capacity(), end);
+            long start = end - length;
+            readFully(channel, buffer, start, length);
+            for (int i = length - 1; i >= 0; i--) {
+                // Bytes after the last complete Varint are skipped, as they are when reading forwards.
+                if ((buffer.get(i) & 0x80) == 0 && varints++ == count) {
+                    return start + i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** Count the Varints which end within the given range of the file. */
+    private static long countVarints(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(REVERSE_SCAN_BUFFER_SIZE);
+        long count = 0;
+        for (long start = from; start < to; start += buffer.capacity()) {
+            int length = (int) Math.min(buffer.capacity(), to - start);
+            readFully(channel, buffer, start, length);
+            for (int i = 0; i < length; i++) {
+                if ((buffer.get(i) & 0x80) == 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
             }
-            numberOfTimestampsFromStart++;
         }
     }
 
@@ -109,58 +300,226 @@ public class TimestampsReader implements Serializable, Closeable {
      * @return the next time-stamp, or {@link Optional#empty()} if there are no more to read
      */
     public Optional<Timestamp> read() throws IOException {
-        if (inputStream == null) {
-            if (!Files.isRegularFile(timestampsFile.toPath())) {
-                return Optional.empty();
+        if (!advance()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Timestamp(elapsedMillis, millisSinceEpoch));
+    }
+
+    /**
+     * Read up to {@code length} time-stamps into the given arrays, without allocating a {@link
+     * Timestamp} for each of them.
+     *
+     * @param elapsedMillis receives the {@link Timestamp#elapsedMillis} value of each time-stamp
+     * @param millisSinceEpoch receives the {@link Timestamp#millisSinceEpoch} value of each
+     *     time-stamp
+     * @param offset the array index of the first time-stamp to read
+     * @param length the maximum number of time-stamps to read
+     * @return the number of time-stamps read, which is less than {@code length} only if there are
+     *     no more to read
+     */
+    public int readBatch(long[] elapsedMillis, long[] millisSinceEpoch, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, elapsedMillis.length);
+        Objects.checkFromIndexSize(offset, length, millisSinceEpoch.length);
+        int count = 0;
+        while (count < length && advance()) {
+            elapsedMillis[offset + count] = this.elapsedMillis;
+            millisSinceEpoch[offset + count] = this.millisSinceEpoch;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Move to the next time-stamp, reading it from the {@link LiveTimestamps} of the running build
+     * if they include it.
+     *
+     * @return {@code true} if there was another time-stamp to read
+     */
+    private boolean advance() throws IOException {
+        LiveTimestamps live = liveTimestamps();
+        if (live != null) {
+            Timestamp timestamp = live.get(entry);
+            if (timestamp != null) {
+                elapsedMillis = timestamp.elapsedMillis;
+                millisSinceEpoch = timestamp.millisSinceEpoch;
+                entry++;
+                detached = true;
+                return true;
+            }
+            if (entry >= live.entryCount()) {
+                // not yet written
+                return false;
+            }
+        }
+        if (detached && !reattach(entry)) {
+            return false;
+        }
+        return advanceFile();
+    }
+
+    @CheckForNull
+    private LiveTimestamps liveTimestamps() {
+        if (completed) {
+            return null;
+        }
+        if (!liveTimestampsResolved) {
+            liveTimestamps = LiveTimestamps.get(timestampsFile.toPath());
+            liveTimestampsResolved = true;
+        }
+        return liveTimestamps;
+    }
+
+    /**
+     * Move to the given entry in the time-stamps file, after reading from the {@link
+     * LiveTimestamps} of the running build.
+     *
+     * @param target the entry number
+     * @return {@code true} if the time-stamps file contains the preceding entries; otherwise this
+     *     reader remains detached from the time-stamps file
+     */
+    private boolean reattach(long target) throws IOException {
+        entry = 0;
+        filePointer = 0;
+        elapsedMillis = 0;
+        millisSinceEpoch = buildStartTime;
+        detached = false;
+        seek(target);
+        while (entry < target) {
+            if (!advanceFile()) {
+                // The time-stamps are recorded in memory before they are written to the file.
+                entry = target;
+                detached = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move to the next time-stamp in the time-stamps file.
+     *
+     * @return {@code true} if there was another time-stamp to read
+     */
+    private boolean advanceFile() throws IOException {
+        int length = bufferedLength();
+        if (length < 0) {
+            if (!fillReadBuffer()) {
+                return false;
+            }
+            length = bufferedLength();
+            if (length < 0) {
+                return false;
             }
-            inputStream = Files.newInputStream(timestampsFile.toPath());
-            ByteStreams.skipFully(inputStream, filePointer);
-            inputStream = new BufferedInputStream(inputStream);
         }
-        Optional<Timestamp> timestamp = Optional.empty();
-        if (filePointer < Files.size(timestampsFile.toPath())) {
-            timestamp = Optional.of(readNext(inputStream));
+        long elapsedMillisDiff = Varint.read(readBuffer, (int) (filePointer - readBufferStart));
+        filePointer += length;
+        next(elapsedMillisDiff);
+        return true;
+    }
+
+    /**
+     * Find the length of the time-stamp at {@link #filePointer} in the read buffer.
+     *
+     * @return the length, or {@code -1} if it is not within the read buffer
+     */
+    private int bufferedLength() throws IOException {
+        if (readBuffer == null) {
+            return -1;
+        }
+        long offset = filePointer - readBufferStart;
+        if (offset < 0 || offset >= readBuffer.limit()) {
+            return -1;
+        }
+        return Varint.length(readBuffer, (int) offset, readBuffer.limit());
+    }
+
+    /**
+     * Read the time-stamps file into the read buffer, starting at {@link #filePointer}. The bytes
+     * before that position are not read, so a reader which continues from a stored position does not
+     * read the time-stamps file from the start.
+     *
+     * @return whether any bytes were read
+     */
+    private boolean fillReadBuffer() throws IOException {
+        if (channel == null) {
+            Path path = timestampsFile.toPath();
+            if (!Files.isRegularFile(path)) {
+                return false;
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(completed ? COMPLETED_READ_BUFFER_SIZE : READ_BUFFER_SIZE);
+        }
+        readBuffer.clear();
+        while (readBuffer.hasRemaining() && channel.read(readBuffer, filePointer + readBuffer.position()) > 0) {
+            // keep reading until the buffer is full or the end of the file is reached
         }
-        return timestamp;
+        readBuffer.flip();
+        readBufferStart = filePointer;
+        if (!completed) {
+            // A time shift is written before the time-stamp it applies to, so any time shifts for
+            // the time-stamps just read are now in the time-shifts file.
+            timeShiftsReader.refresh();
+        }
+        return readBuffer.hasRemaining();
     }
 
     /** Close this reader. */
     @Override
     public void close() {
+        closeChannel();
+        readBuffer = null;
+    }
+
+    private void closeChannel() {
         try {
-            if (inputStream != null) {
-                inputStream.close();
+            if (channel != null) {
+                channel.close();
             }
         } catch (IOException e) {
             // ignore
         }
-        inputStream = null;
+        channel = null;
     }
 
     /**
-     * Read the next time-stamp from the given input stream.
+     * Calculate the next time-stamp.
      *
-     * @return the next time-stamp
+     * @param elapsedMillisDiff the difference in elapsed time from the previous time-stamp
      */
-    private Timestamp readNext(InputStream inputStream) throws IOException {
-        CountingInputStream countingInputStream = new CountingInputStream(inputStream);
-        long elapsedMillisDiff = Varint.read(countingInputStream);
-
+    private void next(long elapsedMillisDiff) throws IOException {
         elapsedMillis += elapsedMillisDiff;
-        millisSinceEpoch = timeShiftsReader.getTime(entry).orElse(millisSinceEpoch + elapsedMillisDiff);
-        filePointer += countingInputStream.getCount();
+        millisSinceEpoch = timeShiftsReader.getTime(entry, millisSinceEpoch + elapsedMillisDiff);
         entry++;
-        return new Timestamp(elapsedMillis, millisSinceEpoch);
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
-        try {
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        } catch (IOException e) {
-            // ignore
+        closeChannel();
+    }
+
+    /**
+     * The position of a {@link TimestampsReader}: the next time-stamp entry, its position in the
+     * time-stamps file and the previous time-stamp.
+     */
+    public static final class Position {
+
+        public final long entry;
+
+        /** The position in the time-stamps file of {@link #entry}, or {@code -1} if it is not known. */
+        public final long filePointer;
+
+        public final long elapsedMillis;
+
+        public final long millisSinceEpoch;
+
+        public Position(long entry, long filePointer, long elapsedMillis, long millisSinceEpoch) {
+            this.entry = entry;
+            this.filePointer = filePointer;
+            this.elapsedMillis = elapsedMillis;
+            this.millisSinceEpoch = millisSinceEpoch;
         }
     }
 }
@@ -25,7 +25,11 @@ package hudson.plugins.timestamper.io;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
@@ -36,27 +40,132 @@ import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.Timer;
 
 /**
  * Write the time-stamps for a build to disk.
  *
+ * <p>By default, the time-stamps for each line are written to disk as soon as they are recorded.
+ * Setting the {@code hudson.plugins.timestamper.io.TimestampsWriter.flushThreshold} system
+ * property to a number of bytes (e.g. 65536) instead holds the time-stamps in memory until that
+ * many bytes have been recorded or until {@code
+ * hudson.plugins.timestamper.io.TimestampsWriter.flushInterval} milliseconds (default 250) have
+ * passed since they were last written. The interval is checked when each line is recorded, and a
+ * flush is also scheduled on the {@link Timer} executor of Jenkins, so that the last time-stamps
+ * of a build which has stopped writing to its console log are not held indefinitely. Only whole
+ * Varints are written to the file, so readers always see a complete prefix of the time-stamps. If
+ * the build is interrupted before this writer is closed, the buffered time-stamps are lost but the
+ * time-stamps file remains readable.
+ *
+ * <p>The elapsed time of each line is measured with {@link System#nanoTime()}, so that it does not
+ * go backwards or jump forwards when the clock is changed. The time-stamps file records the
+ * difference in elapsed time from the previous line, and the clock time is calculated by adding
+ * that difference to the clock time of the previous line. When this differs from {@link
+ * System#currentTimeMillis()} by more than {@link #CLOCK_CHANGE_TOLERANCE_MILLIS}, the clock time
+ * is recorded in the time-shifts file (see {@link TimeShiftsReader}).
+ *
+ * <p>A sparse index is also written to a sibling file (see {@link TimestampsIndex}).
+ *
  * @author Steven G. Brown
  */
-public class TimestampsWriter implements Closeable {
+public class TimestampsWriter implements Closeable, Flushable {
 
     private static final int BUFFER_SIZE = 1024;
 
+    private static final int DEFAULT_FLUSH_THRESHOLD =
+            Integer.getInteger(TimestampsWriter.class.getName() + ".flushThreshold", 0);
+
+    private static final long DEFAULT_FLUSH_INTERVAL =
+            Long.getLong(TimestampsWriter.class.getName() + ".flushInterval", 250);
+
+    /**
+     * The difference between the calculated clock time and {@link System#currentTimeMillis()} which
+     * is recorded as a time shift. The two clocks drift apart slowly while the system clock is
+     * being adjusted, so smaller differences are not recorded.
+     */
+    static final long CLOCK_CHANGE_TOLERANCE_MILLIS = 1000;
+
     private final Path timestampsFile;
 
+    private final Path indexFile;
+
+    private final Path timeShiftsFile;
+
     private final Optional<MessageDigest> timestampsDigest;
 
     @CheckForNull
     private OutputStream timestampsOutput;
 
-    /** Buffer that is used to store Varints prior to writing to a file. */
-    private final byte[] buffer = new byte[BUFFER_SIZE];
+    @CheckForNull
+    private OutputStream indexOutput;
+
+    @CheckForNull
+    private OutputStream timeShiftsOutput;
+
+    /** Index records which have not yet been written to the index file. */
+    private final ByteArrayOutputStream indexBuffer = new ByteArrayOutputStream();
+
+    private final DataOutputStream indexRecords = new DataOutputStream(indexBuffer);
+
+    /**
+     * Buffer that is used to store Varints prior to writing to a file. Only whole Varints are
+     * stored in this buffer.
+     */
+    private final byte[] buffer;
+
+    /** The number of bytes in {@link #buffer} which have not yet been written to the file. */
+    private int bufferLength;
+
+    /** The number of buffered bytes which causes the buffer to be written to the file. */
+    private final int flushThreshold;
+
+    /** The maximum number of milliseconds to hold time-stamps in the buffer. */
+    private final long flushInterval;
+
+    /**
+     * Executor for the flushes after {@link #flushInterval}, or {@code null} if the buffer is only
+     * written when a line is recorded.
+     */
+    @CheckForNull
+    private final ScheduledExecutorService flushExecutor;
+
+    /** Whether a flush has been scheduled on {@link #flushExecutor} and has not yet run. */
+    private boolean flushScheduled;
+
+    /** Set when a scheduled flush fails, and thrown by the next call to this writer. */
+    @CheckForNull
+    private IOException scheduledFlushError;
+
+    private final long buildStartTime;
+
+    /** The elapsed time when this writer was created. */
+    private final long startElapsedMillis;
+
+    /** The {@link System#nanoTime()} value when this writer was created. */
+    private final long startNanoTime;
+
+    /** The elapsed time of the last time-stamp returned by {@link #timestamp(long, long)}. */
+    private long clockElapsedMillis;
+
+    /** The clock time of the last time-stamp returned by {@link #timestamp(long, long)}. */
+    private long clockMillisSinceEpoch;
+
+    /** The elapsed time of the last entry. */
+    private long elapsedMillis;
+
+    /** The clock time of the last entry, as calculated when the time-stamps are read. */
+    private long millisSinceEpoch;
 
-    private long previousCurrentTimeMillis;
+    private long lastFlushTimeMillis;
+
+    /** The number of time-stamp entries recorded. */
+    private long entryCount;
+
+    /** The number of bytes recorded, including those still in the buffer. */
+    private long recordedBytes;
 
     /** Create a time-stamps writer for the given build. */
     public TimestampsWriter(Run<?, ?> build) throws IOException {
@@ -70,9 +179,87 @@ public class TimestampsWriter implements Closeable {
 
     public TimestampsWriter(Path timestampsFile, long buildStartTime, Optional<MessageDigest> digest)
             throws IOException {
+        this(timestampsFile, buildStartTime, digest, DEFAULT_FLUSH_THRESHOLD, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Create a time-stamps writer which buffers the time-stamps in memory.
+     *
+     * @param flushThreshold the number of buffered bytes which causes the time-stamps to be written
+     *     to the file, or zero to write the time-stamps for each line immediately
+     * @param flushInterval the maximum number of milliseconds to hold time-stamps in the buffer
+     */
+    public TimestampsWriter(
+            Path timestampsFile,
+            long buildStartTime,
+            Optional<MessageDigest> digest,
+            int flushThreshold,
+            long flushInterval)
+            throws IOException {
+        this(
+                timestampsFile,
+                buildStartTime,
+                digest,
+                flushThreshold,
+                flushInterval,
+                System.currentTimeMillis(),
+                System.nanoTime(),
+                flushThreshold > 0 && flushInterval != Long.MAX_VALUE ? Timer.get() : null);
+    }
+
+    /**
+     * Create a time-stamps writer which measures the elapsed time from the given clock readings.
+     *
+     * @param startMillis the {@link System#currentTimeMillis()} value when the writer is created
+     * @param startNanoTime the {@link System#nanoTime()} value when the writer is created
+     */
+    TimestampsWriter(
+            Path timestampsFile,
+            long buildStartTime,
+            Optional<MessageDigest> digest,
+            int flushThreshold,
+            long flushInterval,
+            long startMillis,
+            long startNanoTime)
+            throws IOException {
+        this(timestampsFile, buildStartTime, digest, flushThreshold, flushInterval, startMillis, startNanoTime, null);
+    }
+
+    /**
+     * Create a time-stamps writer which measures the elapsed time from the given clock readings.
+     *
+     * @param startMillis the {@link System#currentTimeMillis()} value when the writer is created
+     * @param startNanoTime the {@link System#nanoTime()} value when the writer is created
+     * @param flushExecutor executor for the flushes after {@code flushInterval}, or {@code null} to
+     *     only write the buffer when a line is recorded
+     */
+    TimestampsWriter(
+            Path timestampsFile,
+            long buildStartTime,
+            Optional<MessageDigest> digest,
+            int flushThreshold,
+            long flushInterval,
+            long startMillis,
+            long startNanoTime,
+            @CheckForNull ScheduledExecutorService flushExecutor)
+            throws IOException {
+        if (flushThreshold < 0) {
+            throw new IllegalArgumentException("flushThreshold is negative: " + flushThreshold);
+        }
         this.timestampsFile = timestampsFile;
-        this.previousCurrentTimeMillis = buildStartTime;
+        this.indexFile = TimestampsIndex.indexFile(timestampsFile);
+        this.timeShiftsFile = TimestamperPaths.timeShiftsFile(timestampsFile);
+        this.buildStartTime = buildStartTime;
+        this.startElapsedMillis = Math.max(startMillis - buildStartTime, 0);
+        this.startNanoTime = startNanoTime;
+        this.clockMillisSinceEpoch = buildStartTime;
+        this.millisSinceEpoch = buildStartTime;
+        this.lastFlushTimeMillis = buildStartTime;
         this.timestampsDigest = Objects.requireNonNull(digest);
+        this.flushThreshold = flushThreshold;
+        this.flushInterval = flushInterval;
+        this.flushExecutor = flushExecutor;
+        this.buffer = new byte[Math.max(BUFFER_SIZE, flushThreshold)];
 
         Path parentDir = timestampsFile.getParent();
         if (parentDir != null) {
@@ -82,7 +269,9 @@ public class TimestampsWriter implements Closeable {
     }
 
     /**
-     * Write a time-stamp for a line of the console log.
+     * Write a time-stamp for a line of the console log, measuring the elapsed time with the clock.
+     * The elapsed time does not go backwards: if the clock has gone backwards, the clock time is
+     * recorded as a time shift.
      *
      * @param currentTimeMillis {@link System#currentTimeMillis()}
      * @param times the number of times to write the time-stamp
@@ -91,16 +280,157 @@ public class TimestampsWriter implements Closeable {
         if (times < 1) {
             return;
         }
-        long elapsedMillis = currentTimeMillis - previousCurrentTimeMillis;
-        previousCurrentTimeMillis = currentTimeMillis;
+        long elapsed = clockElapsedMillis + Math.max(currentTimeMillis - clockMillisSinceEpoch, 0);
+        write(timestamp(currentTimeMillis, elapsed, 0), times);
+    }
 
-        // Write to the time-stamps file.
-        if (timestampsOutput == null) {
-            timestampsOutput = openTimestampsStream();
+    /**
+     * Write a time-stamp for a line of the console log, measuring the elapsed time with {@link
+     * System#nanoTime()}.
+     *
+     * @param currentTimeMillis {@link System#currentTimeMillis()}
+     * @param nanoTime {@link System#nanoTime()}, read at the same time
+     * @param times the number of times to write the time-stamp
+     */
+    public void write(long currentTimeMillis, long nanoTime, int times) throws IOException {
+        if (times < 1) {
+            return;
+        }
+        write(timestamp(currentTimeMillis, nanoTime), times);
+    }
+
+    /**
+     * Get the time-stamp to record for a line of the console log, measuring the elapsed time with
+     * {@link System#nanoTime()}. The clock time is calculated from the difference in elapsed time
+     * since the previous time-stamp, unless the actual clock time differs from it by more than a
+     * second.
+     *
+     * <p>This is the time-stamp which {@link #write(Timestamp, int)} will store, so it can be used
+     * before the time-stamp is written, e.g. by another thread. The time-stamps must be written in
+     * the order in which they were returned by this method.
+     *
+     * @param currentTimeMillis {@link System#currentTimeMillis()}
+     * @param nanoTime {@link System#nanoTime()}, read at the same time
+     * @return the time-stamp
+     */
+    public Timestamp timestamp(long currentTimeMillis, long nanoTime) {
+        long elapsed = Math.max(elapsedMillis(nanoTime), clockElapsedMillis);
+        return timestamp(currentTimeMillis, elapsed, CLOCK_CHANGE_TOLERANCE_MILLIS);
+    }
+
+    /**
+     * Get the time-stamp with the given elapsed time, using the actual clock time if the clock time
+     * calculated from the difference in elapsed time is not within the given tolerance of it.
+     */
+    private Timestamp timestamp(long currentTimeMillis, long elapsed, long tolerance) {
+        long clockTime = clockMillisSinceEpoch + (elapsed - clockElapsedMillis);
+        if (Math.abs(currentTimeMillis - clockTime) > tolerance) {
+            clockTime = currentTimeMillis;
         }
-        writeVarintsTo(timestampsOutput, elapsedMillis);
+        clockElapsedMillis = elapsed;
+        clockMillisSinceEpoch = clockTime;
+        return new Timestamp(elapsed, clockTime);
+    }
+
+    /**
+     * Get the elapsed time since the start of the build, as it will be recorded by {@link
+     * #write(long, long, int)}.
+     *
+     * @param nanoTime {@link System#nanoTime()}
+     * @return the elapsed time in milliseconds
+     */
+    public long elapsedMillis(long nanoTime) {
+        return startElapsedMillis + Math.max(nanoTime - startNanoTime, 0) / 1_000_000;
+    }
+
+    /**
+     * Write a time-stamp returned by {@link #timestamp(long, long)} for a line of the console log,
+     * recording a time shift if its clock time is not the one calculated from the difference in
+     * elapsed time.
+     *
+     * @param timestamp the time-stamp
+     * @param times the number of times to write the time-stamp
+     */
+    public synchronized void write(Timestamp timestamp, int times) throws IOException {
+        if (times < 1) {
+            return;
+        }
+        checkScheduledFlushError();
+        long elapsedMillisDiff = Math.max(timestamp.elapsedMillis - elapsedMillis, 0);
+        long previousElapsedMillis = elapsedMillis;
+        long previousTimeMillis = millisSinceEpoch;
+        elapsedMillis += elapsedMillisDiff;
+        millisSinceEpoch += elapsedMillisDiff;
+
+        long firstEntry = entryCount;
+        if (timestamp.millisSinceEpoch != millisSinceEpoch) {
+            // Written before the time-stamp, so that readers which see the time-stamp also see the
+            // time shift.
+            writeTimeShift(firstEntry, timestamp.millisSinceEpoch);
+            millisSinceEpoch = timestamp.millisSinceEpoch;
+        }
+        long firstEntryPosition = recordedBytes;
+        writeVarint(elapsedMillisDiff);
+        long secondEntryPosition = recordedBytes;
         if (times > 1) {
-            writeZerosTo(timestampsOutput, times - 1);
+            writeZeros(times - 1);
+        }
+        entryCount += times;
+
+        // Index the entries which were just written.
+        int interval = TimestampsIndex.interval;
+        long indexedEntry = Math.max(interval, (firstEntry + interval - 1) / interval * interval);
+        for (; indexedEntry < entryCount; indexedEntry += interval) {
+            if (indexedEntry == firstEntry) {
+                writeIndexRecord(indexedEntry, firstEntryPosition, previousElapsedMillis, previousTimeMillis);
+            } else {
+                writeIndexRecord(
+                        indexedEntry,
+                        secondEntryPosition + (indexedEntry - firstEntry - 1),
+                        elapsedMillis,
+                        millisSinceEpoch);
+            }
+        }
+
+        long millisSinceFlush = millisSinceEpoch - lastFlushTimeMillis;
+        if (bufferLength >= flushThreshold || millisSinceFlush >= flushInterval || millisSinceFlush < 0) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    /** Schedule a flush of the buffer after {@link #flushInterval}, unless one is already scheduled. */
+    private void scheduleFlush() {
+        if (flushExecutor == null || flushScheduled) {
+            return;
+        }
+        try {
+            flushExecutor.schedule(this::scheduledFlush, flushInterval, TimeUnit.MILLISECONDS);
+            flushScheduled = true;
+        } catch (RejectedExecutionException ex) {
+            // The buffer is still written when a later line is recorded or when this writer is closed.
+        }
+    }
+
+    /** The scheduled flush. Does nothing if the buffer has been written since it was scheduled. */
+    private synchronized void scheduledFlush() {
+        flushScheduled = false;
+        if (bufferLength == 0 || scheduledFlushError != null) {
+            return;
+        }
+        try {
+            writeBuffer();
+        } catch (IOException ex) {
+            scheduledFlushError = ex;
+        }
+    }
+
+    private void checkScheduledFlushError() throws IOException {
+        IOException error = scheduledFlushError;
+        if (error != null) {
+            scheduledFlushError = null;
+            throw new IOException("Error writing timestamps", error);
         }
     }
 
@@ -117,24 +447,97 @@ public class TimestampsWriter implements Closeable {
         return outputStream;
     }
 
-    /** Write each value to the given output stream as a Base 128 Varint. */
-    private void writeVarintsTo(OutputStream outputStream, long... values) throws IOException {
-        int offset = 0;
-        for (long value : values) {
-            offset = Varint.write(value, buffer, offset);
+    /** Add the given value to the buffer as a Base 128 Varint. */
+    private void writeVarint(long value) throws IOException {
+        if (buffer.length - bufferLength < Varint.MAX_LENGTH) {
+            flush();
         }
-        outputStream.write(buffer, 0, offset);
-        outputStream.flush();
+        int previousBufferLength = bufferLength;
+        bufferLength = Varint.write(value, buffer, bufferLength);
+        recordedBytes += bufferLength - previousBufferLength;
     }
 
-    /** Write n bytes of 0 to the given output stream. */
-    private void writeZerosTo(OutputStream outputStream, int n) throws IOException {
-        Arrays.fill(buffer, (byte) 0);
+    /** Add n bytes of 0 to the buffer. */
+    private void writeZeros(int n) throws IOException {
         while (n > 0) {
-            int bytesToWrite = Math.min(n, buffer.length);
+            if (bufferLength == buffer.length) {
+                flush();
+            }
+            int bytesToWrite = Math.min(n, buffer.length - bufferLength);
+            Arrays.fill(buffer, bufferLength, bufferLength + bytesToWrite, (byte) 0);
+            bufferLength += bytesToWrite;
+            recordedBytes += bytesToWrite;
             n -= bytesToWrite;
-            outputStream.write(buffer, 0, bytesToWrite);
-            outputStream.flush();
+        }
+    }
+
+    /**
+     * Add a record to the index.
+     *
+     * @param entry the entry number
+     * @param position the position of the entry in the time-stamps file
+     * @param previousElapsedMillis the elapsed time of the preceding entry
+     * @param previousTimeMillis the clock time of the preceding entry
+     */
+    private void writeIndexRecord(long entry, long position, long previousElapsedMillis, long previousTimeMillis)
+            throws IOException {
+        indexRecords.writeLong(entry);
+        indexRecords.writeLong(position);
+        indexRecords.writeLong(previousElapsedMillis);
+        indexRecords.writeLong(previousTimeMillis);
+    }
+
+    /**
+     * Write a time shift to the time-shifts file immediately.
+     *
+     * @param entry the entry number
+     * @param currentTimeMillis the clock time of that entry
+     */
+    private void writeTimeShift(long entry, long currentTimeMillis) throws IOException {
+        if (timeShiftsOutput == null) {
+            timeShiftsOutput = Files.newOutputStream(timeShiftsFile);
+        }
+        byte[] timeShift = new byte[2 * Varint.MAX_LENGTH];
+        int length = Varint.write(entry, timeShift, 0);
+        length = Varint.write(currentTimeMillis, timeShift, length);
+        timeShiftsOutput.write(timeShift, 0, length);
+        timeShiftsOutput.flush();
+    }
+
+    /**
+     * Write any buffered time-stamps to the file.
+     *
+     * <p>The buffer is discarded if this fails, so that a partially written buffer cannot be
+     * written again.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        checkScheduledFlushError();
+        writeBuffer();
+    }
+
+    private void writeBuffer() throws IOException {
+        lastFlushTimeMillis = millisSinceEpoch;
+        if (bufferLength == 0) {
+            return;
+        }
+        int length = bufferLength;
+        bufferLength = 0;
+        if (timestampsOutput == null) {
+            timestampsOutput = openTimestampsStream();
+        }
+        timestampsOutput.write(buffer, 0, length);
+        timestampsOutput.flush();
+
+        // The index is written after the time-stamps, so that each index record refers to a
+        // complete entry.
+        if (indexBuffer.size() > 0) {
+            if (indexOutput == null) {
+                indexOutput = Files.newOutputStream(indexFile);
+            }
+            indexBuffer.writeTo(indexOutput);
+            indexBuffer.reset();
+            indexOutput.flush();
         }
     }
 
@@ -158,9 +561,25 @@ public class TimestampsWriter implements Closeable {
 
     /** {@inheritDoc} */
     @Override
-    public void close() throws IOException {
-        if (timestampsOutput != null) {
-            timestampsOutput.close();
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            try {
+                if (timestampsOutput != null) {
+                    timestampsOutput.close();
+                }
+            } finally {
+                try {
+                    if (indexOutput != null) {
+                        indexOutput.close();
+                    }
+                } finally {
+                    if (timeShiftsOutput != null) {
+                        timeShiftsOutput.close();
+                    }
+                }
+            }
         }
     }
 }
@@ -26,6 +26,7 @@ package hudson.plugins.timestamper.io;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Utility class for reading and writing long values in Base 128 Varint format. See:
@@ -35,6 +36,9 @@ import java.io.InputStream;
  */
 final class Varint {
 
+    /** The maximum length of a long value in Base 128 Varint format. */
+    static final int MAX_LENGTH = 10;
+
     /**
      * Write a value to the given byte array as a Base 128 Varint. See:
      * https://developers.google.com/protocol-buffers/docs/encoding#varints
@@ -78,5 +82,43 @@ final class Varint {
         throw new IOException("Malformed varint");
     }
 
+    /**
+     * Find the length of the Base 128 Varint starting at the given offset of a buffer.
+     *
+     * @return the length, or {@code -1} if the value does not end before the limit
+     */
+    static int length(ByteBuffer buffer, int offset, int limit) throws IOException {
+        for (int i = offset; i < limit; i++) {
+            if ((buffer.get(i) & 0x80) == 0) {
+                return i - offset + 1;
+            }
+            if (i - offset == MAX_LENGTH - 1) {
+                throw new IOException("Malformed varint");
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read a value as a Base 128 Varint from the given offset of a buffer. The {@link
+     * #length(ByteBuffer, int, int)} method must be called first to check that the value is
+     * complete.
+     *
+     * @return the value
+     */
+    static long read(ByteBuffer buffer, int offset) {
+        int shift = 0;
+        long result = 0;
+        while (true) {
+            final byte b = buffer.get(offset);
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            offset++;
+            shift += 7;
+        }
+    }
+
     private Varint() {}
 }
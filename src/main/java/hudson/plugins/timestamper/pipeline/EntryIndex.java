@@ -0,0 +1,302 @@
+package hudson.plugins.timestamper.pipeline;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import hudson.plugins.timestamper.io.LogFingerprint;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of the console log of a Pipeline build which has a time-stamps file (see {@link
+ * PipelineTimestamps}), which allows the time-stamp entry of a line to be found without reading the
+ * whole console log from the start.
+ *
+ * <p>Only the lines without a time-stamp prefix have an entry in the time-stamps file, so the entry
+ * of a line depends on all of the lines before it. The index consists of records of two 8-byte
+ * values and a 4-byte value: a position in the console log which immediately follows a new line
+ * character, the number of time-stamp entries before that position, and the {@link LogFingerprint}
+ * of that position.
+ *
+ * <p>The console log is written by many steps, none of which knows its length, so the index is
+ * written as the console log is read rather than as it is written: when the console log is read
+ * past the last record, a record is appended after each {@link #DEFAULT_INTERVAL} bytes. If the
+ * console log does not match a record, the index is discarded and written again.
+ */
+final class EntryIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(EntryIndex.class.getName());
+
+    /** The minimum number of bytes of console log between index records. */
+    static final int DEFAULT_INTERVAL = Integer.getInteger(EntryIndex.class.getName() + ".interval", 64 * 1024);
+
+    private static final int RECORD_SIZE = 2 * Long.BYTES + Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Held while changing an index file, so that the records of each file stay in ascending order. */
+    private static final Object LOCK = new Object();
+
+    /** The time-stamp entries before a position in the console log. */
+    static final class Result {
+
+        /** The number of entries of the lines which start before the position. */
+        final long entries;
+
+        /** Whether the position is at the start of a line. */
+        final boolean atLineStart;
+
+        /**
+         * Whether {@link #entries} is known. Not if the console log ends within the time-stamp prefix
+         * of a line which starts before the position, because the rest of the prefix may not have
+         * been written yet. The entries are then only those of the lines before that line.
+         */
+        final boolean known;
+
+        Result(long entries, boolean atLineStart, boolean known) {
+            this.entries = entries;
+            this.atLineStart = atLineStart;
+            this.known = known;
+        }
+    }
+
+    /**
+     * Count the time-stamp entries of the lines which start before a position in the console log,
+     * reading the console log from the last indexed position before it.
+     *
+     * @param build the build to inspect
+     * @param position the position in the console log
+     * @return the result
+     */
+    static Result countEntries(Run<?, ?> build, long position) throws IOException {
+        return countEntries(build, position, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Count the time-stamp entries of the lines which start before a position in the console log,
+     * reading the console log from the last indexed position before it.
+     *
+     * @param build the build to inspect
+     * @param position the position in the console log
+     * @param interval the minimum number of bytes of console log between index records
+     * @return the result
+     */
+    static Result countEntries(Run<?, ?> build, long position, int interval) throws IOException {
+        Path indexFile = TimestamperPaths.entryIndexFile(build);
+        long lastIndexed = 0;
+        Record floor = null;
+        if (Files.isRegularFile(indexFile)) {
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                long records = channel.size() / RECORD_SIZE;
+                if (records > 0) {
+                    lastIndexed = readRecord(channel, records - 1).position;
+                    floor = floor(channel, records, position);
+                }
+            }
+        }
+
+        LogFingerprint fingerprint = new LogFingerprint();
+        InputStream inputStream = build.getLogInputStream();
+        try {
+            long start = 0;
+            long entries = 0;
+            if (floor != null) {
+                if (fingerprint.resumeAt(inputStream, floor.position, floor.fingerprint)) {
+                    start = floor.position;
+                    entries = floor.entries;
+                } else {
+                    inputStream.close();
+                    inputStream = build.getLogInputStream();
+                    fingerprint = new LogFingerprint();
+                    lastIndexed = 0;
+                    delete(indexFile);
+                }
+            }
+            ByteArrayOutputStream newRecords = new ByteArrayOutputStream();
+            Result result = scan(
+                    inputStream,
+                    fingerprint,
+                    start,
+                    entries,
+                    position,
+                    lastIndexed,
+                    interval,
+                    new DataOutputStream(newRecords));
+            if (newRecords.size() > 0) {
+                append(indexFile, newRecords.toByteArray());
+            }
+            return result;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Read the console log from a line start up to the given position, or to the end of the line
+     * which starts before it if its time-stamp prefix has not yet been read. The result is unknown
+     * if the console log ends within that prefix.
+     *
+     * @param start the position of the input stream, which is at the start of a line
+     * @param entries the number of entries before that position
+     * @param lastIndexed the position of the last index record
+     * @param newRecords receives the index records after that position
+     */
+    private static Result scan(
+            InputStream inputStream,
+            LogFingerprint fingerprint,
+            long start,
+            long entries,
+            long position,
+            long lastIndexed,
+            int interval,
+            DataOutputStream newRecords)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] prefix = new byte[GlobalAnnotator.PREFIX_LENGTH];
+        long index = start;
+        long lineStart = start;
+        long lastRecord = lastIndexed;
+        int lineLength = 0;
+        boolean prefixChecked = false;
+        // The start of a line before the position may extend past the position.
+        while (index < position || (lineStart < position && !prefixChecked)) {
+            int read = inputStream.read(buffer);
+            if (read == -1) {
+                if (!prefixChecked && lineLength > 0) {
+                    if (GlobalAnnotator.isPrefixStart(prefix, lineLength)) {
+                        return new Result(entries, lineStart == position, false);
+                    }
+                    entries++;
+                }
+                break;
+            }
+            int i = 0;
+            for (; i < read && (index < position || (lineStart < position && !prefixChecked)); i++) {
+                byte value = buffer[i];
+                index++;
+                if (value == '\n') {
+                    if (!prefixChecked && !GlobalAnnotator.hasPrefix(prefix, lineLength)) {
+                        entries++;
+                    }
+                    lineStart = index;
+                    lineLength = 0;
+                    prefixChecked = false;
+                    if (index - lastRecord >= interval) {
+                        newRecords.writeLong(index);
+                        newRecords.writeLong(entries);
+                        newRecords.writeInt(fingerprint.fingerprint(buffer, 0, i + 1));
+                        lastRecord = index;
+                    }
+                } else if (!prefixChecked) {
+                    prefix[lineLength++] = value;
+                    if (lineLength == prefix.length) {
+                        if (!GlobalAnnotator.hasPrefix(prefix, lineLength)) {
+                            entries++;
+                        }
+                        prefixChecked = true;
+                    }
+                }
+            }
+            fingerprint.update(buffer, 0, i);
+        }
+        return new Result(entries, lineStart == position, true);
+    }
+
+    /** Append records to the index, skipping those which another reader has already appended. */
+    private static void append(Path indexFile, byte[] records) {
+        synchronized (LOCK) {
+            try {
+                long lastIndexed = 0;
+                if (Files.isRegularFile(indexFile)) {
+                    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                        long count = channel.size() / RECORD_SIZE;
+                        if (count > 0) {
+                            lastIndexed = readRecord(channel, count - 1).position;
+                        }
+                    }
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                int offset = 0;
+                while (offset < records.length && buffer.getLong(offset) <= lastIndexed) {
+                    offset += RECORD_SIZE;
+                }
+                if (offset < records.length) {
+                    Files.createDirectories(indexFile.getParent());
+                    try (OutputStream outputStream =
+                            Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                        outputStream.write(records, offset, records.length - offset);
+                    }
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Error writing " + indexFile, ex);
+            }
+        }
+    }
+
+    private static void delete(Path indexFile) {
+        synchronized (LOCK) {
+            try {
+                Files.deleteIfExists(indexFile);
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Error deleting " + indexFile, ex);
+            }
+        }
+    }
+
+    /** Binary search for the last record at or before the given position. */
+    @CheckForNull
+    private static Record floor(FileChannel channel, long records, long position) throws IOException {
+        long low = 0;
+        long high = records - 1;
+        Record result = null;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            Record record = readRecord(channel, mid);
+            if (record.position <= position) {
+                result = record;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    private static Record readRecord(FileChannel channel, long record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, record * RECORD_SIZE + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return new Record(buffer.getLong(0), buffer.getLong(Long.BYTES), buffer.getInt(2 * Long.BYTES));
+    }
+
+    private static final class Record {
+
+        final long position;
+
+        final long entries;
+
+        final int fingerprint;
+
+        Record(long position, long entries, int fingerprint) {
+            this.position = position;
+            this.entries = entries;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private EntryIndex() {}
+}
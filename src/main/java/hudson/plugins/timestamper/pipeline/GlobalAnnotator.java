@@ -24,6 +24,7 @@
 
 package hudson.plugins.timestamper.pipeline;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.MarkupText;
@@ -32,11 +33,17 @@ import hudson.console.ConsoleAnnotatorFactory;
 import hudson.model.Queue;
 import hudson.model.Run;
 import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.annotator.TimestampAnnotatorFactory3;
 import hudson.plugins.timestamper.format.TimestampFormat;
 import hudson.plugins.timestamper.format.TimestampFormatProvider;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import hudson.plugins.timestamper.io.TimestampsReader;
 import java.io.IOException;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeParseException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,6 +51,8 @@ import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest2;
 
 /** Interprets marks added by {@link GlobalDecorator}. */
 public final class GlobalAnnotator extends ConsoleAnnotator<Object> {
@@ -52,11 +61,150 @@ public final class GlobalAnnotator extends ConsoleAnnotator<Object> {
 
     private static final Logger LOGGER = Logger.getLogger(GlobalAnnotator.class.getName());
 
+    /**
+     * Whether {@link #buildStartTime} has been resolved. Reset when this annotator is deserialized
+     * for the next chunk of the console log, so that the build is looked up again.
+     */
+    private transient boolean resolved;
+
+    private transient long buildStartTime;
+
+    @CheckForNull
+    private transient TimestampFormat format;
+
+    /**
+     * Whether the lines without a time-stamp prefix have an entry in the time-stamps file (see
+     * {@link PipelineTimestamps}).
+     */
+    private boolean readTimestampsFile;
+
+    /** The position in the console log of the first line to annotate. Only used with {@link #readTimestampsFile}. */
+    private long logOffset;
+
+    /**
+     * Whether the time-stamps file could not be opened because the console log ended within the
+     * time-stamp prefix of the line at {@link #logOffset}. It is opened again for the next chunk of
+     * the console log, from the offset of that chunk.
+     */
+    private boolean deferred;
+
+    @CheckForNull
+    private TimestampsReader timestampsReader;
+
+    GlobalAnnotator() {
+        this.logOffset = 0;
+    }
+
+    /**
+     * Create an annotator for a build which also has a time-stamps file.
+     *
+     * @param logOffset the position in the console log of the first line to annotate. A
+     *     non-negative position is from the start of the file, and a negative position is back from
+     *     the end of the file.
+     */
+    GlobalAnnotator(long logOffset) {
+        this.readTimestampsFile = true;
+        this.logOffset = logOffset;
+    }
+
     @Override
     public ConsoleAnnotator<Object> annotate(@NonNull Object context, @NonNull MarkupText text) {
-        Run<?, ?> build;
+        if (!resolved) {
+            Run<?, ?> build = getBuild(context);
+            if (build == null) {
+                return null;
+            }
+            buildStartTime = build.getStartTimeInMillis();
+            resolved = true;
+            if (readTimestampsFile && timestampsReader == null) {
+                StaplerRequest2 request = Stapler.getCurrentRequest2();
+                if (deferred && request != null) {
+                    logOffset = TimestampAnnotatorFactory3.getOffset(request);
+                }
+                try {
+                    if (!openTimestampsFile(build)) {
+                        return this; // the first line is only partially displayed
+                    }
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Error reading timestamps for " + build.getFullDisplayName(), ex);
+                    readTimestampsFile = false;
+                }
+            }
+        }
+        long millisSinceEpoch = parseMillisSinceEpoch(text.getText());
+        if (millisSinceEpoch != NOT_A_TIMESTAMP) {
+            markup(text, new Timestamp(millisSinceEpoch - buildStartTime, millisSinceEpoch));
+            text.addMarkup(0, 26, "<span style=\"display: none\">", "</span>");
+        } else if (timestampsReader != null) {
+            try {
+                Optional<Timestamp> timestamp = timestampsReader.read();
+                if (timestamp.isPresent()) {
+                    markup(text, timestamp.get());
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error reading timestamps", ex);
+                timestampsReader.close();
+                timestampsReader = null;
+                readTimestampsFile = false;
+            }
+        }
+        return this;
+    }
+
+    private void markup(MarkupText text, Timestamp timestamp) {
+        if (format == null) {
+            format = TimestampFormatProvider.get();
+        }
+        format.markup(text, timestamp);
+    }
+
+    /**
+     * Open the time-stamps file and skip the entries of the lines before {@link #logOffset}. These
+     * are the lines without a time-stamp prefix, so the console log is read from the last position
+     * before {@link #logOffset} in the {@link EntryIndex}. Not opened if the console log ends within
+     * the time-stamp prefix of the line at {@link #logOffset}, see {@link #deferred}.
+     *
+     * @return whether the time-stamps file was opened and {@link #logOffset} is at the start of a line
+     */
+    private boolean openTimestampsFile(Run<?, ?> build) throws IOException {
+        long position = logOffset;
+        if (position < 0) {
+            position = Math.max(build.getLogText().length() + position, 0);
+        }
+        EntryIndex.Result result = EntryIndex.countEntries(build, position);
+        deferred = !result.known;
+        if (deferred) {
+            return false;
+        }
+        timestampsReader = new TimestampsReader(build);
+        timestampsReader.skip(Math.toIntExact(result.entries));
+        return result.atLineStart;
+    }
+
+    /** Whether the given bytes at the start of a line are a time-stamp prefix. */
+    static boolean hasPrefix(byte[] prefix, int length) {
+        return parseMillisSinceEpoch(new AsciiCharSequence(prefix, 0, length)) != NOT_A_TIMESTAMP;
+    }
+
+    /**
+     * Whether the given bytes at the start of a line may be the start of a time-stamp prefix, which
+     * has not yet been completely written.
+     */
+    static boolean isPrefixStart(byte[] prefix, int length) {
+        for (int i = 0; i < length && i < PREFIX_PATTERN.length(); i++) {
+            char expected = PREFIX_PATTERN.charAt(i);
+            byte value = prefix[i];
+            if (expected == '0' ? value < '0' || value > '9' : value != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @CheckForNull
+    private static Run<?, ?> getBuild(Object context) {
         if (context instanceof Run) {
-            build = (Run<?, ?>) context;
+            return (Run<?, ?>) context;
         } else if (context instanceof FlowNode) {
             FlowExecutionOwner owner = ((FlowNode) context).getExecution().getOwner();
             if (owner == null) {
@@ -70,41 +218,164 @@ public final class GlobalAnnotator extends ConsoleAnnotator<Object> {
                 return null;
             }
             if (executable instanceof Run) {
-                build = (Run<?, ?>) executable;
-            } else {
-                return null;
+                return (Run<?, ?>) executable;
             }
-        } else {
-            return null;
         }
-        long buildStartTime = build.getStartTimeInMillis();
-        parseTimestamp(text.getText(), buildStartTime).ifPresent(timestamp -> {
-            TimestampFormat format = TimestampFormatProvider.get();
-            format.markup(text, timestamp);
-            text.addMarkup(0, 26, "<span style=\"display: none\">", "</span>");
-        });
-        return this;
+        return null;
     }
 
     /** Parse this line for a timestamp if such a timestamp is present. */
     @Restricted(NoExternalUse.class)
     public static Optional<Timestamp> parseTimestamp(String text, long buildStartTime) {
-        if (text.startsWith("[")) {
-            int end = text.indexOf(']');
-            if (end != -1) {
-                try {
-                    long millisSinceEpoch = ZonedDateTime.parse(text.substring(1, end), GlobalDecorator.UTC_MILLIS)
-                            .toInstant()
-                            .toEpochMilli();
-                    // Alternately: Instant.parse(text.substring(1, end)).toEpochMilli()
-                    Timestamp timestamp = new Timestamp(millisSinceEpoch - buildStartTime, millisSinceEpoch);
-                    return Optional.of(timestamp);
-                } catch (DateTimeParseException x) {
-                    // something else, ignore
-                }
+        long millisSinceEpoch = parseMillisSinceEpoch(text);
+        if (millisSinceEpoch == NOT_A_TIMESTAMP) {
+            return Optional.empty();
+        }
+        Timestamp timestamp = new Timestamp(millisSinceEpoch - buildStartTime, millisSinceEpoch);
+        return Optional.of(timestamp);
+    }
+
+    /**
+     * Parse this line of the console log for a timestamp if such a timestamp is present, without
+     * decoding the line.
+     */
+    @Restricted(NoExternalUse.class)
+    public static Optional<Timestamp> parseTimestamp(byte[] b, int off, int len, long buildStartTime) {
+        long millisSinceEpoch = parseMillisSinceEpoch(new AsciiCharSequence(b, off, len));
+        if (millisSinceEpoch == NOT_A_TIMESTAMP) {
+            return Optional.empty();
+        }
+        Timestamp timestamp = new Timestamp(millisSinceEpoch - buildStartTime, millisSinceEpoch);
+        return Optional.of(timestamp);
+    }
+
+    /** Returned by {@link #parseMillisSinceEpoch(CharSequence)} for a line without a timestamp. */
+    static final long NOT_A_TIMESTAMP = Long.MIN_VALUE;
+
+    /** The length of the {@code [yyyy-MM-ddTHH:mm:ss.SSSZ]} prefix. */
+    static final int PREFIX_LENGTH = 1 + 24 + 1;
+
+    /** The characters of the time-stamp prefix, with {@code 0} for any digit. */
+    private static final String PREFIX_PATTERN = "[0000-00-00T00:00:00.000Z]";
+
+    /** The start of the most recently parsed day. Replaced when a different day is parsed. */
+    private static volatile DayStart lastDayStart = new DayStart(0, 0);
+
+    /**
+     * Parse the timestamp written by {@link GlobalDecorator} at the start of this line, without
+     * allocating and without throwing an exception if the line does not start with a timestamp.
+     *
+     * @return the time in milliseconds since the epoch, or {@link #NOT_A_TIMESTAMP}
+     */
+    static long parseMillisSinceEpoch(CharSequence text) {
+        if (text.length() < PREFIX_LENGTH
+                || text.charAt(0) != '['
+                || text.charAt(5) != '-'
+                || text.charAt(8) != '-'
+                || text.charAt(11) != 'T'
+                || text.charAt(14) != ':'
+                || text.charAt(17) != ':'
+                || text.charAt(20) != '.'
+                || text.charAt(24) != 'Z'
+                || text.charAt(25) != ']') {
+            return NOT_A_TIMESTAMP;
+        }
+        int year = digits(text, 1, 4);
+        int month = digits(text, 6, 2);
+        int day = digits(text, 9, 2);
+        int hour = digits(text, 12, 2);
+        int minute = digits(text, 15, 2);
+        int second = digits(text, 18, 2);
+        int millis = digits(text, 21, 3);
+        if ((year | month | day | hour | minute | second | millis) < 0
+                || month < 1
+                || month > 12
+                || day < 1
+                || day > Month.of(month).length(Year.isLeap(year))
+                || hour > 23
+                || minute > 59
+                || second > 59) {
+            return NOT_A_TIMESTAMP;
+        }
+
+        int date = (year * 100 + month) * 100 + day;
+        DayStart dayStart = lastDayStart;
+        if (dayStart.date != date) {
+            dayStart = new DayStart(date, LocalDate.of(year, month, day).toEpochDay() * MILLIS_PER_DAY);
+            lastDayStart = dayStart;
+        }
+        return dayStart.millisSinceEpoch + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Parse a fixed number of decimal digits.
+     *
+     * @return the value, or {@code -1} if any of the characters is not a digit
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
             }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * The bytes of a line of the console log as characters. Each byte is mapped to the character
+     * with the same value, which is only correct for ASCII characters such as the timestamp prefix.
+     */
+    private static final class AsciiCharSequence implements CharSequence {
+
+        private final byte[] b;
+
+        private final int off;
+
+        private final int len;
+
+        AsciiCharSequence(byte[] b, int off, int len) {
+            this.b = b;
+            this.off = off;
+            this.len = len;
+        }
+
+        @Override
+        public int length() {
+            return len;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (b[off + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiCharSequence(b, off + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(b, off, len, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /** A date, as yyyyMMdd, and the time at the start of that day in UTC. */
+    private static final class DayStart {
+
+        final int date;
+
+        final long millisSinceEpoch;
+
+        DayStart(int date, long millisSinceEpoch) {
+            this.date = date;
+            this.millisSinceEpoch = millisSinceEpoch;
         }
-        return Optional.empty();
     }
 
     @Extension
@@ -113,8 +384,16 @@ public final class GlobalAnnotator extends ConsoleAnnotator<Object> {
         @Override
         public ConsoleAnnotator<Object> newInstance(Object context) {
             if (context instanceof Run && context instanceof FlowExecutionOwner.Executable) {
+                Run<?, ?> build = (Run<?, ?>) context;
+                StaplerRequest2 request = Stapler.getCurrentRequest2();
+                if (request != null && Files.isRegularFile(TimestamperPaths.timestampsFile(build))) {
+                    return new GlobalAnnotator(TimestampAnnotatorFactory3.getOffset(request));
+                }
                 return new GlobalAnnotator();
             } else if (context instanceof FlowNode) {
+                // A step log only has some of the lines of the build, and does not tell which
+                // entries of the time-stamps file they have, so only the lines with a time-stamp
+                // prefix are annotated.
                 return new GlobalAnnotator();
             }
             // Note that prior to 2.145, we actually get FlowNode.class here rather than a FlowNode,
@@ -24,25 +24,38 @@
 
 package hudson.plugins.timestamper.pipeline;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.console.LineTransformationOutputStream;
 import hudson.model.Queue;
 import hudson.model.Run;
+import hudson.model.listeners.RunListener;
 import hudson.plugins.timestamper.TimestamperConfig;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
 import org.jenkinsci.plugins.workflow.log.TaskListenerDecorator;
 
-/** Applies plain-text timestamp prefixes to all Pipeline log lines. */
+/**
+ * Applies plain-text timestamp prefixes to all Pipeline log lines.
+ *
+ * <p>If the {@code hudson.plugins.timestamper.pipeline.GlobalDecorator.timestampsFile} system
+ * property is set, the lines written by the controller are not prefixed, and their time-stamps are
+ * written to the same time-stamps file as for Freestyle builds instead (see {@link
+ * PipelineTimestamps}). Only the controller can write to that file, so this decorator still
+ * prefixes the lines when it runs on an agent, e.g. the output of {@code sh} and {@code bat} steps.
+ * In a typical Pipeline, that is most of the console log.
+ */
 public final class GlobalDecorator extends TaskListenerDecorator {
 
     private static final Logger LOGGER = Logger.getLogger(GlobalDecorator.class.getName());
@@ -53,35 +66,119 @@ public final class GlobalDecorator extends TaskListenerDecorator {
 
     private static final long serialVersionUID = 1;
 
-    GlobalDecorator() {}
+    /**
+     * The externalizable ID of the build whose time-stamps are written to the time-stamps file, or
+     * {@code null} to prefix every line.
+     */
+    @CheckForNull
+    private final String timestampsFileBuildId;
+
+    GlobalDecorator() {
+        this(null);
+    }
+
+    GlobalDecorator(@CheckForNull String timestampsFileBuildId) {
+        this.timestampsFileBuildId = timestampsFileBuildId;
+    }
 
     @NonNull
     @Override
     public OutputStream decorate(@NonNull final OutputStream logger) throws IOException, InterruptedException {
-        return new GlobalDecoratorLineTransformationOutputStream(logger);
+        PipelineTimestamps timestamps =
+                timestampsFileBuildId == null ? null : PipelineTimestamps.get(timestampsFileBuildId);
+        return new GlobalDecoratorLineTransformationOutputStream(logger, timestamps);
     }
 
     private static class GlobalDecoratorLineTransformationOutputStream extends LineTransformationOutputStream {
+
+        /** The length of the {@code [yyyy-MM-ddTHH:mm:ss.} part of the prefix. */
+        private static final int SECOND_PREFIX_LENGTH = 1 + 20;
+
+        /** The length of the {@code [yyyy-MM-ddTHH:mm:ss.SSSZ] } prefix. */
+        private static final int PREFIX_LENGTH = 1 + 24 + 1 + 1;
+
         private final OutputStream logger;
 
-        public GlobalDecoratorLineTransformationOutputStream(OutputStream logger) {
+        /** The time-stamps file to record the lines in, or {@code null} to prefix every line. */
+        @CheckForNull
+        private final PipelineTimestamps timestamps;
+
+        /**
+         * The prefix followed by the current line. The part of the prefix up to the milliseconds is
+         * only rendered again when the second changes.
+         */
+        private byte[] buffer = new byte[256];
+
+        /** The second rendered in {@link #buffer}, in milliseconds since the epoch. */
+        private long bufferSecond = Long.MIN_VALUE;
+
+        public GlobalDecoratorLineTransformationOutputStream(
+                OutputStream logger, @CheckForNull PipelineTimestamps timestamps) {
             this.logger = logger;
+            this.timestamps = timestamps;
         }
 
         @Override
         protected void eol(byte[] b, int len) throws IOException {
+            if (timestamps != null && timestamps.writeLine(logger, b, len)) {
+                return;
+            }
             synchronized (logger) { // typically this will be a PrintStream
-                ByteBuffer buffer = ByteBuffer.allocate(1 + 24 + 1 + 1 + len);
-                buffer.put((byte) '[');
-                buffer.put(ZonedDateTime.now(ZoneOffset.UTC).format(UTC_MILLIS).getBytes(StandardCharsets.US_ASCII));
-                buffer.put((byte) ']');
-                buffer.put((byte) ' ');
-                buffer.put(b, 0, len);
-                // ByteBuffer documentation specifies that `ByteBuffer#array` will succeed and that
-                // the underlying array offset is 0, but does not specify what the underlying array
-                // length will be.
-                logger.write(buffer.array(), 0, buffer.position());
+                long now = System.currentTimeMillis();
+                long second = Math.floorDiv(now, 1000L) * 1000L;
+                if (second != bufferSecond && !renderSecond(second)) {
+                    eolWithFormatter(b, len, now);
+                    return;
+                }
+                if (buffer.length < PREFIX_LENGTH + len) {
+                    buffer = Arrays.copyOf(buffer, Math.max(PREFIX_LENGTH + len, 2 * buffer.length));
+                }
+                int millis = (int) (now - second);
+                buffer[SECOND_PREFIX_LENGTH] = (byte) ('0' + millis / 100);
+                buffer[SECOND_PREFIX_LENGTH + 1] = (byte) ('0' + millis / 10 % 10);
+                buffer[SECOND_PREFIX_LENGTH + 2] = (byte) ('0' + millis % 10);
+                System.arraycopy(b, 0, buffer, PREFIX_LENGTH, len);
+                logger.write(buffer, 0, PREFIX_LENGTH + len);
+            }
+        }
+
+        /**
+         * Render the prefix for the given second into {@link #buffer}.
+         *
+         * @return {@code false} if the prefix does not have the usual length, e.g. for years after
+         *     9999
+         */
+        private boolean renderSecond(long second) {
+            String timestamp = ZonedDateTime.ofInstant(Instant.ofEpochMilli(second), ZoneOffset.UTC)
+                    .format(UTC_MILLIS);
+            if (timestamp.length() != 24) {
+                bufferSecond = Long.MIN_VALUE;
+                return false;
             }
+            buffer[0] = (byte) '[';
+            for (int i = 0; i < timestamp.length(); i++) {
+                buffer[1 + i] = (byte) timestamp.charAt(i);
+            }
+            buffer[PREFIX_LENGTH - 2] = (byte) ']';
+            buffer[PREFIX_LENGTH - 1] = (byte) ' ';
+            bufferSecond = second;
+            return true;
+        }
+
+        private void eolWithFormatter(byte[] b, int len, long now) throws IOException {
+            byte[] timestamp = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneOffset.UTC)
+                    .format(UTC_MILLIS)
+                    .getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer buffer = ByteBuffer.allocate(1 + timestamp.length + 1 + 1 + len);
+            buffer.put((byte) '[');
+            buffer.put(timestamp);
+            buffer.put((byte) ']');
+            buffer.put((byte) ' ');
+            buffer.put(b, 0, len);
+            // ByteBuffer documentation specifies that `ByteBuffer#array` will succeed and that
+            // the underlying array offset is 0, but does not specify what the underlying array
+            // length will be.
+            logger.write(buffer.array(), 0, buffer.position());
         }
 
         @Override
@@ -107,6 +204,11 @@ public final class GlobalDecorator extends TaskListenerDecorator {
             try {
                 Queue.Executable executable = owner.getExecutable();
                 if (executable instanceof Run) { // we need at least getStartTimeInMillis
+                    if (PipelineTimestamps.ENABLED) {
+                        Run<?, ?> build = (Run<?, ?>) executable;
+                        PipelineTimestamps.open(build);
+                        return new GlobalDecorator(build.getExternalizableId());
+                    }
                     return new GlobalDecorator();
                 }
             } catch (IOException x) {
@@ -115,4 +217,16 @@ public final class GlobalDecorator extends TaskListenerDecorator {
             return null;
         }
     }
+
+    /** Closes the time-stamps file of each Pipeline build once it has finished. */
+    @Extension
+    public static final class TimestampsFileCloser extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onFinalized(Run<?, ?> build) {
+            if (PipelineTimestamps.ENABLED) {
+                PipelineTimestamps.close(build);
+            }
+        }
+    }
 }
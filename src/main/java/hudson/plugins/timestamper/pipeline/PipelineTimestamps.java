@@ -0,0 +1,105 @@
+package hudson.plugins.timestamper.pipeline;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The time-stamps file of a running Pipeline build. Only used when the {@code
+ * hudson.plugins.timestamper.pipeline.GlobalDecorator.timestampsFile} system property is set.
+ *
+ * <p>Each line of the console log either starts with a time-stamp prefix written by {@link
+ * GlobalDecorator} or has an entry in the time-stamps file, in the same order as the console log.
+ * The entry and the line are written while holding the same lock, which is only possible for lines
+ * written by the controller. Lines written by an agent, after a restart of the controller or after
+ * the time-stamps file could not be written are given a time-stamp prefix as before.
+ */
+final class PipelineTimestamps {
+
+    /** Whether the time-stamps of Pipeline builds are written to a separate file. Not final for tests. */
+    static boolean ENABLED = Boolean.getBoolean(GlobalDecorator.class.getName() + ".timestampsFile");
+
+    private static final Logger LOGGER = Logger.getLogger(PipelineTimestamps.class.getName());
+
+    /** The time-stamps files of the running builds, by externalizable ID. */
+    private static final Map<String, PipelineTimestamps> OPEN = new ConcurrentHashMap<>();
+
+    private final String buildName;
+
+    /** The writer, or {@code null} once closed or if the time-stamps file could not be written. */
+    @CheckForNull
+    private TimestampsWriter writer;
+
+    private PipelineTimestamps(Run<?, ?> build) {
+        this.buildName = build.getFullDisplayName();
+        try {
+            writer = new TimestampsWriter(build);
+        } catch (IOException ex) {
+            // e.g. the file already exists because the build was resumed
+            LOGGER.log(Level.FINE, "Cannot create the time-stamps file for " + buildName, ex);
+        }
+    }
+
+    /** Open the time-stamps file of the given build, unless it has already been opened. */
+    static void open(Run<?, ?> build) {
+        OPEN.computeIfAbsent(build.getExternalizableId(), id -> new PipelineTimestamps(build));
+    }
+
+    /**
+     * Get the time-stamps file of a running build.
+     *
+     * @param buildId the externalizable ID of the build
+     * @return the time-stamps file, or {@code null} if it has not been opened in this JVM
+     */
+    @CheckForNull
+    static PipelineTimestamps get(String buildId) {
+        return OPEN.get(buildId);
+    }
+
+    /** Close the time-stamps file of the given build, if open. */
+    static void close(Run<?, ?> build) {
+        PipelineTimestamps timestamps = OPEN.remove(build.getExternalizableId());
+        if (timestamps != null) {
+            timestamps.close();
+        }
+    }
+
+    /**
+     * Record the time-stamp of a line of the console log, then write the line.
+     *
+     * @param logger the stream to write the line to
+     * @return {@code true} if the line was written, or {@code false} if the time-stamp could not be
+     *     recorded and the line was not written
+     */
+    synchronized boolean writeLine(OutputStream logger, byte[] b, int len) throws IOException {
+        if (writer == null) {
+            return false;
+        }
+        try {
+            writer.write(System.currentTimeMillis(), System.nanoTime(), 1);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error writing timestamps for " + buildName, ex);
+            close();
+            return false;
+        }
+        logger.write(b, 0, len);
+        return true;
+    }
+
+    private synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error writing timestamps for " + buildName, ex);
+            }
+            writer = null;
+        }
+    }
+}
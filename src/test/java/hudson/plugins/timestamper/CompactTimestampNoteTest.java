@@ -0,0 +1,112 @@
+package hudson.plugins.timestamper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link CompactTimestampNote} class. */
+class CompactTimestampNoteTest {
+
+    private static final byte[] KEY = new byte[32];
+
+    private static final byte[] OTHER_KEY = "another key of thirty-two bytes!".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void testEncodeAndDecode() {
+        CompactTimestampNote compactNote = new CompactTimestampNote(KEY);
+        Random random = new Random(0);
+        long[] values = {0, 1, -1, 15, 16, -16, -17, 3_600_000, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+        for (int i = 0; i < 10_000; i++) {
+            long elapsedMillis = i < values.length ? values[i] : random.nextLong() >> random.nextInt(64);
+            byte[] note = compactNote.encode(elapsedMillis);
+            String line = new String(note, StandardCharsets.US_ASCII) + "line";
+
+            assertThat(compactNote.decode(line), is(elapsedMillis));
+            byte[] bytes = ("text" + line).getBytes(StandardCharsets.US_ASCII);
+            assertThat(compactNote.decode(bytes, 4, bytes.length - 4), is(elapsedMillis));
+            assertThat(CompactTimestampNote.length(elapsedMillis), is(note.length));
+        }
+    }
+
+    @Test
+    void testEncodedLength() {
+        // one day
+        assertThat(new CompactTimestampNote(KEY).encode(86_400_000L).length, is(lessThanOrEqualTo(26)));
+    }
+
+    @Test
+    void testDecodeRejectsOtherLines() {
+        String[] lines = {
+            "",
+            "line",
+            "\u001B[8mts:",
+            "\u001B[8mts:a",
+            "\u001B[8mts:a\u001B[0",
+            "\u001B[8mts:\u001B[0m",
+            "\u001B[8mts:A\u001B[0m",
+            "\u001B[8mts:*\u001B[0m",
+            "\u001B[8mts:Aa\u001B[0m",
+            "\u001B[8mts:AAAAAAAAAAAAAb\u001B[0m",
+            "\u001B[8mha:a\u001B[0m",
+            "text\u001B[8mts:a\u001B[0m",
+        };
+        CompactTimestampNote compactNote = new CompactTimestampNote(KEY);
+        for (String line : lines) {
+            assertThat(line, compactNote.decode(line), is(CompactTimestampNote.NOT_A_NOTE));
+        }
+    }
+
+    @Test
+    void testDecodeRejectsUnsignedNote() {
+        // the note without its signature
+        String note = new String(new CompactTimestampNote(KEY).encode(1000), StandardCharsets.US_ASCII);
+        String unsigned = note.substring(0, note.length() - 12) + "\u001B[0m";
+        assertThat(new CompactTimestampNote(KEY).decode(unsigned), is(CompactTimestampNote.NOT_A_NOTE));
+    }
+
+    @Test
+    void testDecodeRejectsNoteOfOtherBuild() {
+        byte[] note = new CompactTimestampNote(OTHER_KEY).encode(1000);
+        assertThat(new CompactTimestampNote(KEY).decode(note, 0, note.length), is(CompactTimestampNote.NOT_A_NOTE));
+    }
+
+    @Test
+    void testDecodeRejectsChangedElapsedTime() {
+        CompactTimestampNote compactNote = new CompactTimestampNote(KEY);
+        byte[] note = compactNote.encode(1000);
+        byte[] otherNote = compactNote.encode(2000);
+        assertThat(otherNote.length, is(note.length));
+        // the elapsed time of the other note, with the signature of the first note
+        byte[] changed = Arrays.copyOf(note, note.length);
+        System.arraycopy(otherNote, 0, changed, 0, note.length - 12);
+        assertThat(compactNote.decode(changed, 0, changed.length), is(CompactTimestampNote.NOT_A_NOTE));
+    }
+
+    @Test
+    void testKeyOfBuild() throws Exception {
+        Run<?, ?> build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(folder);
+        assertThat(CompactTimestampNote.forBuild(build), is(nullValue()));
+
+        byte[] key = CompactTimestampNote.createKey(build);
+        assertThat(key.length, is(32));
+        assertThat(CompactTimestampNote.createKey(build), is(key));
+
+        byte[] note = new CompactTimestampNote(key).encode(1000);
+        assertThat(CompactTimestampNote.forBuild(build).decode(note, 0, note.length), is(1000L));
+    }
+}
@@ -0,0 +1,90 @@
+package hudson.plugins.timestamper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+import hudson.plugins.timestamper.io.LogFingerprint;
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link LineIndexWriter} class. */
+class LineIndexWriterTest {
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void testRecordsFollowNewLines() throws Exception {
+        Path lineIndexFile = folder.toPath().resolve("timestamper").resolve("lines.idx");
+        ByteArrayOutputStream consoleLog = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new TimestamperOutputStream(
+                consoleLog, mock(TimestampsWriter.class), null, new LineIndexWriter(lineIndexFile, 10), null)) {
+            outputStream.write(bytes("line 1\nline 2\nli"));
+            outputStream.write(bytes("ne 3\n"));
+            outputStream.write(bytes("line"));
+            outputStream.write(bytes(" 4 is longer\nline 5\nline 6\n"));
+        }
+
+        // position 14 follows "line 2\n" and position 52 follows "line 6\n"
+        byte[] log = consoleLog.toByteArray();
+        assertThat(
+                readRecords(lineIndexFile),
+                is(Arrays.asList(14L, 2L, fingerprint(log, 14), 52L, 6L, fingerprint(log, 52))));
+        assertThat(log[14 - 1], is((byte) '\n'));
+        assertThat(log[52 - 1], is((byte) '\n'));
+    }
+
+    @Test
+    void testNoRecordsForShortLog() throws Exception {
+        Path lineIndexFile = folder.toPath().resolve("lines.idx");
+        try (LineIndexWriter writer = new LineIndexWriter(lineIndexFile, 10)) {
+            byte[] b = bytes("a\nb\n");
+            writer.write(b, 0, b.length, b.length, 2, new LogFingerprint());
+        }
+        assertThat(Files.exists(lineIndexFile), is(false));
+    }
+
+    @Test
+    void testNoRecordWithoutNewLine() throws Exception {
+        Path lineIndexFile = folder.toPath().resolve("lines.idx");
+        try (LineIndexWriter writer = new LineIndexWriter(lineIndexFile, 10)) {
+            byte[] b = bytes("a very long line without a new line");
+            writer.write(b, 0, b.length, b.length, 0, new LogFingerprint());
+        }
+        assertThat(Files.exists(lineIndexFile), is(false));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long fingerprint(byte[] log, int position) {
+        return new LogFingerprint().fingerprint(log, 0, position);
+    }
+
+    private static List<Long> readRecords(Path lineIndexFile) throws Exception {
+        List<Long> values = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(lineIndexFile))) {
+            while (true) {
+                values.add(in.readLong());
+                values.add(in.readLong());
+                values.add((long) in.readInt());
+            }
+        } catch (EOFException e) {
+            return values;
+        }
+    }
+}
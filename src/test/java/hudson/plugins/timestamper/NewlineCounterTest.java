@@ -0,0 +1,61 @@
+package hudson.plugins.timestamper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/** Unit test for the {@link NewlineCounter} implementations. */
+class NewlineCounterTest {
+
+    static Stream<NewlineCounter> counters() {
+        return Stream.of(NewlineCounter.SCALAR, NewlineCounter.WORD_AT_A_TIME);
+    }
+
+    @ParameterizedTest
+    @MethodSource("counters")
+    void testEmpty(NewlineCounter counter) {
+        assertThat(counter.count(new byte[0], 0, 0), is(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("counters")
+    void testCount(NewlineCounter counter) {
+        byte[] bytes = "a\nbb\n\nccc dddd eeeee\nf\n".getBytes(StandardCharsets.US_ASCII);
+        assertThat(counter.count(bytes, 0, bytes.length), is(5));
+    }
+
+    @ParameterizedTest
+    @MethodSource("counters")
+    void testRange(NewlineCounter counter) {
+        byte[] bytes = "\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n".getBytes(StandardCharsets.US_ASCII);
+        assertThat(counter.count(bytes, 3, 13), is(13));
+    }
+
+    @ParameterizedTest
+    @MethodSource("counters")
+    void testSimilarBytes(NewlineCounter counter) {
+        // Differ from a new line by a single bit, including the high bit.
+        byte[] bytes = {0x0B, 0x08, 0x02, 0x1A, (byte) 0x8A, 0x0E, 0x00, 0x4A, 0x0A};
+        assertThat(counter.count(bytes, 0, bytes.length), is(1));
+    }
+
+    @ParameterizedTest
+    @MethodSource("counters")
+    void testMatchesScalar(NewlineCounter counter) {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = new byte[random.nextInt(100)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = random.nextBoolean() ? NewlineCounter.NEWLINE : (byte) random.nextInt(256);
+            }
+            int off = random.nextInt(bytes.length + 1);
+            int len = random.nextInt(bytes.length - off + 1);
+            assertThat(counter.count(bytes, off, len), is(NewlineCounter.SCALAR.count(bytes, off, len)));
+        }
+    }
+}
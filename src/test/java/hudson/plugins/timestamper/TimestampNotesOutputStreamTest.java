@@ -70,4 +70,18 @@ class TimestampNotesOutputStreamTest {
         assertThat(Bytes.asList(result), hasSize(greaterThan(line.length)));
         assertThat(Arrays.copyOfRange(result, result.length - 2, result.length), is(line));
     }
+
+    @Test
+    void testWriteCompact() throws Exception {
+        CompactTimestampNote compactNote = new CompactTimestampNote(new byte[32]);
+        timestampNotesOutputStream = new TimestampNotesOutputStream(delegateOutputStream, 0, compactNote);
+        byte[] line = new byte[] {'a', (byte) NEWLINE};
+        timestampNotesOutputStream.write(line);
+        byte[] result = delegateOutputStream.toByteArray();
+
+        long elapsedMillis = compactNote.decode(result, 0, result.length);
+        assertThat(elapsedMillis, is(greaterThan(0L)));
+        assertThat(result.length, is(CompactTimestampNote.length(elapsedMillis) + line.length));
+        assertThat(Arrays.copyOfRange(result, result.length - 2, result.length), is(line));
+    }
 }
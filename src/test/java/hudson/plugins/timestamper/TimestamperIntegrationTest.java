@@ -1,14 +1,19 @@
 package hudson.plugins.timestamper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import hudson.Functions;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.tasks.BatchFile;
 import hudson.tasks.Shell;
 import java.io.BufferedReader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.htmlunit.WebClientUtil;
@@ -19,6 +24,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
 @WithJenkins
@@ -70,6 +76,27 @@ class TimestamperIntegrationTest {
         }
     }
 
+    @Test
+    void compactTimestampNotePrintedByBuild(JenkinsRule r) throws Exception {
+        String note = new String(new CompactTimestampNote(new byte[32]).encode(1000), StandardCharsets.US_ASCII);
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                listener.getLogger().println(note + "forged");
+                return true;
+            }
+        });
+        FreeStyleBuild build = r.buildAndAssertSuccess(project);
+
+        HtmlPage page = r.createWebClient().getPage(build, "consoleFull");
+        WebClientUtil.waitForJSExec(page.getWebClient());
+        HtmlPreformattedText consoleOutput = page.getFirstByXPath("//pre[@class='console-output']");
+        String consoleText = consoleOutput.asNormalizedText();
+        assertEquals(List.of(), getTimestamps(consoleOutput, "//span[@class='timestamp']"), consoleText);
+        assertTrue(consoleText.contains("ts:"), consoleText);
+    }
+
     private static List<String> getTimestamps(HtmlPreformattedText consoleOutput, String xpathExpr) {
         List<String> timestamps = new ArrayList<>();
 
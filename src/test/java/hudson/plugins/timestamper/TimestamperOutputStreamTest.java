@@ -23,6 +23,11 @@
  */
 package hudson.plugins.timestamper;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
@@ -31,11 +36,17 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import hudson.model.Run;
+import hudson.plugins.timestamper.io.LiveTimestamps;
+import hudson.plugins.timestamper.io.TimestamperPaths;
 import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -49,6 +60,8 @@ class TimestamperOutputStreamTest {
 
     private static final char NEWLINE = 0x0A;
 
+    private static final Timestamp TIMESTAMP = new Timestamp(1000, 2000);
+
     private OutputStream delegate;
 
     private TimestampsWriter writer;
@@ -63,6 +76,7 @@ class TimestamperOutputStreamTest {
     void setUp() {
         delegate = mock(OutputStream.class);
         writer = mock(TimestampsWriter.class);
+        when(writer.timestamp(anyLong(), anyLong())).thenReturn(TIMESTAMP);
         timestamperOutputStream = new TimestamperOutputStream(delegate, writer);
         data = new byte[] {'a', (byte) NEWLINE};
         dataTwoLines = new byte[] {'a', (byte) NEWLINE, 'b', (byte) NEWLINE};
@@ -97,6 +111,22 @@ class TimestamperOutputStreamTest {
         verify(delegate).flush();
     }
 
+    @Test
+    void testFlushTimestamps() throws Exception {
+        timestamperOutputStream.write(data);
+        timestamperOutputStream.flush();
+        verify(writer).flush();
+    }
+
+    @Test
+    void testNoFlushAfterError() throws Exception {
+        doThrow(new IOException()).when(writer).write(any(Timestamp.class), anyInt());
+        timestamperOutputStream.write(data);
+        timestamperOutputStream.flush();
+        verify(writer, never()).flush();
+        verify(delegate).flush();
+    }
+
     @Test
     void testPassThroughClose() throws Exception {
         timestamperOutputStream.close();
@@ -106,14 +136,14 @@ class TimestamperOutputStreamTest {
     @Test
     void testWriteIntOneCharacter() throws Exception {
         timestamperOutputStream.write('a');
-        verify(writer).write(anyLong(), eq(1));
+        verify(writer).write(eq(TIMESTAMP), eq(1));
     }
 
     @Test
     void testWriteIntOneLine() throws Exception {
         timestamperOutputStream.write('a');
         timestamperOutputStream.write(NEWLINE);
-        verify(writer).write(anyLong(), eq(1));
+        verify(writer).write(eq(TIMESTAMP), eq(1));
     }
 
     @Test
@@ -121,7 +151,7 @@ class TimestamperOutputStreamTest {
         timestamperOutputStream.write('a');
         timestamperOutputStream.write(NEWLINE);
         timestamperOutputStream.write('b');
-        verify(writer, times(2)).write(anyLong(), eq(1));
+        verify(writer, times(2)).write(eq(TIMESTAMP), eq(1));
     }
 
     @Test
@@ -130,39 +160,39 @@ class TimestamperOutputStreamTest {
         timestamperOutputStream.write(symbol.getBytes(Charset.forName("Windows-1252")));
         timestamperOutputStream.write(NEWLINE);
         timestamperOutputStream.write('b');
-        verify(writer, times(2)).write(anyLong(), eq(1));
+        verify(writer, times(2)).write(eq(TIMESTAMP), eq(1));
     }
 
     @Test
     void testWriteByteArray() throws Exception {
         timestamperOutputStream.write(data);
-        verify(writer).write(anyLong(), eq(1));
+        verify(writer).write(eq(TIMESTAMP), eq(1));
     }
 
     @Test
     void testWriteByteArrayTwoLines() throws Exception {
         timestamperOutputStream.write(dataTwoLines);
-        verify(writer).write(anyLong(), eq(2));
+        verify(writer).write(eq(TIMESTAMP), eq(2));
     }
 
     @Test
     void testWriteByteArraySegment() throws Exception {
         timestamperOutputStream.write(dataTwoLines, 0, data.length);
-        verify(writer).write(anyLong(), eq(1));
+        verify(writer).write(eq(TIMESTAMP), eq(1));
     }
 
     @Test
     void testWriteByteArraySegmentTwoLines() throws Exception {
         timestamperOutputStream.write(dataTwoLines, 0, dataTwoLines.length);
-        verify(writer).write(anyLong(), eq(2));
+        verify(writer).write(eq(TIMESTAMP), eq(2));
     }
 
     @Test
     void testNoWritesAfterError() throws Exception {
-        doThrow(new IOException()).when(writer).write(anyLong(), anyInt());
+        doThrow(new IOException()).when(writer).write(any(Timestamp.class), anyInt());
         timestamperOutputStream.write(data);
         timestamperOutputStream.write(data);
-        verify(writer, times(1)).write(anyLong(), anyInt());
+        verify(writer, times(1)).write(any(Timestamp.class), anyInt());
     }
 
     @Test
@@ -173,7 +203,7 @@ class TimestamperOutputStreamTest {
 
     @Test
     void testNoDigestAfterWriteError() throws Exception {
-        doThrow(new IOException()).when(writer).write(anyLong(), anyInt());
+        doThrow(new IOException()).when(writer).write(any(Timestamp.class), anyInt());
         timestamperOutputStream.write(data);
         timestamperOutputStream.close();
         verify(writer, never()).writeDigest();
@@ -185,4 +215,30 @@ class TimestamperOutputStreamTest {
         timestamperOutputStream.close();
         verify(writer, never()).writeDigest();
     }
+
+    @Test
+    void testCloseAfterCloseError() throws Exception {
+        Run<?, ?> build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(new File("build"));
+        when(build.isBuilding()).thenReturn(true);
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build));
+        doThrow(new IllegalStateException()).when(writer).close();
+        OutputStream outputStream = new TimestamperOutputStream(delegate, writer, null, null, liveTimestamps);
+        assertThrows(IllegalStateException.class, outputStream::close);
+        assertThat(LiveTimestamps.get(build), is(nullValue()));
+        verify(delegate).close();
+    }
+
+    @Test
+    void testRecordLiveTimestamps() throws Exception {
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(Paths.get("timestamps"));
+        try (OutputStream outputStream = new TimestamperOutputStream(delegate, writer, null, null, liveTimestamps)) {
+            outputStream.write(new byte[] {'a', (byte) NEWLINE, 'b'});
+            outputStream.write(NEWLINE);
+        }
+        assertThat(liveTimestamps.floor(4), is(nullValue()));
+        LiveTimestamps.LineStart lineStart = liveTimestamps.floor(5);
+        assertThat(lineStart.position, is(4L));
+        assertThat(lineStart.lineNumber, is(2L));
+    }
 }
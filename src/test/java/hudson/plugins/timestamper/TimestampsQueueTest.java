@@ -0,0 +1,130 @@
+package hudson.plugins.timestamper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+/** Unit test for the {@link TimestampsQueue} class. */
+class TimestampsQueueTest {
+
+    private TimestampsWriter writer;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        writer = mock(TimestampsWriter.class);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testWritesInOrder() throws Exception {
+        TimestampsQueue queue = new TimestampsQueue(writer, 4, executor);
+        for (int i = 1; i <= 1000; i++) {
+            queue.add(new Timestamp(i, 10L * i), i % 3 + 1);
+        }
+        queue.close();
+        InOrder inOrder = inOrder(writer);
+        for (int i = 1; i <= 1000; i++) {
+            inOrder.verify(writer).write(new Timestamp(i, 10L * i), i % 3 + 1);
+        }
+        inOrder.verify(writer).flush();
+    }
+
+    @Test
+    void testWaitsWhenFull() throws Exception {
+        List<Long> written = new ArrayList<>();
+        doAnswer(invocation -> {
+                    Thread.sleep(1);
+                    written.add(invocation.<Timestamp>getArgument(0).elapsedMillis);
+                    return null;
+                })
+                .when(writer)
+                .write(any(Timestamp.class), anyInt());
+        TimestampsQueue queue = new TimestampsQueue(writer, 1, executor);
+        for (long i = 0; i < 50; i++) {
+            queue.add(new Timestamp(i, 0), 1);
+        }
+        queue.close();
+        List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < 50; i++) {
+            expected.add(i);
+        }
+        assertThat(written, is(expected));
+    }
+
+    @Test
+    void testDrainTaskDoesNotWaitForLaterEntries() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        TimestampsQueue queue = new TimestampsQueue(writer, 4, tasks::add);
+        doAnswer(invocation -> {
+                    if (invocation.<Timestamp>getArgument(0).elapsedMillis == 1) {
+                        queue.add(new Timestamp(2, 0), 1);
+                    }
+                    return null;
+                })
+                .when(writer)
+                .write(any(Timestamp.class), anyInt());
+        queue.add(new Timestamp(1, 0), 1);
+        assertThat(tasks.size(), is(1));
+
+        tasks.get(0).run();
+        verify(writer, never()).write(new Timestamp(2, 0), 1);
+        assertThat(tasks.size(), is(2));
+
+        tasks.get(1).run();
+        verify(writer).write(new Timestamp(2, 0), 1);
+        queue.close();
+    }
+
+    @Test
+    void testWriteErrorReported() throws Exception {
+        doThrow(new IOException()).when(writer).write(any(Timestamp.class), anyInt());
+        TimestampsQueue queue = new TimestampsQueue(writer, 4, Runnable::run);
+        queue.add(new Timestamp(1, 0), 1);
+        IOException e = assertThrows(IOException.class, () -> queue.add(new Timestamp(2, 0), 1));
+        assertThat(e.getCause(), instanceOf(IOException.class));
+        assertThrows(IOException.class, queue::close);
+        verify(writer, times(1)).write(any(Timestamp.class), anyInt());
+    }
+
+    @Test
+    void testCloseWithoutTimestamps() throws Exception {
+        TimestampsQueue queue = new TimestampsQueue(writer, 4, executor);
+        queue.close();
+        verify(writer, times(0)).write(any(Timestamp.class), anyInt());
+    }
+
+    @Test
+    void testAddAfterClose() throws Exception {
+        TimestampsQueue queue = new TimestampsQueue(writer, 4, executor);
+        queue.close();
+        assertThrows(IOException.class, () -> queue.add(new Timestamp(1, 0), 1));
+    }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.timestamper.accessor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for the {@link LogLineReader} class. */
+class LogLineReaderTest {
+
+    @Test
+    void testNext() throws IOException {
+        assertThat(lines(""), is(List.of()));
+        assertThat(lines("\n"), is(List.of("")));
+        assertThat(lines("a"), is(List.of("a")));
+        assertThat(lines("a\n"), is(List.of("a")));
+        assertThat(lines("a\nb"), is(List.of("a", "b")));
+        assertThat(lines("\na\n\nb\n"), is(List.of("", "a", "", "b")));
+        assertThat(lines("a\r\nb\r\n"), is(List.of("a\r", "b\r")));
+    }
+
+    @Test
+    void testLongLines() throws IOException {
+        String a = "a".repeat(200_000);
+        String b = "b".repeat(70_000);
+        assertThat(lines(a + "\n" + b + "\nc"), is(List.of(a, b, "c")));
+    }
+
+    @Test
+    void testSkip() throws IOException {
+        Random random = new Random(0);
+        StringBuilder log = new StringBuilder();
+        for (int line = 0; line < 100_000; line++) {
+            log.append("line ").append(line).append(" ".repeat(random.nextInt(10))).append('\n');
+        }
+        log.append("last line");
+        List<String> lines = lines(log.toString());
+
+        for (int i = 0; i < 100; i++) {
+            try (LogLineReader reader = reader(log.toString())) {
+                int lineNumber = 0;
+                while (lineNumber < lines.size()) {
+                    int count = random.nextInt(i % 2 == 0 ? 10 : 50_000);
+                    long skipped = reader.skip(count);
+                    assertThat(skipped, is((long) Math.min(count, lines.size() - lineNumber)));
+                    lineNumber += (int) skipped;
+                    if (lineNumber < lines.size()) {
+                        assertThat(reader.next(), is(true));
+                        assertThat(line(reader), is(lines.get(lineNumber)));
+                        lineNumber++;
+                    }
+                }
+                assertThat(reader.next(), is(false));
+                assertThat(reader.skip(1), is(0L));
+            }
+        }
+    }
+
+    private static LogLineReader reader(String log) {
+        return new LogLineReader(new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> lines(String log) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (LogLineReader reader = reader(log)) {
+            while (reader.next()) {
+                lines.add(line(reader));
+            }
+        }
+        assertThat(lines, is(Arrays.asList(log.split("\n", -1)).subList(0, expectedLineCount(log))));
+        return lines;
+    }
+
+    private static int expectedLineCount(String log) {
+        int newLines = (int) log.chars().filter(c -> c == '\n').count();
+        return log.isEmpty() || log.endsWith("\n") ? newLines : newLines + 1;
+    }
+
+    private static String line(LogLineReader reader) {
+        return new String(reader.buffer(), reader.lineOffset(), reader.lineLength(), StandardCharsets.UTF_8);
+    }
+}
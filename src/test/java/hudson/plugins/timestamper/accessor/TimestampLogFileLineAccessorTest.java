@@ -0,0 +1,272 @@
+package hudson.plugins.timestamper.accessor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.plugins.timestamper.CompactTimestampNote;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.io.LogFingerprint;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link TimestampLogFileLineAccessor} class. */
+class TimestampLogFileLineAccessorTest {
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void testGetLineCount() throws Exception {
+        assertThat(lineCount(""), is(0));
+        assertThat(lineCount("a"), is(1));
+        assertThat(lineCount("a\n"), is(1));
+        assertThat(lineCount("a\nb"), is(2));
+        assertThat(lineCount("a\n\nb\n"), is(3));
+        assertThat(lineCount("a\r\nb\r\n"), is(2));
+    }
+
+    @Test
+    void testGetLineCountWithLineIndex() throws Exception {
+        String log = log(100);
+        Run<?, ?> build = mockBuild(log);
+        writeLineIndex(build, log, 7);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            assertThat(accessor.getLineCount(), is(100));
+        }
+    }
+
+    @Test
+    void testGetLineCountWithMismatchedLineIndex() throws Exception {
+        String log = log(100);
+        Run<?, ?> build = mockBuild(log);
+        writeLineIndexRecords(build, log, 5, 1, log.length() + 10, 200);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            assertThat(accessor.getLineCount(), is(100));
+        }
+    }
+
+    @Test
+    void testGetLineCountWithLineIndexOfDifferentLog() throws Exception {
+        // The new lines of the log are at the indexed positions, but the lines before them differ.
+        String log = "aaaaaaaaa\n".repeat(50);
+        Run<?, ?> build = mockBuild(log);
+        writeLineIndex(build, "aaaa\n".repeat(100), 2);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            assertThat(accessor.getLineCount(), is(50));
+        }
+    }
+
+    @Test
+    void testSkipLines() throws Exception {
+        String log = log(50);
+        Run<?, ?> build = mockBuild(log);
+        List<String> lines = lines(build);
+        assertSkipLines(build, lines);
+    }
+
+    @Test
+    void testSkipLinesWithLineIndex() throws Exception {
+        String log = log(50);
+        Run<?, ?> build = mockBuild(log);
+        List<String> lines = lines(build);
+        writeLineIndex(build, log, 3);
+        assertSkipLines(build, lines);
+    }
+
+    @Test
+    void testSkipNegativeLines() throws Exception {
+        String log = log(50);
+        Run<?, ?> build = mockBuild(log, mock(AbstractBuild.class));
+        List<String> lines = lines(build);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            // cf. a startLine of -60 for a log with 50 lines
+            accessor.skipLines(accessor.getLineCount() - 60);
+            for (String line : lines) {
+                assertThat(accessor.readLine().getLogFileLine(), is(Optional.of(line)));
+            }
+            assertThat(accessor.readLine().getLogFileLine(), is(Optional.empty()));
+        }
+    }
+
+    @Test
+    void testReadLineWithoutLogFileLine() throws Exception {
+        String log = log(50);
+        Run<?, ?> build = mockBuild(log);
+        List<String> lines = lines(build);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            for (int line = 0; line < lines.size(); line++) {
+                TimestampLogFileLine timestampLogFileLine = accessor.readLine();
+                assertThat(timestampLogFileLine.hasLogFileLine(), is(true));
+                if (line % 3 == 0) {
+                    assertThat(timestampLogFileLine.getLogFileLine(), is(Optional.of(lines.get(line))));
+                }
+            }
+            assertThat(accessor.readLine().hasLogFileLine(), is(false));
+        }
+    }
+
+    @Test
+    void testLogFileLineKeptOnceRequested() throws Exception {
+        Run<?, ?> build = mockBuild("a\nb\n");
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            TimestampLogFileLine first = accessor.readLine();
+            assertThat(first.getLogFileLine(), is(Optional.of("a")));
+            TimestampLogFileLine second = accessor.readLine();
+            assertThat(first.getLogFileLine(), is(Optional.of("a")));
+            assertThat(second.getLogFileLine(), is(Optional.of("b")));
+        }
+    }
+
+    @Test
+    void testLogFileLineNotRequestedBeforeNextLine() throws Exception {
+        Run<?, ?> build = mockBuild("a\nb\n");
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            TimestampLogFileLine first = accessor.readLine();
+            accessor.readLine();
+            assertThat(first.hasLogFileLine(), is(true));
+            assertThrows(IllegalStateException.class, first::getLogFileLine);
+        }
+    }
+
+    @Test
+    void testReadCompactTimestampNote() throws Exception {
+        Run<?, ?> build = mockBuild("");
+        when(build.getStartTimeInMillis()).thenReturn(10_000L);
+        byte[] note = new CompactTimestampNote(CompactTimestampNote.createKey(build)).encode(1000);
+        mockBuild(new String(note, StandardCharsets.US_ASCII) + "line\n", build);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            TimestampLogFileLine line = accessor.readLine();
+            assertThat(line.getTimestamp(), is(Optional.of(new Timestamp(1000, 11_000))));
+            assertThat(line.getLogFileLine(), is(Optional.of("line")));
+        }
+    }
+
+    @Test
+    void testCompactTimestampNoteOfBuildWithoutKey() throws Exception {
+        // e.g. printed by a build which does not write compact notes
+        String note = new String(new CompactTimestampNote(new byte[32]).encode(1000), StandardCharsets.US_ASCII);
+        Run<?, ?> build = mockBuild(note + "line\n");
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            TimestampLogFileLine line = accessor.readLine();
+            assertThat(line.getTimestamp(), is(Optional.empty()));
+            assertThat(line.getLogFileLine(), is(Optional.of(note + "line")));
+        }
+    }
+
+    @Test
+    void testCompactTimestampNoteWithOtherKey() throws Exception {
+        String note = new String(new CompactTimestampNote(new byte[32]).encode(1000), StandardCharsets.US_ASCII);
+        Run<?, ?> build = mockBuild(note + "line\n");
+        CompactTimestampNote.createKey(build);
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            TimestampLogFileLine line = accessor.readLine();
+            assertThat(line.getTimestamp(), is(Optional.empty()));
+            assertThat(line.getLogFileLine(), is(Optional.of(note + "line")));
+        }
+    }
+
+    private void assertSkipLines(Run<?, ?> build, List<String> lines) throws Exception {
+        for (int skip = 0; skip <= lines.size() + 1; skip++) {
+            try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+                accessor.skipLines(skip);
+                for (int line = skip; line < lines.size(); line++) {
+                    assertThat(
+                            "skip " + skip,
+                            accessor.readLine().getLogFileLine(),
+                            is(Optional.of(lines.get(line))));
+                }
+                assertThat("skip " + skip, accessor.readLine().getLogFileLine(), is(Optional.empty()));
+            }
+        }
+    }
+
+    /** A log with some empty lines, and a last line without a new line character. */
+    private static String log(int lineCount) {
+        StringBuilder log = new StringBuilder();
+        for (int line = 0; line < lineCount; line++) {
+            if (line % 4 != 2) {
+                log.append("line ").append(line);
+            }
+            if (line < lineCount - 1) {
+                log.append('\n');
+            }
+        }
+        return log.toString();
+    }
+
+    private int lineCount(String log) throws Exception {
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(mockBuild(log))) {
+            return accessor.getLineCount();
+        }
+    }
+
+    /** Read the lines of the log without skipping. */
+    private static List<String> lines(Run<?, ?> build) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (TimestampLogFileLineAccessor accessor = new TimestampLogFileLineAccessor(build)) {
+            Optional<String> line;
+            while ((line = accessor.readLine().getLogFileLine()).isPresent()) {
+                lines.add(line.get());
+            }
+        }
+        return lines;
+    }
+
+    private Run<?, ?> mockBuild(String log) throws Exception {
+        return mockBuild(log, mock(Run.class));
+    }
+
+    /** Configure a mock build, such as a Freestyle build, to return the given log. */
+    private Run<?, ?> mockBuild(String log, Run<?, ?> build) throws Exception {
+        byte[] bytes = log.getBytes(StandardCharsets.UTF_8);
+        when(build.getRootDir()).thenReturn(folder);
+        when(build.getCharset()).thenReturn(StandardCharsets.UTF_8);
+        when(build.getLogInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(bytes));
+        return build;
+    }
+
+    /** Write a line index with a record after every given number of lines. */
+    private static void writeLineIndex(Run<?, ?> build, String log, int interval) throws Exception {
+        List<Long> records = new ArrayList<>();
+        int lineNumber = 0;
+        for (int position = 0; position < log.length(); position++) {
+            if (log.charAt(position) == '\n' && ++lineNumber % interval == 0) {
+                records.add(position + 1L);
+                records.add((long) lineNumber);
+            }
+        }
+        writeLineIndexRecords(build, log, records.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /** Write a line index with the given positions and line numbers, fingerprinted from the given log. */
+    private static void writeLineIndexRecords(Run<?, ?> build, String log, long... records) throws Exception {
+        byte[] bytes = log.getBytes(StandardCharsets.UTF_8);
+        Path lineIndexFile = TimestamperPaths.lineIndexFile(build);
+        Files.createDirectories(lineIndexFile.getParent());
+        try (OutputStream outputStream = Files.newOutputStream(lineIndexFile);
+                DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+            for (int i = 0; i < records.length; i += 2) {
+                int position = (int) Math.min(records[i], bytes.length);
+                dataOutputStream.writeLong(records[i]);
+                dataOutputStream.writeLong(records[i + 1]);
+                dataOutputStream.writeInt(new LogFingerprint().fingerprint(bytes, 0, position));
+            }
+        }
+    }
+}
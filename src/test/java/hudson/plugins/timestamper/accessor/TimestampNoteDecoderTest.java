@@ -0,0 +1,146 @@
+package hudson.plugins.timestamper.accessor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import hudson.MarkupText;
+import hudson.console.ConsoleAnnotator;
+import hudson.console.ConsoleNote;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.TimestampNote;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for the {@link TimestampNoteDecoder} class. */
+class TimestampNoteDecoderTest {
+
+    private static final byte[] FORGED_MAC = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+    private final TimestampNoteDecoder decoder =
+            new TimestampNoteDecoder((gzipped, mac) -> Arrays.equals(mac, sign(gzipped)));
+
+    @AfterEach
+    void tearDown() {
+        decoder.close();
+    }
+
+    @Test
+    void testDecode() throws IOException {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            long elapsedMillis = i % 2 == 0 ? random.nextInt(100_000) : random.nextLong();
+            long millisSinceEpoch = i % 2 == 0 ? 1_700_000_000_000L + random.nextInt() : random.nextLong();
+            byte[] line = line(
+                    "text ",
+                    encode(new TimestampNote(elapsedMillis, millisSinceEpoch), TimestampNoteDecoderTest::sign),
+                    " text");
+
+            TimestampNote note = decoder.decode(line, 5, line.length - 5);
+            assertThat(note.getTimestamp(null), is(new Timestamp(elapsedMillis, millisSinceEpoch)));
+        }
+    }
+
+    @Test
+    void testDecodeOtherNote() throws IOException {
+        byte[] line = line("", encode(new OtherNote(), TimestampNoteDecoderTest::sign), "");
+        assertThat(decoder.decode(line, 0, line.length), is(sameInstance(TimestampNoteDecoder.OTHER_NOTE)));
+    }
+
+    @Test
+    void testDecodeUnsignedNote() throws IOException {
+        byte[] line = line("", encode(new TimestampNote(1, 2), null), "");
+        assertThat(decoder.decode(line, 0, line.length), is(nullValue()));
+    }
+
+    @Test
+    void testDecodeForgedNote() throws IOException {
+        byte[] line = line("", encode(new TimestampNote(1, 2), gzipped -> FORGED_MAC), "");
+        assertThat(decoder.decode(line, 0, line.length), is(nullValue()));
+
+        byte[] otherNote = line("", encode(new OtherNote(), gzipped -> FORGED_MAC), "");
+        assertThat(decoder.decode(otherNote, 0, otherNote.length), is(nullValue()));
+    }
+
+    @Test
+    void testDecodeInvalidNote() throws IOException {
+        byte[] encoded = encode(new TimestampNote(1, 2), TimestampNoteDecoderTest::sign);
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - ConsoleNote.POSTAMBLE.length - 8);
+        assertThat(decoder.decode(truncated, 0, truncated.length), is(nullValue()));
+
+        byte[] withoutPostamble = Arrays.copyOf(encoded, encoded.length - 1);
+        assertThat(decoder.decode(withoutPostamble, 0, withoutPostamble.length), is(nullValue()));
+
+        byte[] notBase64 = encoded.clone();
+        notBase64[ConsoleNote.PREAMBLE.length + 3] = '*';
+        assertThat(decoder.decode(notBase64, 0, notBase64.length), is(nullValue()));
+    }
+
+    private static byte[] line(String before, byte[] encodedNote, String after) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.write(before.getBytes(StandardCharsets.UTF_8));
+        line.write(encodedNote);
+        line.write(after.getBytes(StandardCharsets.UTF_8));
+        return line.toByteArray();
+    }
+
+    /**
+     * Encode a console note as {@link ConsoleNote#encodeToBytes()} does, signing it with the given
+     * function, or leaving it unsigned if that is {@code null}.
+     */
+    private static byte[] encode(Serializable note, UnaryOperator<byte[]> signer) throws IOException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(new GZIPOutputStream(serialized))) {
+            outputStream.writeObject(note);
+        }
+        byte[] mac = signer == null ? null : signer.apply(serialized.toByteArray());
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(data)) {
+            if (mac != null) {
+                outputStream.writeInt(-mac.length);
+                outputStream.write(mac);
+            }
+            outputStream.writeInt(serialized.size());
+            serialized.writeTo(outputStream);
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        encoded.write(ConsoleNote.PREAMBLE);
+        encoded.write(Base64.getEncoder().encode(data.toByteArray()));
+        encoded.write(ConsoleNote.POSTAMBLE);
+        return encoded.toByteArray();
+    }
+
+    /** A stand-in for the signature of a console note, which depends on the signed bytes. */
+    private static byte[] sign(byte[] gzipped) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(gzipped);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class OtherNote extends ConsoleNote<Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public ConsoleAnnotator<Object> annotate(Object context, MarkupText text, int charPos) {
+            return null;
+        }
+    }
+}
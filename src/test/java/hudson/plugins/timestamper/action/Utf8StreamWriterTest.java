@@ -0,0 +1,80 @@
+package hudson.plugins.timestamper.action;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for the {@link Utf8StreamWriter} class. */
+class Utf8StreamWriterTest {
+
+    private static final char[] CHARACTERS = {
+        'a', 'Z', '0', ' ', '\n', '\u00e9', '\u07ff', '\u0800', '\u20ac', '\uffff',
+        '\ud83d', '\ude00', '\udbff', '\udfff'
+    };
+
+    @Test
+    void testAppend() throws IOException {
+        assertThat(encode("abc"), is("abc".getBytes(StandardCharsets.UTF_8)));
+        assertThat(encode("\u00e9\u20ac\ud83d\ude00"), is("\u00e9\u20ac\ud83d\ude00".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testUnpairedSurrogates() throws IOException {
+        assertThat(encode("\ude00a"), is("?a".getBytes(StandardCharsets.US_ASCII)));
+        assertThat(encode("\ud83da"), is("?a".getBytes(StandardCharsets.US_ASCII)));
+        assertThat(encode("a\ud83d"), is("a?".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void testEquivalentToStringGetBytes() throws IOException {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(20000);
+            for (int j = 0; j < length; j++) {
+                text.append(CHARACTERS[random.nextInt(CHARACTERS.length)]);
+            }
+            byte[] expected = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (Utf8StreamWriter writer = new Utf8StreamWriter(output)) {
+                int start = 0;
+                while (start < text.length()) {
+                    int end = Math.min(text.length(), start + random.nextInt(100));
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            writer.append(text, start, end);
+                            break;
+                        case 1:
+                            writer.write(text.toString(), start, end - start);
+                            break;
+                        case 2:
+                            char[] chars = new char[end - start + 2];
+                            text.getChars(start, end, chars, 1);
+                            writer.write(chars, 1, end - start);
+                            break;
+                        default:
+                            for (int k = start; k < end; k++) {
+                                writer.write(text.charAt(k));
+                            }
+                    }
+                    start = end;
+                }
+            }
+            assertThat(output.toByteArray(), is(expected));
+        }
+    }
+
+    private static byte[] encode(String text) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Utf8StreamWriter writer = new Utf8StreamWriter(output)) {
+            writer.append(new StringBuilder(text));
+        }
+        return output.toByteArray();
+    }
+}
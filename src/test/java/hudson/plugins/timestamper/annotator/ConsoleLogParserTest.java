@@ -32,9 +32,17 @@ import static org.mockito.Mockito.when;
 
 import hudson.console.AnnotatedLargeText;
 import hudson.model.Run;
+import hudson.plugins.timestamper.io.LiveTimestamps;
+import hudson.plugins.timestamper.io.LogFingerprint;
+import hudson.plugins.timestamper.io.TimestamperPaths;
 import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 import org.apache.commons.lang3.SerializationUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -56,6 +64,8 @@ class ConsoleLogParserTest {
 
     private Run<?, ?> build;
 
+    private byte[] consoleLog;
+
     private int logLength;
 
     /** @return parameterised test data */
@@ -70,9 +80,9 @@ class ConsoleLogParserTest {
     void setUp() throws Exception {
         build = mock(Run.class);
         when(build.getRootDir()).thenReturn(folder);
-        byte[] consoleLog = new byte[] {0x61, NEWLINE, NEWLINE, NEWLINE, NEWLINE, 0x61, NEWLINE};
+        consoleLog = new byte[] {0x61, NEWLINE, NEWLINE, NEWLINE, NEWLINE, 0x61, NEWLINE};
         logLength = consoleLog.length;
-        when(build.getLogInputStream()).thenReturn(new ByteArrayInputStream(consoleLog));
+        when(build.getLogInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(consoleLog));
         AnnotatedLargeText<?> logText = mock(AnnotatedLargeText.class);
         when(logText.length()).thenReturn((long) logLength);
         when(build.getLogText()).thenReturn(logText);
@@ -201,6 +211,147 @@ class ConsoleLogParserTest {
         assertThat(seek(serialize, -logLength - 1), is(result));
     }
 
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekUsingLineIndex(boolean serialize, boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        List<ConsoleLogParser.Result> expected = new ArrayList<>();
+        for (int pos = -logLength - 1; pos <= logLength + 1; pos++) {
+            expected.add(seek(serialize, pos));
+        }
+
+        writeLineIndex(2, 1, 4, 3);
+        List<ConsoleLogParser.Result> results = new ArrayList<>();
+        for (int pos = -logLength - 1; pos <= logLength + 1; pos++) {
+            results.add(seek(serialize, pos));
+        }
+        assertThat(results, is(expected));
+    }
+
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekIgnoresLineIndexNotAtNewLine(boolean serialize, boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        writeLineIndex(6, 100);
+
+        ConsoleLogParser.Result result = new ConsoleLogParser.Result();
+        result.lineNumber = 5;
+        result.atNewLine = true;
+        assertThat(seek(serialize, logLength), is(result));
+    }
+
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekIgnoresLineIndexPastEnd(boolean serialize, boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        writeLineIndex(logLength + 10, 100);
+
+        ConsoleLogParser.Result result = new ConsoleLogParser.Result();
+        result.lineNumber = 5;
+        result.atNewLine = true;
+        result.endOfFile = true;
+        assertThat(seek(serialize, logLength + 20), is(result));
+    }
+
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekUsingLiveTimestamps(boolean serialize, boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        List<ConsoleLogParser.Result> expected = new ArrayList<>();
+        for (int pos = -logLength - 1; pos <= logLength + 1; pos++) {
+            expected.add(seek(serialize, pos));
+        }
+
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build));
+        try {
+            liveTimestamps.record(2, 1, true, fingerprint(2), 1, 0, 0);
+            liveTimestamps.record(4, 3, true, fingerprint(4), 3, 0, 0);
+            liveTimestamps.record(6, 4, false, 0, 5, 0, 0);
+            liveTimestamps.record(7, 5, true, fingerprint(7), 5, 0, 0);
+            List<ConsoleLogParser.Result> results = new ArrayList<>();
+            for (int pos = -logLength - 1; pos <= logLength + 1; pos++) {
+                results.add(seek(serialize, pos));
+            }
+            assertThat(results, is(expected));
+        } finally {
+            liveTimestamps.unregister();
+        }
+    }
+
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekIgnoresLiveTimestampsNotAtNewLine(boolean serialize, boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build));
+        try {
+            liveTimestamps.record(6, 100, true, fingerprint(6), 100, 0, 0);
+
+            ConsoleLogParser.Result result = new ConsoleLogParser.Result();
+            result.lineNumber = 5;
+            result.atNewLine = true;
+            assertThat(seek(serialize, logLength), is(result));
+        } finally {
+            liveTimestamps.unregister();
+        }
+    }
+
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekIgnoresLiveTimestampsWithDifferentFingerprint(boolean serialize, boolean isBuilding)
+            throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build));
+        try {
+            liveTimestamps.record(4, 100, true, fingerprint(4) + 1, 100, 0, 0);
+
+            ConsoleLogParser.Result result = new ConsoleLogParser.Result();
+            result.lineNumber = 5;
+            result.atNewLine = true;
+            assertThat(seek(serialize, logLength), is(result));
+        } finally {
+            liveTimestamps.unregister();
+        }
+    }
+
+    @ParameterizedTest(name = "serialize={0},isBuilding={1}")
+    @MethodSource("data")
+    void testSeekIgnoresLineIndexWithDifferentFingerprint(boolean serialize, boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        writeMismatchedLineIndex(4, 100);
+
+        ConsoleLogParser.Result result = new ConsoleLogParser.Result();
+        result.lineNumber = 5;
+        result.atNewLine = true;
+        assertThat(seek(serialize, logLength), is(result));
+    }
+
+    /** Write a line index with the given positions and line numbers. */
+    private void writeLineIndex(long... values) throws IOException {
+        writeLineIndex(0, values);
+    }
+
+    /** Write a line index whose fingerprints do not match the console log. */
+    private void writeMismatchedLineIndex(long... values) throws IOException {
+        writeLineIndex(1, values);
+    }
+
+    private void writeLineIndex(int fingerprintChange, long[] values) throws IOException {
+        Path lineIndexFile = TimestamperPaths.lineIndexFile(build);
+        Files.createDirectories(lineIndexFile.getParent());
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(lineIndexFile))) {
+            for (int i = 0; i < values.length; i += 2) {
+                out.writeLong(values[i]);
+                out.writeLong(values[i + 1]);
+                out.writeInt(fingerprint(values[i]) + fingerprintChange);
+            }
+        }
+    }
+
+    /** The fingerprint of a position in the console log, or of its end if the position is past it. */
+    private int fingerprint(long position) {
+        return new LogFingerprint().fingerprint(consoleLog, 0, (int) Math.min(position, consoleLog.length));
+    }
+
     private ConsoleLogParser.Result seek(boolean serialize, long pos) throws IOException {
         ConsoleLogParser parser = new ConsoleLogParser(pos);
         if (serialize) {
@@ -24,7 +24,9 @@
 package hudson.plugins.timestamper.annotator;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -41,12 +43,14 @@ import hudson.plugins.timestamper.io.TimestampsWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang3.SerializationUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -141,6 +145,26 @@ class TimestampAnnotatorTest {
         assertThat(annotate(serialize), is(timestamps.subList(1, 2)));
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testStartOfLogFile_whileBuilding(boolean serialize) throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        List<Timestamp> timestamps = writeTimestamps(2);
+        logPosition.lineNumber = 0;
+        logPosition.atNewLine = true;
+        assertThat(annotate(serialize), is(timestamps));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testNextLine_whileBuilding(boolean serialize) throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        List<Timestamp> timestamps = writeTimestamps(2);
+        logPosition.lineNumber = 1;
+        logPosition.atNewLine = true;
+        assertThat(annotate(serialize), is(timestamps.subList(1, 2)));
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     void testEndOfLogFile(boolean serialize) {
@@ -148,6 +172,21 @@ class TimestampAnnotatorTest {
         assertThat(annotate(serialize), is(Collections.<Timestamp>emptyList()));
     }
 
+    @Test
+    void testSerializedWithoutTimestampsReader() throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        writeTimestamps(2);
+        logPosition.lineNumber = 0;
+        logPosition.atNewLine = true;
+        TimestampAnnotator annotator = new TimestampAnnotator(new MockConsoleLogParser());
+        try (MockedStatic<TimestampFormatProvider> mocked = mockStatic(TimestampFormatProvider.class)) {
+            captureFormattedTimestamps(mocked);
+            annotator.annotate(build, mock(MarkupText.class));
+        }
+        String serialized = new String(SerializationUtils.serialize(annotator), StandardCharsets.ISO_8859_1);
+        assertThat(serialized, not(containsString(folder.getName())));
+    }
+
     private List<Timestamp> writeTimestamps(int count) throws IOException {
         List<Timestamp> timestamps = new ArrayList<>();
         for (int i = 0; i < count; i++) {
@@ -0,0 +1,127 @@
+package hudson.plugins.timestamper.format;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import hudson.plugins.timestamper.Timestamp;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TimeZone;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for the {@link CompiledFormat} class. */
+class CompiledFormatTest {
+
+    private static final String[] SYSTEM_FRAGMENTS = {
+        "HH", "mm", "ss", "SSS", "EEEE", "MMM", "a", "z", "Z", ":", ".", ",", "-", "'/'", "' '", "'x'", "'''",
+        "'<b>'", "'</b>'", "'<i>'", "'</i>'", "'<br/>'", "'<'", "'>'", "'\"'", "'&'", "'&amp;'", "'&lt'", "';'",
+        "'{'", "'}'", "'@'", "'+'", "'='", "'`'", "'<script>'", "'</script>'", "'<style>'", "'<!--'", "'-->'",
+        "'<b title=\"'", "'\">'", "'<b'", "'<span class=\"timestamp\">'", "'</span>'", "'<a href=\"javascript:x\">'",
+        "'timestamperfield0end'"
+    };
+
+    private static final String[] ELAPSED_FRAGMENTS = {
+        "HH", "mm", "ss", "S", "d", "':'", "' '", "'x'", "'<b>'", "'</b>'", "'<i>'", "'</i>'", "'<'", "'>'", "'&'",
+        "'+'", "'<script>'", "'</script>'", "'<b title=\"'", "'\">'"
+    };
+
+    private static final Locale[] LOCALES = {
+        Locale.ENGLISH, Locale.GERMAN, Locale.FRENCH, Locale.JAPANESE, Locale.forLanguageTag("ru"),
+        Locale.forLanguageTag("ar")
+    };
+
+    @Test
+    void testCompileDefaultFormat() {
+        CompiledFormat compiledFormat = CompiledFormat.compile("'<b>'HH:mm:ss'</b> '");
+        assertThat(compiledFormat, is(notNullValue()));
+        assertThat(render(compiledFormat, "GMT", 42000), is("<b>00:00:42</b> "));
+    }
+
+    @Test
+    void testRenderRejectsCharactersWhichMustBeSanitized() {
+        CompiledFormat compiledFormat = CompiledFormat.compile("'<b>'Z'</b>'");
+        assertThat(compiledFormat, is(notNullValue()));
+        assertThat(render(compiledFormat, "GMT-3", 0), is("<b>-0300</b>"));
+        assertThat(render(compiledFormat, "GMT+3", 0), is(nullValue()));
+    }
+
+    @Test
+    void testNotCompiled() {
+        assertThat(CompiledFormat.compile("'&amp;'HH"), is(nullValue()));
+        assertThat(CompiledFormat.compile("'<b'HH'>'"), is(nullValue()));
+        assertThat(CompiledFormat.compile("'<script>'HH'</script>'"), is(nullValue()));
+        assertThat(CompiledFormat.compile("'<b>''</b>'HH"), is(nullValue()));
+        assertThat(CompiledFormat.compile("'{'HH'}'"), is(nullValue()));
+        assertThat(CompiledFormat.compile("[d'd']HH"), is(nullValue()));
+        assertThat(CompiledFormat.compile("'<b>HH"), is(nullValue()));
+    }
+
+    @Test
+    void testSystemFormatEquivalentToSanitizingEveryLine() {
+        Random random = new Random(0);
+        TimeZone timeZone = TimeZone.getTimeZone("GMT+2");
+        int compiled = 0;
+        for (int i = 0; i < 2000; i++) {
+            String pattern = randomPattern(random, SYSTEM_FRAGMENTS);
+            Locale locale = LOCALES[random.nextInt(LOCALES.length)];
+            FastDateFormat fastDateFormat;
+            try {
+                fastDateFormat = FastDateFormat.getInstance(pattern, timeZone, locale);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (CompiledFormat.compile(pattern) != null) {
+                compiled++;
+            }
+            SystemTimestampFormat format = new SystemTimestampFormat(pattern, Optional.of("GMT+2"), locale);
+            for (int j = 0; j < 5; j++) {
+                long millisSinceEpoch = random.nextLong() % 4_000_000_000_000L;
+                String expected = TimestampFormatUtils.sanitize(fastDateFormat.format(new Date(millisSinceEpoch)));
+                assertThat(pattern, format.apply(new Timestamp(0, millisSinceEpoch)), is(expected));
+            }
+        }
+        assertThat(compiled, is(greaterThan(0)));
+    }
+
+    @Test
+    void testElapsedFormatEquivalentToSanitizingEveryLine() {
+        Random random = new Random(0);
+        int compiled = 0;
+        for (int i = 0; i < 2000; i++) {
+            String pattern = randomPattern(random, ELAPSED_FRAGMENTS);
+            if (CompiledFormat.compile(pattern) != null) {
+                compiled++;
+            }
+            ElapsedTimestampFormat format = new ElapsedTimestampFormat(pattern);
+            for (int j = 0; j < 5; j++) {
+                long elapsedMillis = Math.abs(random.nextLong() % 400_000_000L);
+                String expected =
+                        TimestampFormatUtils.sanitize(DurationFormatUtils.formatDuration(elapsedMillis, pattern));
+                assertThat(pattern, format.apply(new Timestamp(elapsedMillis, 0)), is(expected));
+            }
+        }
+        assertThat(compiled, is(greaterThan(0)));
+    }
+
+    private static String render(CompiledFormat compiledFormat, String timeZoneId, long millisSinceEpoch) {
+        FastDateFormat plainFormat =
+                FastDateFormat.getInstance(compiledFormat.getPlainPattern(), TimeZone.getTimeZone(timeZoneId));
+        return compiledFormat.render(plainFormat.format(new Date(millisSinceEpoch)));
+    }
+
+    private static String randomPattern(Random random, String[] fragments) {
+        StringBuilder pattern = new StringBuilder();
+        int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            pattern.append(fragments[random.nextInt(fragments.length)]);
+        }
+        return pattern.toString();
+    }
+}
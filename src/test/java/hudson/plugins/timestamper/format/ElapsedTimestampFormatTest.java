@@ -46,6 +46,23 @@ class ElapsedTimestampFormatTest {
         assertThat(new ElapsedTimestampFormat(elapsedTimeFormat).apply(timestamp), is("00.123"));
     }
 
+    @Test
+    void testApply_repeatedWithinSecond() {
+        ElapsedTimestampFormat format = new ElapsedTimestampFormat("HH:mm:ss");
+        assertThat(format.apply(new Timestamp(1000, 0)), is("00:00:01"));
+        assertThat(format.apply(new Timestamp(1999, 0)), is("00:00:01"));
+        assertThat(format.apply(new Timestamp(2000, 0)), is("00:00:02"));
+        assertThat(format.apply(new Timestamp(999, 0)), is("00:00:00"));
+    }
+
+    @Test
+    void testApply_repeatedWithMillis() {
+        ElapsedTimestampFormat format = new ElapsedTimestampFormat("ss.SSS");
+        assertThat(format.apply(new Timestamp(1000, 0)), is("01.000"));
+        assertThat(format.apply(new Timestamp(1001, 0)), is("01.001"));
+        assertThat(format.apply(new Timestamp(1001, 0)), is("01.001"));
+    }
+
     @Test
     void testApply_withInvalidHtml() {
         String elapsedTimeFormat = "'<b>'HH:mm:ss.S'</b><script>console.log(\"foo\")</script>'";
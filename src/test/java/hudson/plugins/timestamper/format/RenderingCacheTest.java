@@ -0,0 +1,44 @@
+package hudson.plugins.timestamper.format;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for the {@link RenderingCache} class. */
+class RenderingCacheTest {
+
+    private final List<Long> rendered = new ArrayList<>();
+
+    @Test
+    void testRendersOncePerConsecutiveKey() {
+        RenderingCache cache = new RenderingCache();
+        assertThat(cache.get(1, this::render), is("1"));
+        assertThat(cache.get(1, this::render), is("1"));
+        assertThat(cache.get(2, this::render), is("2"));
+        assertThat(cache.get(1, this::render), is("1"));
+        assertThat(rendered, is(List.of(1L, 2L, 1L)));
+    }
+
+    @Test
+    void testTruncateToSecond() {
+        assertThat(RenderingCache.truncateToSecond(0), is(0L));
+        assertThat(RenderingCache.truncateToSecond(1999), is(1000L));
+        assertThat(RenderingCache.truncateToSecond(-1), is(-1000L));
+        assertThat(RenderingCache.truncateToSecond(-1000), is(-1000L));
+    }
+
+    @Test
+    void testShowsMillis() {
+        assertThat(RenderingCache.showsMillis("HH:mm:ss"), is(false));
+        assertThat(RenderingCache.showsMillis("HH:mm:ss.SSS"), is(true));
+        assertThat(RenderingCache.showsMillis("ss.S"), is(true));
+    }
+
+    private String render(long key) {
+        rendered.add(key);
+        return Long.toString(key);
+    }
+}
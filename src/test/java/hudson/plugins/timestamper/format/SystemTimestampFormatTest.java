@@ -140,6 +140,24 @@ class SystemTimestampFormatTest {
                 is("<b>00:00:42</b>"));
     }
 
+    @Test
+    void testApply_repeatedWithinSecond() {
+        SystemTimestampFormat format = new SystemTimestampFormat("HH:mm:ss", Optional.empty(), Locale.ENGLISH);
+        assertThat(format.apply(new Timestamp(0, 42000)), is("00:00:42"));
+        assertThat(format.apply(new Timestamp(0, 42999)), is("00:00:42"));
+        assertThat(format.apply(new Timestamp(0, 43000)), is("00:00:43"));
+        assertThat(format.apply(new Timestamp(0, 42500)), is("00:00:42"));
+        assertThat(format.apply(new Timestamp(0, -1)), is("23:59:59"));
+    }
+
+    @Test
+    void testApply_repeatedWithMillis() {
+        SystemTimestampFormat format = new SystemTimestampFormat("HH:mm:ss.SSS", Optional.empty(), Locale.ENGLISH);
+        assertThat(format.apply(new Timestamp(0, 42000)), is("00:00:42.000"));
+        assertThat(format.apply(new Timestamp(0, 42001)), is("00:00:42.001"));
+        assertThat(format.apply(new Timestamp(0, 42001)), is("00:00:42.001"));
+    }
+
     @Test
     void testValidate() {
         String systemTimeFormat = "'<b>'HH:mm:ss'</b>'";
@@ -25,16 +25,27 @@ package hudson.plugins.timestamper.format;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import hudson.plugins.timestamper.TimestamperConfig;
 import jakarta.servlet.http.Cookie;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.kohsuke.stapler.StaplerRequest2;
@@ -100,6 +111,16 @@ class TimestampFormatProviderTest {
         return request;
     }
 
+    private static StaplerRequest2 requestWithAttributes(String... cookies) {
+        StaplerRequest2 request = request(cookies);
+        Map<String, Object> attributes = new HashMap<>();
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request)
+                .setAttribute(anyString(), any());
+        when(request.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.getArgument(0)));
+        return request;
+    }
+
     private static SystemTimestampFormat system() {
         return new SystemTimestampFormat(SYSTEM_TIME_FORMAT, Optional.empty(), Locale.ENGLISH);
     }
@@ -116,6 +137,37 @@ class TimestampFormatProviderTest {
         return EmptyTimestampFormat.INSTANCE;
     }
 
+    @Test
+    void testGetRemembersFormatForRequest() {
+        TimestamperConfig config = mock(TimestamperConfig.class);
+        when(config.getSystemTimeFormat()).thenReturn(SYSTEM_TIME_FORMAT);
+        when(config.getElapsedTimeFormat()).thenReturn(ELAPSED_TIME_FORMAT);
+        StaplerRequest2 request = requestWithAttributes("jenkins-timestamper=system");
+
+        TimestampFormat format = TimestampFormatProvider.get(config, request, Locale.ENGLISH);
+        assertThat(format, is(system()));
+        assertThat(TimestampFormatProvider.get(config, request, Locale.ENGLISH), is(sameInstance(format)));
+        verify(request, times(1)).getCookies();
+
+        TimestampFormat otherLocale = TimestampFormatProvider.get(config, request, Locale.GERMAN);
+        assertThat(otherLocale, is(not(sameInstance(format))));
+    }
+
+    @Test
+    void testGetAfterConfigurationChange() {
+        TimestamperConfig config = mock(TimestamperConfig.class);
+        when(config.getSystemTimeFormat()).thenReturn(SYSTEM_TIME_FORMAT);
+        when(config.getElapsedTimeFormat()).thenReturn(ELAPSED_TIME_FORMAT);
+        StaplerRequest2 request = requestWithAttributes("jenkins-timestamper=system");
+        TimestampFormatProvider.get(config, request, Locale.ENGLISH);
+
+        when(config.getConfigVersion()).thenReturn(1L);
+        when(config.getSystemTimeFormat()).thenReturn("mm:ss");
+        assertThat(
+                TimestampFormatProvider.get(config, request, Locale.ENGLISH),
+                is(new SystemTimestampFormat("mm:ss", Optional.empty(), Locale.ENGLISH)));
+    }
+
     @ParameterizedTest
     @MethodSource("data")
     void testGet(StaplerRequest2 request, TimestampFormat expectedTimestampFormat) {
@@ -0,0 +1,120 @@
+package hudson.plugins.timestamper.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import java.io.File;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link LiveTimestamps} class. */
+class LiveTimestampsTest {
+
+    @TempDir
+    private File folder;
+
+    private Path timestampsFile;
+
+    private LiveTimestamps liveTimestamps;
+
+    @BeforeEach
+    void setUp() {
+        timestampsFile = folder.toPath().resolve("timestamper").resolve("timestamps");
+        liveTimestamps = LiveTimestamps.register(timestampsFile, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        liveTimestamps.unregister();
+    }
+
+    @Test
+    void testRegister() {
+        assertThat(LiveTimestamps.get(timestampsFile), is(sameInstance(liveTimestamps)));
+
+        LiveTimestamps replacement = LiveTimestamps.register(timestampsFile);
+        assertThat(LiveTimestamps.get(timestampsFile), is(sameInstance(replacement)));
+        liveTimestamps.unregister();
+        assertThat(LiveTimestamps.get(timestampsFile), is(sameInstance(replacement)));
+
+        replacement.unregister();
+        assertThat(LiveTimestamps.get(timestampsFile), is(nullValue()));
+    }
+
+    @Test
+    void testGetForBuild() {
+        Run<?, ?> build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(folder);
+
+        when(build.isBuilding()).thenReturn(true);
+        assertThat(LiveTimestamps.get(build), is(sameInstance(liveTimestamps)));
+
+        when(build.isBuilding()).thenReturn(false);
+        assertThat(LiveTimestamps.get(build), is(nullValue()));
+    }
+
+    @Test
+    void testGetTimestamp() {
+        liveTimestamps.record(10, 1, true, 0, 1, 1, 1001);
+        liveTimestamps.record(15, 1, false, 0, 2, 2, 1002);
+        liveTimestamps.record(20, 2, true, 0, 2, 0, 0);
+        liveTimestamps.record(30, 4, true, 0, 4, 3, 1003);
+
+        assertThat(liveTimestamps.entryCount(), is(4L));
+        assertThat(liveTimestamps.get(0), is(new Timestamp(1, 1001)));
+        assertThat(liveTimestamps.get(1), is(new Timestamp(2, 1002)));
+        assertThat(liveTimestamps.get(2), is(new Timestamp(3, 1003)));
+        assertThat(liveTimestamps.get(3), is(new Timestamp(3, 1003)));
+        assertThat(liveTimestamps.get(4), is(nullValue()));
+        assertThat(liveTimestamps.contains(0), is(true));
+        assertThat(liveTimestamps.contains(4), is(true));
+        assertThat(liveTimestamps.contains(5), is(false));
+    }
+
+    @Test
+    void testGetTimestampAfterRingBufferIsFull() {
+        for (int i = 0; i < 10; i++) {
+            liveTimestamps.record(10 * (i + 1), i + 1, true, 0, i + 1, i, 1000 + i);
+        }
+
+        // The last four writes are remembered, and the first of those only tells where the others start.
+        assertThat(liveTimestamps.entryCount(), is(10L));
+        assertThat(liveTimestamps.get(6), is(nullValue()));
+        assertThat(liveTimestamps.get(7), is(new Timestamp(7, 1007)));
+        assertThat(liveTimestamps.get(9), is(new Timestamp(9, 1009)));
+        assertThat(liveTimestamps.get(10), is(nullValue()));
+        assertThat(liveTimestamps.contains(6), is(false));
+        assertThat(liveTimestamps.contains(7), is(true));
+    }
+
+    @Test
+    void testFloor() {
+        assertThat(liveTimestamps.floor(100), is(nullValue()));
+
+        liveTimestamps.record(10, 1, true, 101, 1, 1, 1001);
+        liveTimestamps.record(15, 1, false, 0, 2, 2, 1002);
+        liveTimestamps.record(20, 2, true, 102, 2, 0, 0);
+
+        assertThat(liveTimestamps.floor(10), is(nullValue()));
+        assertLineStart(liveTimestamps.floor(11), 10, 1, 101);
+        assertLineStart(liveTimestamps.floor(20), 10, 1, 101);
+        assertLineStart(liveTimestamps.floor(21), 20, 2, 102);
+        assertLineStart(liveTimestamps.floor(Long.MAX_VALUE), 20, 2, 102);
+    }
+
+    private static void assertLineStart(
+            LiveTimestamps.LineStart lineStart, long position, long lineNumber, int fingerprint) {
+        assertThat(lineStart.position, is(position));
+        assertThat(lineStart.lineNumber, is(lineNumber));
+        assertThat(lineStart.fingerprint, is(fingerprint));
+    }
+}
@@ -0,0 +1,71 @@
+package hudson.plugins.timestamper.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for the {@link LogFingerprint} class. */
+class LogFingerprintTest {
+
+    private static final byte[] LOG =
+            "line 1\nline 2\nline 3 is a longer line than the others\nline 4\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void testFingerprintSpanningWrites() {
+        int[] writes = {3, 1, 20, 2, 30};
+        LogFingerprint fingerprint = new LogFingerprint();
+        int off = 0;
+        for (int len : writes) {
+            for (int end = off; end <= off + len; end++) {
+                assertThat(fingerprint.fingerprint(LOG, off, end), is(fingerprintOf(end)));
+            }
+            fingerprint.update(LOG, off, len);
+            off += len;
+        }
+    }
+
+    @Test
+    void testSkipTo() throws Exception {
+        InputStream inputStream = new ByteArrayInputStream(LOG);
+        assertThat(LogFingerprint.skipTo(inputStream, 54, fingerprintOf(54)), is(true));
+        assertThat(inputStream.read(), is((int) 'l'));
+        assertThat(inputStream.read(), is((int) 'i'));
+    }
+
+    @Test
+    void testSkipToNearStart() throws Exception {
+        InputStream inputStream = new ByteArrayInputStream(LOG);
+        assertThat(LogFingerprint.skipTo(inputStream, 7, fingerprintOf(7)), is(true));
+        assertThat(inputStream.read(), is((int) 'l'));
+    }
+
+    @Test
+    void testSkipToDifferentLog() throws Exception {
+        byte[] otherLog = "line 1\nline 2\nline 3 is a longer line than the OTHERS\nline 4\n"
+                .getBytes(StandardCharsets.US_ASCII);
+        assertThat(otherLog[54 - 1], is((byte) '\n'));
+        assertThat(fingerprintOf(54), is(not(new LogFingerprint().fingerprint(otherLog, 0, 54))));
+        assertThat(LogFingerprint.skipTo(new ByteArrayInputStream(otherLog), 54, fingerprintOf(54)), is(false));
+    }
+
+    @Test
+    void testSkipToNotAtNewLine() throws Exception {
+        assertThat(LogFingerprint.skipTo(new ByteArrayInputStream(LOG), 8, fingerprintOf(8)), is(false));
+    }
+
+    @Test
+    void testSkipToPastEnd() throws Exception {
+        assertThat(
+                LogFingerprint.skipTo(new ByteArrayInputStream(LOG), LOG.length + 1, fingerprintOf(LOG.length)),
+                is(false));
+    }
+
+    private static int fingerprintOf(int position) {
+        return new LogFingerprint().fingerprint(LOG, 0, position);
+    }
+}
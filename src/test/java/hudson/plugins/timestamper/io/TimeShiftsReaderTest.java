@@ -0,0 +1,95 @@
+package hudson.plugins.timestamper.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link TimeShiftsReader} class. */
+class TimeShiftsReaderTest {
+
+    private static final long DEFAULT_TIME = -1;
+
+    @TempDir
+    private File folder;
+
+    private Run<?, ?> build;
+
+    @BeforeEach
+    void setUp() {
+        build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(folder);
+    }
+
+    @Test
+    void testNoTimeShiftsFile() throws Exception {
+        assertThat(getTimes(new TimeShiftsReader(build), 0, 1, 2), is(Arrays.asList(-1L, -1L, -1L)));
+    }
+
+    @Test
+    void testReadInOrder() throws Exception {
+        writeTimeShifts(1, 10, 2, 20, 5, 50);
+        assertThat(
+                getTimes(new TimeShiftsReader(build), 0, 1, 2, 3, 4, 5, 6),
+                is(Arrays.asList(-1L, 10L, 20L, -1L, -1L, 50L, -1L)));
+    }
+
+    @Test
+    void testReadForwardsPastTimeShifts() throws Exception {
+        writeTimeShifts(1, 10, 2, 20, 5, 50, 8, 80);
+        assertThat(getTimes(new TimeShiftsReader(build), 0, 5, 7, 8), is(Arrays.asList(-1L, 50L, -1L, 80L)));
+    }
+
+    @Test
+    void testReadBackwards() throws Exception {
+        writeTimeShifts(1, 10, 2, 20, 5, 50);
+        assertThat(
+                getTimes(new TimeShiftsReader(build), 5, 2, 1, 0, 1, 5),
+                is(Arrays.asList(50L, 20L, 10L, -1L, 10L, 50L)));
+    }
+
+    @Test
+    void testReadTimeShiftsOutOfOrder() throws Exception {
+        writeTimeShifts(5, 50, 1, 10, 5, 55);
+        assertThat(getTimes(new TimeShiftsReader(build), 0, 1, 5), is(Arrays.asList(-1L, 10L, 55L)));
+    }
+
+    @Test
+    void testIncompleteTimeShiftNotRead() throws Exception {
+        writeTimeShifts(1, 10, 2);
+        assertThat(getTimes(new TimeShiftsReader(build), 1, 2), is(Arrays.asList(10L, -1L)));
+    }
+
+    private void writeTimeShifts(long... values) throws Exception {
+        Path timeShiftsFile = TimestamperPaths.timeShiftsFile(build);
+        Files.createDirectories(Objects.requireNonNull(timeShiftsFile.getParent()));
+        try (OutputStream outputStream = Files.newOutputStream(timeShiftsFile)) {
+            byte[] buffer = new byte[10];
+            for (long value : values) {
+                int len = Varint.write(value, buffer, 0);
+                outputStream.write(buffer, 0, len);
+            }
+        }
+    }
+
+    private static List<Long> getTimes(TimeShiftsReader reader, long... entries) throws Exception {
+        List<Long> times = new ArrayList<>();
+        for (long entry : entries) {
+            times.add(reader.getTime(entry, DEFAULT_TIME));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,221 @@
+package hudson.plugins.timestamper.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link TimestampsCache} class. */
+class TimestampsCacheTest {
+
+    @TempDir
+    private File folder;
+
+    private final TimestampsCache cache = new TimestampsCache(TimestampsCache.DEFAULT_MAX_BYTES);
+
+    private static final int DEFAULT_INDEX_INTERVAL = TimestampsIndex.interval;
+
+    @Test
+    void testGet() throws Exception {
+        Run<?, ?> build = build("build");
+        writeVarints(Arrays.asList(1, 1, 1, 1, 20), TimestamperPaths.timestampsFile(build));
+        writeVarints(Arrays.asList(0, 10, 2, -10, 3, -10), TimestamperPaths.timeShiftsFile(build));
+
+        TimestampsCache.Column column = cache.get(build);
+        assertThat(timestamps(column), is(readTimestamps(build)));
+        assertThat(timestamps(column), is(Arrays.asList(t(1, 10), t(2, 11), t(3, -10), t(4, -10), t(24, 10))));
+    }
+
+    @Test
+    void testGetManyUsingIndex() throws Exception {
+        TimestampsIndex.interval = 100;
+        Run<?, ?> build = build("build");
+        try (TimestampsWriter writer = new TimestampsWriter(build)) {
+            for (int i = 0; i < 3000; i++) {
+                // shift the clock time every 500 entries
+                writer.write(i + i / 500 * 10_000L, 1);
+            }
+        }
+        assertThat(Files.isRegularFile(TimestampsIndex.indexFile(TimestamperPaths.timestampsFile(build))), is(true));
+
+        TimestampsCache.Column column = cache.get(build);
+        assertThat(column.size(), is(3000));
+        assertThat(timestamps(column), is(readTimestamps(build)));
+    }
+
+    @Test
+    void testGetManyWithoutIndex() throws Exception {
+        Run<?, ?> build = build("build");
+        writeVarints(Collections.nCopies(3000, 1), TimestamperPaths.timestampsFile(build));
+
+        TimestampsCache.Column column = cache.get(build);
+        assertThat(column.size(), is(3000));
+        assertThat(timestamps(column), is(readTimestamps(build)));
+    }
+
+    @Test
+    void testGetConcurrently() throws Exception {
+        Run<?, ?> build = build("build");
+        writeVarints(Collections.nCopies(3000, 1), TimestamperPaths.timestampsFile(build));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TimestampsCache.Column>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get(build)));
+            }
+            TimestampsCache.Column column = futures.get(0).get();
+            for (Future<TimestampsCache.Column> future : futures) {
+                assertThat(future.get(), is(sameInstance(column)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    void testGetCached() throws Exception {
+        Run<?, ?> build = build("build");
+        writeVarints(Arrays.asList(1, 1, 1), TimestamperPaths.timestampsFile(build));
+
+        TimestampsCache.Column column = cache.get(build);
+        assertThat(cache.get(build), is(sameInstance(column)));
+        assertThat(cache.size(), is(1));
+        assertThat(cache.bytes(), is(column.bytes()));
+    }
+
+    @Test
+    void testGetAfterFileChanged() throws Exception {
+        Run<?, ?> build = build("build");
+        Path timestampsFile = TimestamperPaths.timestampsFile(build);
+        writeVarints(Arrays.asList(1, 1, 1), timestampsFile);
+        TimestampsCache.Column column = cache.get(build);
+
+        Files.write(timestampsFile, new byte[] {1}, StandardOpenOption.APPEND);
+        TimestampsCache.Column changed = cache.get(build);
+        assertThat(changed, is(not(sameInstance(column))));
+        assertThat(timestamps(changed), is(Arrays.asList(t(1, 1), t(2, 2), t(3, 3), t(4, 4))));
+        assertThat(cache.size(), is(1));
+        assertThat(cache.bytes(), is(changed.bytes()));
+    }
+
+    @Test
+    void testGetWhileBuilding() throws Exception {
+        Run<?, ?> build = build("build");
+        when(build.isBuilding()).thenReturn(true);
+        writeVarints(Arrays.asList(1, 1, 1), TimestamperPaths.timestampsFile(build));
+        assertThat(cache.get(build), is(nullValue()));
+    }
+
+    @Test
+    void testGetWithoutTimestampsFile() throws Exception {
+        assertThat(cache.get(build("build")), is(nullValue()));
+    }
+
+    @Test
+    void testGetTooLarge() throws Exception {
+        Run<?, ?> build = build("build");
+        writeVarints(Arrays.asList(1, 1, 1), TimestamperPaths.timestampsFile(build));
+        assertThat(new TimestampsCache(400).get(build), is(nullValue()));
+    }
+
+    @Test
+    void testGetDisabled() throws Exception {
+        Run<?, ?> build = build("build");
+        writeVarints(Arrays.asList(1, 1, 1), TimestamperPaths.timestampsFile(build));
+        assertThat(new TimestampsCache(0).get(build), is(nullValue()));
+    }
+
+    @Test
+    void testEvictLeastRecentlyUsed() throws Exception {
+        TimestampsCache cache = new TimestampsCache(700);
+        List<Run<?, ?>> builds = new ArrayList<>();
+        List<TimestampsCache.Column> columns = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Run<?, ?> build = build("build" + i);
+            writeVarints(Arrays.asList(1, 1, 1, 1), TimestamperPaths.timestampsFile(build));
+            builds.add(build);
+            columns.add(cache.get(build));
+            if (i == 3) {
+                // use the first build again
+                assertThat(cache.get(builds.get(0)), is(sameInstance(columns.get(0))));
+            }
+            assertThat(cache.bytes(), is(lessThanOrEqualTo(700L)));
+        }
+
+        assertThat(cache.get(builds.get(0)), is(sameInstance(columns.get(0))));
+        assertThat(cache.get(builds.get(4)), is(sameInstance(columns.get(4))));
+        assertThat(cache.get(builds.get(1)), is(not(sameInstance(columns.get(1)))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TimestampsIndex.interval = DEFAULT_INDEX_INTERVAL;
+    }
+
+    private Run<?, ?> build(String name) {
+        Run<?, ?> build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(new File(folder, name));
+        return build;
+    }
+
+    private static void writeVarints(List<Integer> data, Path file) throws IOException {
+        Files.createDirectories(Objects.requireNonNull(file.getParent()));
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[10];
+            for (Integer value : data) {
+                int len = Varint.write(value, buffer, 0);
+                outputStream.write(buffer, 0, len);
+            }
+        }
+    }
+
+    private static List<Timestamp> timestamps(TimestampsCache.Column column) {
+        List<Timestamp> timestamps = new ArrayList<>();
+        for (int entry = 0; entry < column.size(); entry++) {
+            timestamps.add(column.get(entry));
+        }
+        return timestamps;
+    }
+
+    private static List<Timestamp> readTimestamps(Run<?, ?> build) throws IOException {
+        List<Timestamp> timestamps = new ArrayList<>();
+        try (TimestampsReader reader = new TimestampsReader(build)) {
+            Optional<Timestamp> timestamp;
+            while ((timestamp = reader.read()).isPresent()) {
+                timestamps.add(timestamp.get());
+            }
+        }
+        return timestamps;
+    }
+
+    private static Timestamp t(long elapsedMillis, long millisSinceEpoch) {
+        return new Timestamp(elapsedMillis, millisSinceEpoch);
+    }
+}
@@ -24,6 +24,7 @@
 package hudson.plugins.timestamper.io;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -31,7 +32,12 @@ import static org.mockito.Mockito.when;
 import hudson.model.Run;
 import hudson.plugins.timestamper.Timestamp;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -53,6 +59,8 @@ class TimestampsIOTest {
 
     private TimestampsReader reader;
 
+    private static final int DEFAULT_INDEX_INTERVAL = TimestampsIndex.interval;
+
     @BeforeEach
     void setUp() throws Exception {
         build = mock(Run.class);
@@ -67,6 +75,7 @@ class TimestampsIOTest {
     void tearDown() throws Exception {
         reader.close();
         writer.close();
+        TimestampsIndex.interval = DEFAULT_INDEX_INTERVAL;
     }
 
     @Test
@@ -81,4 +90,131 @@ class TimestampsIOTest {
         writer.write(5, 1);
         assertThat(reader.read(), is(Optional.of(new Timestamp(4, 5))));
     }
+
+    @Test
+    void testSkipUsingIndex() throws Exception {
+        TimestampsIndex.interval = 3;
+        writeTimestamps();
+        assertThat(Files.isRegularFile(TimestampsIndex.indexFile(TimestamperPaths.timestampsFile(build))), is(true));
+        List<Timestamp> allTimestamps = readAll(new TimestampsReader(build));
+        assertThat(allTimestamps, hasSize(15));
+
+        for (int count = 0; count <= allTimestamps.size() + 1; count++) {
+            try (TimestampsReader indexedReader = new TimestampsReader(build)) {
+                indexedReader.skip(count);
+                assertThat(
+                        readAll(indexedReader),
+                        is(allTimestamps.subList(Math.min(count, allTimestamps.size()), allTimestamps.size())));
+            }
+        }
+    }
+
+    @Test
+    void testSkipTwiceUsingIndex() throws Exception {
+        TimestampsIndex.interval = 3;
+        writeTimestamps();
+        List<Timestamp> allTimestamps = readAll(new TimestampsReader(build));
+
+        reader.skip(2);
+        reader.skip(5);
+        assertThat(readAll(reader), is(allTimestamps.subList(7, allTimestamps.size())));
+    }
+
+    @Test
+    void testGetAbsUsingIndex() throws Exception {
+        TimestampsIndex.interval = 3;
+        writeTimestamps();
+
+        for (int lineNumber = -17; lineNumber < 0; lineNumber++) {
+            try (TimestampsReader indexedReader = new TimestampsReader(build)) {
+                assertThat(indexedReader.getAbs(lineNumber), is(Math.max(15 + lineNumber, 0)));
+            }
+        }
+    }
+
+    @Test
+    void testSeekFromEndUsingIndex() throws Exception {
+        TimestampsIndex.interval = 3;
+        writeTimestamps();
+        assertSeekFromEnd(readAll(new TimestampsReader(build)));
+    }
+
+    @Test
+    void testSeekFromEndWithoutIndex() throws Exception {
+        TimestampsIndex.interval = 3;
+        writeTimestamps();
+        Files.delete(TimestampsIndex.indexFile(TimestamperPaths.timestampsFile(build)));
+        assertSeekFromEnd(readAll(new TimestampsReader(build)));
+    }
+
+    @Test
+    void testSeekFromEndWithIncompleteTimestamp() throws Exception {
+        writeTimestamps();
+        Files.write(TimestamperPaths.timestampsFile(build), new byte[] {(byte) 0x80}, StandardOpenOption.APPEND);
+        assertSeekFromEnd(readAll(new TimestampsReader(build)));
+    }
+
+    @Test
+    void testSeekFromEndOfLargeFile() throws Exception {
+        TimestampsIndex.interval = 1000;
+        Random random = new Random(0);
+        long time = 1;
+        for (int i = 0; i < 10_000; i++) {
+            time += random.nextInt(100_000);
+            writer.write(time, 1);
+        }
+        List<Timestamp> allTimestamps = readAll(new TimestampsReader(build));
+        assertThat(allTimestamps, hasSize(10_000));
+
+        for (int count : new int[] {0, 1, 999, 1000, 1001, 5000, 9999, 10_000, 10_001}) {
+            try (TimestampsReader indexedReader = new TimestampsReader(build)) {
+                int entry = Math.max(allTimestamps.size() - count, 0);
+                assertThat(indexedReader.seekFromEnd(count), is(entry));
+                assertThat(readAll(indexedReader), is(allTimestamps.subList(entry, allTimestamps.size())));
+            }
+        }
+    }
+
+    private void assertSeekFromEnd(List<Timestamp> allTimestamps) throws Exception {
+        assertThat(allTimestamps, hasSize(15));
+        for (int count = 0; count <= allTimestamps.size() + 1; count++) {
+            try (TimestampsReader tailReader = new TimestampsReader(build)) {
+                int entry = Math.max(allTimestamps.size() - count, 0);
+                assertThat(tailReader.seekFromEnd(count), is(entry));
+                assertThat(readAll(tailReader), is(allTimestamps.subList(entry, allTimestamps.size())));
+            }
+        }
+    }
+
+    @Test
+    void testSkipWithoutIndex() throws Exception {
+        TimestampsIndex.interval = 3;
+        writeTimestamps();
+        List<Timestamp> allTimestamps = readAll(new TimestampsReader(build));
+        Files.delete(TimestampsIndex.indexFile(TimestamperPaths.timestampsFile(build)));
+
+        reader.skip(10);
+        assertThat(readAll(reader), is(allTimestamps.subList(10, allTimestamps.size())));
+    }
+
+    private void writeTimestamps() throws Exception {
+        writer.write(2, 1);
+        writer.write(5, 4);
+        writer.write(6, 1);
+        writer.write(10, 2);
+        writer.write(11, 1);
+        writer.write(20, 5);
+        writer.write(21, 1);
+    }
+
+    private static List<Timestamp> readAll(TimestampsReader reader) throws Exception {
+        List<Timestamp> timestamps = new ArrayList<>();
+        try (reader) {
+            Optional<Timestamp> timestamp;
+            while ((timestamp = reader.read()).isPresent()) {
+                timestamps.add(timestamp.get());
+            }
+        }
+        return timestamps;
+    }
 }
@@ -25,6 +25,7 @@ package hudson.plugins.timestamper.io;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -33,6 +34,8 @@ import hudson.plugins.timestamper.Timestamp;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -45,6 +48,7 @@ import java.util.Optional;
 import org.apache.commons.lang3.SerializationUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -131,8 +135,8 @@ class TimestampsReaderTest {
     /**
      * Test that the time shifts file is read correctly. The time shifts file was previously generated
      * by this plug-in to record changes to the clock, i.e. when {@link System#currentTimeMillis()}
-     * diverges from {@link System#nanoTime()}. Newer versions of this plug-in no longer create time
-     * shifts files due to JENKINS-19778.
+     * diverges from {@link System#nanoTime()}. Earlier versions of this plug-in also recorded a
+     * time shift whenever the clock did not advance exactly with the elapsed time (JENKINS-19778).
      */
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
@@ -147,6 +151,211 @@ class TimestampsReaderTest {
         writeToFile(timestampData, timestampsFile);
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReadWhileBuilding(boolean serialize) throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        timestampsReader = new TimestampsReader(build);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1));
+        timestampsReader.skip(1);
+        assertThat(readTimestamps(serialize), is(Arrays.asList(t(2, 2), t(3, 3), t(4, 4))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReadAfterFileGrows(boolean serialize) throws Exception {
+        writeTimestamps(Arrays.asList(1, 1));
+        assertThat(readTimestamps(serialize), is(Arrays.asList(t(1, 1), t(2, 2))));
+        appendToFile(Arrays.asList(1, 300), TimestamperPaths.timestampsFile(build));
+        assertThat(readTimestamps(serialize), is(Arrays.asList(t(3, 3), t(303, 303))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testIncompleteTimestampNotRead(boolean serialize) throws Exception {
+        writeTimestamps(Arrays.asList(1, 1));
+        Path timestampsFile = TimestamperPaths.timestampsFile(build);
+        Files.write(timestampsFile, new byte[] {(byte) 0x80}, StandardOpenOption.APPEND);
+        assertThat(readTimestamps(serialize), is(Arrays.asList(t(1, 1), t(2, 2))));
+        Files.write(timestampsFile, new byte[] {0x01}, StandardOpenOption.APPEND);
+        assertThat(readTimestamps(serialize), is(List.of(t(130, 130))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReadBatch(boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        timestampsReader = new TimestampsReader(build);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1, 20));
+        writeTimeShifts(Arrays.asList(0, 10, 2, -10, 3, -10));
+        long[] elapsedMillis = new long[4];
+        long[] millisSinceEpoch = new long[4];
+
+        assertThat(timestampsReader.readBatch(elapsedMillis, millisSinceEpoch, 1, 3), is(3));
+        assertThat(elapsedMillis, is(new long[] {0, 1, 2, 3}));
+        assertThat(millisSinceEpoch, is(new long[] {0, 10, 11, -10}));
+
+        assertThat(timestampsReader.readBatch(elapsedMillis, millisSinceEpoch, 0, 4), is(2));
+        assertThat(elapsedMillis, is(new long[] {4, 24, 2, 3}));
+        assertThat(millisSinceEpoch, is(new long[] {-10, 10, 11, -10}));
+
+        assertThat(timestampsReader.readBatch(elapsedMillis, millisSinceEpoch, 0, 4), is(0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReadBatchAfterSkip(boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        timestampsReader = new TimestampsReader(build);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1));
+        timestampsReader.skip(2);
+        long[] elapsedMillis = new long[4];
+        long[] millisSinceEpoch = new long[4];
+
+        assertThat(timestampsReader.readBatch(elapsedMillis, millisSinceEpoch, 0, 4), is(2));
+        assertThat(elapsedMillis, is(new long[] {3, 4, 0, 0}));
+        assertThat(millisSinceEpoch, is(new long[] {3, 4, 0, 0}));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReadFromLiveTimestamps(boolean serialize) throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1, 1));
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build), 2);
+        try {
+            for (int i = 0; i < 5; i++) {
+                // The time of the last entry differs from the file, to show where it was read from.
+                liveTimestamps.record(i + 1, i + 1, true, 0, i + 1, i == 4 ? 50 : i + 1, i == 4 ? 50 : i + 1);
+            }
+            timestampsReader = new TimestampsReader(build);
+            assertThat(readTimestamps(serialize), is(Arrays.asList(t(1, 1), t(2, 2), t(3, 3), t(4, 4), t(50, 50))));
+        } finally {
+            liveTimestamps.unregister();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReadAfterLiveTimestampsDiscarded(boolean serialize) throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1, 1));
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build), 2);
+        try {
+            for (int i = 0; i < 5; i++) {
+                liveTimestamps.record(i + 1, i + 1, true, 0, i + 1, i + 1, i + 1);
+            }
+            timestampsReader = new TimestampsReader(build);
+            timestampsReader.skip(4);
+
+            for (int i = 5; i < 7; i++) {
+                liveTimestamps.record(i + 1, i + 1, true, 0, i + 1, i + 1, i + 1);
+            }
+            appendToFile(Arrays.asList(1, 1), TimestamperPaths.timestampsFile(build));
+            assertThat(readTimestamps(serialize), is(Arrays.asList(t(5, 5), t(6, 6), t(7, 7))));
+        } finally {
+            liveTimestamps.unregister();
+        }
+    }
+
+    @Test
+    void testReadAfterLiveTimestampsDiscardedBeforeWritten() throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        writeTimestamps(List.of(1));
+        LiveTimestamps liveTimestamps = LiveTimestamps.register(TimestamperPaths.timestampsFile(build), 2);
+        try {
+            for (int i = 0; i < 3; i++) {
+                liveTimestamps.record(i + 1, i + 1, true, 0, i + 1, i + 1, i + 1);
+            }
+            timestampsReader = new TimestampsReader(build);
+            timestampsReader.skip(2);
+
+            for (int i = 3; i < 6; i++) {
+                liveTimestamps.record(i + 1, i + 1, true, 0, i + 1, i + 1, i + 1);
+            }
+            assertThat(timestampsReader.read(), is(Optional.empty()));
+
+            appendToFile(Arrays.asList(1, 1, 1), TimestamperPaths.timestampsFile(build));
+            assertThat(timestampsReader.read(), is(Optional.of(t(3, 3))));
+            assertThat(timestampsReader.read(), is(Optional.of(t(4, 4))));
+        } finally {
+            liveTimestamps.unregister();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testResumeFromPosition(boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1, 20));
+        writeTimeShifts(Arrays.asList(0, 10, 2, -10, 3, -10));
+        timestampsReader = new TimestampsReader(build);
+        timestampsReader.skip(2);
+        TimestampsReader.Position position = timestampsReader.position();
+        timestampsReader.close();
+
+        timestampsReader = new TimestampsReader(build, position);
+        assertThat(readTimestamps(false), is(Arrays.asList(t(3, -10), t(4, -10), t(24, 10))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testResumeFromPositionWithoutFilePointer(boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1, 20));
+        writeTimeShifts(Arrays.asList(0, 10, 2, -10, 3, -10));
+        timestampsReader = new TimestampsReader(build, new TimestampsReader.Position(2, -1, 0, 0));
+        assertThat(readTimestamps(false), is(Arrays.asList(t(3, -10), t(4, -10), t(24, 10))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testResumeDoesNotReadPrecedingTimestamps(boolean isBuilding) throws Exception {
+        when(build.isBuilding()).thenReturn(isBuilding);
+        writeTimestamps(Arrays.asList(1, 1, 1, 1));
+        timestampsReader = new TimestampsReader(build);
+        timestampsReader.skip(2);
+        TimestampsReader.Position position = timestampsReader.position();
+        timestampsReader.close();
+
+        Path timestampsFile = TimestamperPaths.timestampsFile(build);
+        try (FileChannel channel = FileChannel.open(timestampsFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {100, 100}), 0);
+        }
+        timestampsReader = new TimestampsReader(build, position);
+        assertThat(readTimestamps(false), is(Arrays.asList(t(3, 3), t(4, 4))));
+    }
+
+    @Test
+    void testTimeShiftsReadAgainAfterFileChanged() throws Exception {
+        writeTimestamps(Arrays.asList(1, 1, 1));
+        writeTimeShifts(Arrays.asList(0, 10));
+        assertThat(readTimestamps(false), is(Arrays.asList(t(1, 10), t(2, 11), t(3, 12))));
+
+        appendToFile(Arrays.asList(1, 20), TimestamperPaths.timeShiftsFile(build));
+        timestampsReader = new TimestampsReader(build);
+        assertThat(readTimestamps(false), is(Arrays.asList(t(1, 10), t(2, 20), t(3, 21))));
+    }
+
+    @Test
+    void testReadTimeShiftWrittenWhileBuilding() throws Exception {
+        when(build.isBuilding()).thenReturn(true);
+        try (TimestampsWriter writer = new TimestampsWriter(
+                TimestamperPaths.timestampsFile(build), 0, Optional.empty(), 0, Long.MAX_VALUE, 0, 0)) {
+            writer.write(1000, 1_000_000_000L, 1);
+            timestampsReader = new TimestampsReader(build);
+            assertThat(timestampsReader.read(), is(Optional.of(t(1000, 1000))));
+
+            writer.write(500, 2_000_000_000L, 1); // clock set backwards
+            assertThat(timestampsReader.read(), is(Optional.of(t(2000, 500))));
+        }
+    }
+
+    @Test
+    void testReadBatchOutOfBounds() {
+        assertThrows(IndexOutOfBoundsException.class, () -> timestampsReader.readBatch(new long[4], new long[3], 0, 4));
+    }
+
     private void writeTimeShifts(List<Integer> timeShiftData) throws Exception {
         Path timeShiftsFile = TimestamperPaths.timeShiftsFile(build);
         writeToFile(timeShiftData, timeShiftsFile);
@@ -156,11 +365,21 @@ class TimestampsReaderTest {
         Files.createDirectories(Objects.requireNonNull(file.getParent()));
         try (OutputStream outputStream =
                 Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.APPEND)) {
-            byte[] buffer = new byte[10];
-            for (Integer value : data) {
-                int len = Varint.write(value, buffer, 0);
-                outputStream.write(buffer, 0, len);
-            }
+            writeVarints(data, outputStream);
+        }
+    }
+
+    private void appendToFile(List<Integer> data, Path file) throws Exception {
+        try (OutputStream outputStream = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            writeVarints(data, outputStream);
+        }
+    }
+
+    private void writeVarints(List<Integer> data, OutputStream outputStream) throws Exception {
+        byte[] buffer = new byte[10];
+        for (Integer value : data) {
+            int len = Varint.write(value, buffer, 0);
+            outputStream.write(buffer, 0, len);
         }
     }
 
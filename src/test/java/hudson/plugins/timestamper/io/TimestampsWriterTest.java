@@ -29,10 +29,15 @@ import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -46,12 +51,15 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import org.apache.commons.io.input.BoundedInputStream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 
 /**
  * Unit test for the {@link TimestampsWriter} class.
@@ -71,8 +79,11 @@ class TimestampsWriterTest {
 
     private TimestampsWriter timestampsWriter;
 
+    private ScheduledExecutorService flushExecutor;
+
     @BeforeEach
     void setUp() {
+        flushExecutor = mock(ScheduledExecutorService.class);
         build = mock(Run.class);
         when(build.getRootDir()).thenReturn(folder);
         timestampsFile = TimestamperPaths.timestampsFile(build);
@@ -101,7 +112,60 @@ class TimestampsWriterTest {
         timestampsWriter.write(3, 1);
         timestampsWriter.write(2, 1);
         timestampsWriter.write(1, 1);
-        assertThat(writtenTimestampData(), is(Arrays.asList(3, -1, -1)));
+        assertThat(writtenTimestampData(), is(Arrays.asList(3, 0, 0)));
+        assertThat(writtenTimeShifts(), is(Arrays.asList(1L, 2L, 2L, 1L)));
+    }
+
+    @Test
+    void testWriteWithMonotonicClock() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 0, Long.MAX_VALUE, 0, 0);
+        timestampsWriter.write(1000, 1_000_000_000L, 1);
+        timestampsWriter.write(2000, 2_000_000_000L, 1);
+        timestampsWriter.write(1500, 3_000_000_000L, 1); // clock set backwards
+        timestampsWriter.write(10000, 4_000_000_000L, 1); // clock set forwards
+        timestampsWriter.write(10900, 4_500_000_000L, 1); // clock drifted forwards
+        timestampsWriter.close();
+
+        assertThat(writtenTimestampData(), is(Arrays.asList(1000, 1000, 1000, 1000, 500)));
+        assertThat(writtenTimeShifts(), is(Arrays.asList(2L, 1500L, 3L, 10000L)));
+        assertThat(
+                readTimestamps(),
+                is(Arrays.asList(
+                        new Timestamp(1000, 1000),
+                        new Timestamp(2000, 2000),
+                        new Timestamp(3000, 1500),
+                        new Timestamp(4000, 10000),
+                        new Timestamp(4500, 10500))));
+    }
+
+    @Test
+    void testWriteTimestampsResolvedBeforeWriting() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 0, Long.MAX_VALUE, 0, 0);
+        List<Timestamp> timestamps = Arrays.asList(
+                timestampsWriter.timestamp(1000, 1_000_000_000L),
+                timestampsWriter.timestamp(2900, 2_000_000_000L), // clock drifted forwards
+                timestampsWriter.timestamp(1500, 3_000_000_000L)); // clock set backwards
+        for (Timestamp timestamp : timestamps) {
+            timestampsWriter.write(timestamp, 1);
+        }
+        timestampsWriter.close();
+
+        assertThat(
+                timestamps,
+                is(Arrays.asList(
+                        new Timestamp(1000, 1000), new Timestamp(2000, 2000), new Timestamp(3000, 1500))));
+        assertThat(readTimestamps(), is(timestamps));
+    }
+
+    @Test
+    void testWriteWithMonotonicClockStartedAfterBuild() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 0, Long.MAX_VALUE, 5000, 100);
+        assertThat(timestampsWriter.elapsedMillis(1_000_000_100L), is(6000L));
+        timestampsWriter.write(6000, 1_000_000_100L, 1);
+        timestampsWriter.close();
+
+        assertThat(writtenTimestampData(), is(Collections.singletonList(6000)));
+        assertThat(Files.exists(TimestamperPaths.timeShiftsFile(build)), is(false));
     }
 
     @Test
@@ -132,6 +196,83 @@ class TimestampsWriterTest {
         assertThat(writtenTimestampData, hasSize(times));
     }
 
+    @Test
+    void testBufferedWriteHeldUntilThreshold() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 3, Long.MAX_VALUE);
+        timestampsWriter.write(1, 1);
+        timestampsWriter.write(2, 1);
+        assertThat(writtenTimestampData(), is(Collections.<Integer>emptyList()));
+        timestampsWriter.write(3, 1);
+        assertThat(writtenTimestampData(), is(Arrays.asList(1, 1, 1)));
+    }
+
+    @Test
+    void testBufferedWriteHeldUntilInterval() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 65536, 250, 0, 0, flushExecutor);
+        timestampsWriter.write(100, 1);
+        timestampsWriter.write(200, 1);
+        assertThat(writtenTimestampData(), is(Collections.<Integer>emptyList()));
+        timestampsWriter.write(250, 1);
+        assertThat(writtenTimestampData(), is(Arrays.asList(100, 100, 50)));
+    }
+
+    @Test
+    void testBufferedWriteFlushedAfterInterval() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 65536, 250, 0, 0, flushExecutor);
+        timestampsWriter.write(100, 1);
+        timestampsWriter.write(200, 1);
+        ArgumentCaptor<Runnable> scheduledFlush = ArgumentCaptor.forClass(Runnable.class);
+        verify(flushExecutor).schedule(scheduledFlush.capture(), eq(250L), eq(TimeUnit.MILLISECONDS));
+        assertThat(writtenTimestampData(), is(Collections.<Integer>emptyList()));
+
+        // No more lines are recorded, but the time-stamps are written when the interval has passed.
+        scheduledFlush.getValue().run();
+        assertThat(writtenTimestampData(), is(Arrays.asList(100, 100)));
+
+        timestampsWriter.write(300, 1);
+        verify(flushExecutor, times(2)).schedule(any(Runnable.class), eq(250L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testBufferedWriteFlushedOnClockChange() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 100, Optional.empty(), 65536, 250, 0, 0, flushExecutor);
+        timestampsWriter.write(50, 1);
+        assertThat(writtenTimestampData(), is(Collections.singletonList(0)));
+        assertThat(writtenTimeShifts(), is(Arrays.asList(0L, 50L)));
+    }
+
+    @Test
+    void testBufferedWriteFlush() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 65536, Long.MAX_VALUE);
+        timestampsWriter.write(1, 1);
+        timestampsWriter.write(6, 4);
+        timestampsWriter.flush();
+        assertThat(writtenTimestampData(), is(Arrays.asList(1, 5, 0, 0, 0)));
+    }
+
+    @Test
+    void testBufferedWriteFlushedOnClose() throws Exception {
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), 65536, Long.MAX_VALUE);
+        timestampsWriter.write(1, 1);
+        timestampsWriter.write(2, 1);
+        timestampsWriter.close();
+        assertThat(writtenTimestampData(), is(Arrays.asList(1, 1)));
+    }
+
+    @Test
+    void testBufferedWriteSameTimestampManyTimes() throws Exception {
+        int flushThreshold = 2048;
+        int times = flushThreshold * 3 + 7; // larger than the buffer
+        timestampsWriter = new TimestampsWriter(timestampsFile, 0, Optional.empty(), flushThreshold, Long.MAX_VALUE);
+        timestampsWriter.write(10000, times);
+        assertThat(Files.size(timestampsFile) % flushThreshold, is(0L));
+        timestampsWriter.close();
+        List<Integer> writtenTimestampData = writtenTimestampData();
+        assertThat(writtenTimestampData.get(0), is(10000));
+        assertThat(writtenTimestampData.subList(1, writtenTimestampData.size()), everyItem(equalTo(0)));
+        assertThat(writtenTimestampData, hasSize(times));
+    }
+
     @Test
     void testHashFile() throws Exception {
         MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
@@ -181,6 +322,29 @@ class TimestampsWriterTest {
         return timestampData;
     }
 
+    private List<Long> writtenTimeShifts() throws Exception {
+        byte[] fileContents = Files.readAllBytes(TimestamperPaths.timeShiftsFile(build));
+        BoundedInputStream inputStream = BoundedInputStream.builder()
+                .setInputStream(new ByteArrayInputStream(fileContents))
+                .get();
+        List<Long> timeShifts = new ArrayList<>();
+        while (inputStream.getCount() < fileContents.length) {
+            timeShifts.add(Varint.read(inputStream));
+        }
+        return timeShifts;
+    }
+
+    private List<Timestamp> readTimestamps() throws Exception {
+        List<Timestamp> timestamps = new ArrayList<>();
+        try (TimestampsReader reader = new TimestampsReader(build)) {
+            Optional<Timestamp> timestamp;
+            while ((timestamp = reader.read()).isPresent()) {
+                timestamps.add(timestamp.get());
+            }
+        }
+        return timestamps;
+    }
+
     private String bytesToHex(byte[] bytes) {
         final char[] hexArray = "0123456789ABCDEF".toCharArray();
 
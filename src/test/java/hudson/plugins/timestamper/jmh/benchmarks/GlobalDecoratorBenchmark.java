@@ -0,0 +1,113 @@
+package hudson.plugins.timestamper.jmh.benchmarks;
+
+import hudson.console.LineTransformationOutputStream;
+import hudson.plugins.timestamper.pipeline.GlobalDecorator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the lines per second of {@link GlobalDecorator} with the previous implementation, which
+ * formatted a {@link ZonedDateTime} and allocated a buffer for every line.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.Throughput)
+public class GlobalDecoratorBenchmark {
+
+    private static final int LINES = 1000;
+
+    private static final DateTimeFormatter UTC_MILLIS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+
+    @State(Scope.Thread)
+    public static class Streams {
+
+        byte[] lines;
+
+        OutputStream decorated;
+
+        OutputStream previous;
+
+        @Setup
+        public void setup(Blackhole blackhole) throws Exception {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < LINES; i++) {
+                text.append("+ echo line ").append(i).append('\n');
+            }
+            lines = text.toString().getBytes(StandardCharsets.UTF_8);
+            OutputStream sink = new BlackholeOutputStream(blackhole);
+            Constructor<GlobalDecorator> constructor = GlobalDecorator.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            decorated = constructor.newInstance().decorate(sink);
+            previous = new PreviousDecoratorOutputStream(sink);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void decoratorBenchmark(Streams streams) throws IOException {
+        streams.decorated.write(streams.lines);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void previousDecoratorBenchmark(Streams streams) throws IOException {
+        streams.previous.write(streams.lines);
+    }
+
+    /** The decorator as it was before the prefix was cached. */
+    private static class PreviousDecoratorOutputStream extends LineTransformationOutputStream {
+
+        private final OutputStream logger;
+
+        PreviousDecoratorOutputStream(OutputStream logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            synchronized (logger) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 + 24 + 1 + 1 + len);
+                buffer.put((byte) '[');
+                buffer.put(ZonedDateTime.now(ZoneOffset.UTC).format(UTC_MILLIS).getBytes(StandardCharsets.US_ASCII));
+                buffer.put((byte) ']');
+                buffer.put((byte) ' ');
+                buffer.put(b, 0, len);
+                logger.write(buffer.array(), 0, buffer.position());
+            }
+        }
+    }
+
+    private static class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
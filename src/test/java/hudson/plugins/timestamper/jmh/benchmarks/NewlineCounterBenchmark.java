@@ -0,0 +1,49 @@
+package hudson.plugins.timestamper.jmh.benchmarks;
+
+import hudson.plugins.timestamper.NewlineCounter;
+import java.util.Random;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the {@link NewlineCounter} implementations on 1 MiB chunks of console log with varying
+ * line lengths. Each operation examines one chunk, so the throughput in bytes per second is
+ * 1048576 divided by the reported time per operation.
+ */
+@JmhBenchmark
+public class NewlineCounterBenchmark {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class Chunk {
+
+        @Param({"1", "8", "80", "1000"})
+        public int lineLength;
+
+        byte[] bytes;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(0);
+            bytes = new byte[CHUNK_SIZE];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (i + 1) % lineLength == 0 ? NewlineCounter.NEWLINE : (byte) ('a' + random.nextInt(26));
+            }
+        }
+    }
+
+    @Benchmark
+    public int scalarBenchmark(Chunk chunk) {
+        return NewlineCounter.SCALAR.count(chunk.bytes, 0, chunk.bytes.length);
+    }
+
+    @Benchmark
+    public int wordAtATimeBenchmark(Chunk chunk) {
+        return NewlineCounter.WORD_AT_A_TIME.count(chunk.bytes, 0, chunk.bytes.length);
+    }
+}
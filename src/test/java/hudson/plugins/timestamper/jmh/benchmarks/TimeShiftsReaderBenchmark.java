@@ -0,0 +1,98 @@
+package hudson.plugins.timestamper.jmh.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import hudson.plugins.timestamper.io.TimestampsReader;
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads the time-stamps of a build with 100,000 time shifts, which were recorded by earlier versions
+ * of this plug-in when the clock changed. One line in ten has a time shift.
+ */
+@JmhBenchmark
+public class TimeShiftsReaderBenchmark {
+
+    private static final int TIME_SHIFTS = 100_000;
+
+    private static final int LINES = TIME_SHIFTS * 10;
+
+    @State(Scope.Benchmark)
+    public static class Build {
+
+        Path rootDir;
+
+        Run<?, ?> build;
+
+        @Setup
+        public void setup() throws IOException {
+            rootDir = Files.createTempDirectory("timestamper-benchmark");
+            build = mock(Run.class);
+            when(build.getRootDir()).thenReturn(rootDir.toFile());
+            when(build.getStartTimeInMillis()).thenReturn(0L);
+            try (TimestampsWriter writer = new TimestampsWriter(build)) {
+                for (int line = 0; line < LINES; line++) {
+                    writer.write(line * 7L, 1);
+                }
+            }
+            Path timeShiftsFile = TimestamperPaths.timestampsFile(build).resolveSibling("timeshifts");
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(timeShiftsFile))) {
+                for (long entry = 0; entry < LINES; entry += LINES / TIME_SHIFTS) {
+                    writeVarint(entry, outputStream);
+                    writeVarint(1_000_000_000_000L + entry * 7, outputStream);
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(rootDir.toFile());
+        }
+
+        private static void writeVarint(long value, OutputStream outputStream) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                outputStream.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            outputStream.write((int) value);
+        }
+    }
+
+    @Benchmark
+    public void readBenchmark(Build build, Blackhole blackhole) throws IOException {
+        try (TimestampsReader reader = new TimestampsReader(build.build)) {
+            Optional<Timestamp> timestamp;
+            while ((timestamp = reader.read()).isPresent()) {
+                blackhole.consume(timestamp.get().millisSinceEpoch);
+            }
+        }
+    }
+
+    @Benchmark
+    public void readTailBenchmark(Build build, Blackhole blackhole) throws IOException {
+        try (TimestampsReader reader = new TimestampsReader(build.build)) {
+            reader.seekFromEnd(100);
+            Optional<Timestamp> timestamp;
+            while ((timestamp = reader.read()).isPresent()) {
+                blackhole.consume(timestamp.get().millisSinceEpoch);
+            }
+        }
+    }
+}
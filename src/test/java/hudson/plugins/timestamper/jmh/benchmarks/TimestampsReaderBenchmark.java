@@ -0,0 +1,91 @@
+package hudson.plugins.timestamper.jmh.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.io.TimestampsReader;
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares reading a time-stamps file one {@link Timestamp} at a time with reading it in batches
+ * into primitive arrays. The {@code gc.alloc.rate.norm} value reported by the GC profiler shows
+ * the bytes allocated per operation.
+ */
+@JmhBenchmark
+public class TimestampsReaderBenchmark {
+
+    private static final int LINES = 100_000;
+
+    private static final int BATCH_SIZE = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Build {
+
+        Path rootDir;
+
+        Run<?, ?> build;
+
+        @Setup
+        public void setup() throws IOException {
+            rootDir = Files.createTempDirectory("timestamper-benchmark");
+            build = mock(Run.class);
+            when(build.getRootDir()).thenReturn(rootDir.toFile());
+            when(build.getStartTimeInMillis()).thenReturn(0L);
+            try (TimestampsWriter writer = new TimestampsWriter(build)) {
+                for (int line = 0; line < LINES; line++) {
+                    writer.write(line * 7L, 1);
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(rootDir.toFile());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+
+        final long[] elapsedMillis = new long[BATCH_SIZE];
+
+        final long[] millisSinceEpoch = new long[BATCH_SIZE];
+    }
+
+    @Benchmark
+    public void readBenchmark(Build build, Blackhole blackhole) throws IOException {
+        try (TimestampsReader reader = new TimestampsReader(build.build)) {
+            Optional<Timestamp> timestamp;
+            while ((timestamp = reader.read()).isPresent()) {
+                blackhole.consume(timestamp.get().millisSinceEpoch);
+            }
+        }
+    }
+
+    @Benchmark
+    public void readBatchBenchmark(Build build, Batch batch, Blackhole blackhole) throws IOException {
+        try (TimestampsReader reader = new TimestampsReader(build.build)) {
+            int count;
+            while ((count = reader.readBatch(batch.elapsedMillis, batch.millisSinceEpoch, 0, BATCH_SIZE)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    blackhole.consume(batch.millisSinceEpoch[i]);
+                }
+            }
+        }
+    }
+}
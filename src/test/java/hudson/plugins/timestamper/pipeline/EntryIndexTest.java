@@ -0,0 +1,163 @@
+package hudson.plugins.timestamper.pipeline;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.io.TimestamperPaths;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link EntryIndex} class. */
+class EntryIndexTest {
+
+    private static final int INTERVAL = 20;
+
+    @TempDir
+    private File folder;
+
+    private Run<?, ?> build;
+
+    private byte[] log;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(folder);
+        when(build.getLogInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(log));
+        log = log('[', ']').getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testCountEntries() throws Exception {
+        for (int position = 0; position <= log.length; position++) {
+            assertResult(EntryIndex.countEntries(build, position, INTERVAL), position);
+        }
+        assertThat(Files.size(indexFile()), is(greaterThan(0L)));
+    }
+
+    @Test
+    void testCountEntriesFromEnd() throws Exception {
+        for (int position = log.length; position >= 0; position--) {
+            assertResult(EntryIndex.countEntries(build, position, INTERVAL), position);
+        }
+        assertThat(Files.size(indexFile()), is(greaterThan(0L)));
+    }
+
+    @Test
+    void testCountEntriesWithoutIndex() throws Exception {
+        for (int position = 0; position <= log.length; position++) {
+            assertResult(EntryIndex.countEntries(build, position, Integer.MAX_VALUE), position);
+        }
+        assertThat(Files.exists(indexFile()), is(false));
+    }
+
+    @Test
+    void testCountEntriesFromIndex() throws Exception {
+        EntryIndex.countEntries(build, log.length, INTERVAL);
+
+        // Change the number of entries of each record, which is only seen if the index is used.
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile()));
+        for (int record = 0; record < index.capacity(); record += 2 * Long.BYTES + Integer.BYTES) {
+            index.putLong(record + Long.BYTES, index.getLong(record + Long.BYTES) + 100);
+        }
+        Files.write(indexFile(), index.array());
+
+        EntryIndex.Result result = EntryIndex.countEntries(build, log.length, INTERVAL);
+        assertThat(result.entries, is(expectedEntries(log.length) + 100));
+    }
+
+    @Test
+    void testIndexOfDifferentLog() throws Exception {
+        EntryIndex.countEntries(build, log.length, INTERVAL);
+
+        // The new lines of the new log are at the same positions, but it has no time-stamp prefixes.
+        log = log('(', ')').getBytes(StandardCharsets.UTF_8);
+        for (int position = 0; position <= log.length; position++) {
+            assertResult(EntryIndex.countEntries(build, position, INTERVAL), position);
+        }
+    }
+
+    @Test
+    void testLogEndingWithinPrefix() throws Exception {
+        log = "line 0\n[2026-10-".getBytes(StandardCharsets.US_ASCII);
+        for (int position = log.length - 2; position <= log.length; position++) {
+            EntryIndex.Result result = EntryIndex.countEntries(build, position, INTERVAL);
+            assertThat("known at " + position, result.known, is(false));
+            assertThat("entries at " + position, result.entries, is(1L));
+        }
+
+        // Once the rest of the line is written, the entries are known.
+        log = "line 0\n[2026-10-17T00:00:00.000Z] line 1".getBytes(StandardCharsets.US_ASCII);
+        EntryIndex.Result result = EntryIndex.countEntries(build, 10, INTERVAL);
+        assertThat(result.known, is(true));
+        assertThat(result.entries, is(1L));
+    }
+
+    @Test
+    void testLogEndingWithinLineWithoutPrefix() throws Exception {
+        log = "line 0\n[2026-10-x".getBytes(StandardCharsets.US_ASCII);
+        EntryIndex.Result result = EntryIndex.countEntries(build, log.length, INTERVAL);
+        assertThat(result.known, is(true));
+        assertThat(result.entries, is(2L));
+    }
+
+    /**
+     * A log with some lines which start with a time-stamp between the given brackets, and a last line
+     * without a new line.
+     */
+    private static String log(char open, char close) {
+        StringBuilder log = new StringBuilder();
+        for (int line = 0; line < 30; line++) {
+            if (line % 3 == 0) {
+                log.append(open).append("1970-01-01T00:00:0").append(line % 10).append(".000Z").append(close);
+            }
+            if (line % 5 != 4) {
+                log.append(" line ").append(line % 10);
+            }
+            if (line < 29) {
+                log.append('\n');
+            }
+        }
+        return log.toString();
+    }
+
+    private void assertResult(EntryIndex.Result result, int position) {
+        assertThat("known at " + position, result.known, is(true));
+        assertThat("entries at " + position, result.entries, is(expectedEntries(position)));
+        assertThat("atLineStart at " + position, result.atLineStart, is(position == 0 || log[position - 1] == '\n'));
+    }
+
+    /** Count the lines without a time-stamp prefix which start before the position. */
+    private long expectedEntries(int position) {
+        String text = new String(log, StandardCharsets.UTF_8);
+        long entries = 0;
+        int lineStart = 0;
+        while (lineStart < position) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            String line = text.substring(lineStart, lineEnd == -1 ? text.length() : lineEnd);
+            if (GlobalAnnotator.parseMillisSinceEpoch(line) == GlobalAnnotator.NOT_A_TIMESTAMP) {
+                entries++;
+            }
+            if (lineEnd == -1) {
+                break;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return entries;
+    }
+
+    private Path indexFile() {
+        return TimestamperPaths.entryIndexFile(build);
+    }
+}
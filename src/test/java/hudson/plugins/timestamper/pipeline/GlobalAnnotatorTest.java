@@ -0,0 +1,247 @@
+package hudson.plugins.timestamper.pipeline;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import hudson.MarkupText;
+import hudson.console.AnnotatedLargeText;
+import hudson.console.ConsoleAnnotator;
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.format.TimestampFormat;
+import hudson.plugins.timestamper.format.TimestampFormatProvider;
+import hudson.plugins.timestamper.io.TimestampsWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.apache.commons.lang3.SerializationUtils;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.MockedStatic;
+
+/** Unit test for the {@link GlobalAnnotator} class. */
+class GlobalAnnotatorTest {
+
+    private static final String LOG = "[1970-01-01T00:00:02.000Z] a\n"
+            + "b\n"
+            + "c\n"
+            + "[1970-01-01T00:00:05.000Z] d\n"
+            + "e\n";
+
+    private static final List<Timestamp> LOG_TIMESTAMPS = List.of(
+            new Timestamp(1000, 2000),
+            new Timestamp(2000, 3000),
+            new Timestamp(3000, 4000),
+            new Timestamp(4000, 5000),
+            new Timestamp(5000, 6000));
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void testParseTimestamp() {
+        assertThat(
+                GlobalAnnotator.parseTimestamp("[2024-02-29T13:45:07.089Z] hello", 1000),
+                is(Optional.of(new Timestamp(1709214307089L - 1000, 1709214307089L))));
+    }
+
+    @Test
+    void testParseTimestampWithoutText() {
+        assertThat(
+                GlobalAnnotator.parseTimestamp("[1970-01-01T00:00:00.000Z]", 0),
+                is(Optional.of(new Timestamp(0, 0))));
+    }
+
+    @Test
+    void testParseTimestampEquivalentToDateTimeFormatter() {
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long millisSinceEpoch = random.nextLong() % 253_402_300_800_000L;
+            if (millisSinceEpoch < 0) {
+                millisSinceEpoch = -millisSinceEpoch;
+            }
+            if (random.nextBoolean()) {
+                // Consecutive lines are usually on the same day.
+                millisSinceEpoch = 1_700_000_000_000L + random.nextInt(100_000_000);
+            }
+            String line = "["
+                    + ZonedDateTime.ofInstant(Instant.ofEpochMilli(millisSinceEpoch), ZoneOffset.UTC)
+                            .format(GlobalDecorator.UTC_MILLIS)
+                    + "] line";
+            long expected = ZonedDateTime.parse(line.substring(1, 25), GlobalDecorator.UTC_MILLIS)
+                    .toInstant()
+                    .toEpochMilli();
+            assertThat(line, expected, is(millisSinceEpoch));
+            assertThat(line, GlobalAnnotator.parseMillisSinceEpoch(line), is(millisSinceEpoch));
+        }
+    }
+
+    @Test
+    void testParseTimestampRejectsOtherLines() {
+        String[] lines = {
+            "",
+            "[Pipeline] sh",
+            "[2024-02-29T13:45:07.089Z",
+            "2024-02-29T13:45:07.089Z] hello",
+            "[2024-02-29 13:45:07.089Z] hello",
+            "[2024-02-29T13:45:07,089Z] hello",
+            "[2024-02-29T13:45:07.089+01] hello",
+            "[2024-02-29T13:45:07.0890Z] hello",
+            "[2024-2-29T13:45:07.0890Z] hello",
+            "[2024-02-29T13:4a:07.089Z] hello",
+            "[2024-02-29T13:45:-7.089Z] hello",
+            "[2023-02-29T13:45:07.089Z] hello",
+            "[2024-04-31T13:45:07.089Z] hello",
+            "[2024-00-01T13:45:07.089Z] hello",
+            "[2024-13-01T13:45:07.089Z] hello",
+            "[2024-01-00T13:45:07.089Z] hello",
+            "[2024-01-01T24:00:00.000Z] hello",
+            "[2024-01-01T23:60:00.000Z] hello",
+            "[2024-01-01T23:59:60.000Z] hello",
+        };
+        for (String line : lines) {
+            assertThat(line, GlobalAnnotator.parseTimestamp(line, 0), is(Optional.empty()));
+        }
+    }
+
+    @Test
+    void testAnnotateResolvesBuildOnce() throws Exception {
+        Run<?, ?> build = mock(Run.class);
+        when(build.getStartTimeInMillis()).thenReturn(1000L);
+        FlowExecutionOwner owner = mock(FlowExecutionOwner.class);
+        when(owner.getExecutable()).thenReturn(build);
+        FlowExecution execution = mock(FlowExecution.class);
+        when(execution.getOwner()).thenReturn(owner);
+        FlowNode node = mock(FlowNode.class);
+        when(node.getExecution()).thenReturn(execution);
+        TimestampFormat format = mock(TimestampFormat.class);
+
+        try (MockedStatic<TimestampFormatProvider> mocked = mockStatic(TimestampFormatProvider.class)) {
+            mocked.when(TimestampFormatProvider::get).thenReturn(format);
+            ConsoleAnnotator<Object> annotator = new GlobalAnnotator();
+            for (int i = 0; i < 3; i++) {
+                MarkupText text = new MarkupText("[1970-01-01T00:00:02.000Z] line " + i);
+                annotator = annotator.annotate(node, text);
+                assertThat(annotator, is(notNullValue()));
+                verify(format).markup(text, new Timestamp(1000, 2000));
+            }
+            verify(owner, times(1)).getExecutable();
+            verify(build, times(1)).getStartTimeInMillis();
+
+            // The next chunk of the console log is annotated by a deserialized copy.
+            annotator = SerializationUtils.clone((GlobalAnnotator) annotator);
+            annotator.annotate(node, new MarkupText("[1970-01-01T00:00:03.000Z] line"));
+            verify(owner, times(2)).getExecutable();
+            verify(format).markup(any(MarkupText.class), eq(new Timestamp(2000, 3000)));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testAnnotateWithTimestampsFile(boolean serialize) throws Exception {
+        Run<?, ?> build = mockBuildWithTimestampsFile();
+        assertThat(annotate(build, 0, serialize), is(LOG_TIMESTAMPS));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testAnnotateWithTimestampsFile_fromLine(boolean serialize) throws Exception {
+        Run<?, ?> build = mockBuildWithTimestampsFile();
+        assertThat(annotate(build, LOG.indexOf("c\n"), serialize), is(LOG_TIMESTAMPS.subList(2, 5)));
+        assertThat(annotate(build, LOG.indexOf("[", 1), serialize), is(LOG_TIMESTAMPS.subList(3, 5)));
+        assertThat(annotate(build, -2, serialize), is(LOG_TIMESTAMPS.subList(4, 5)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testAnnotateWithTimestampsFile_withinLine(boolean serialize) throws Exception {
+        Run<?, ?> build = mockBuildWithTimestampsFile();
+        assertThat(annotate(build, 10, serialize), is(LOG_TIMESTAMPS.subList(1, 5)));
+        assertThat(annotate(build, LOG.indexOf("b\n") + 1, serialize), is(LOG_TIMESTAMPS.subList(2, 5)));
+        assertThat(annotate(build, -3, serialize), is(LOG_TIMESTAMPS.subList(4, 5)));
+    }
+
+    @Test
+    void testAnnotateStepLogWithTimestampsFile() throws Exception {
+        Run<?, ?> build = mockBuildWithTimestampsFile();
+        FlowExecutionOwner owner = mock(FlowExecutionOwner.class);
+        when(owner.getExecutable()).thenReturn(build);
+        FlowExecution execution = mock(FlowExecution.class);
+        when(execution.getOwner()).thenReturn(owner);
+        FlowNode node = mock(FlowNode.class);
+        when(node.getExecution()).thenReturn(execution);
+
+        // The lines without a time-stamp prefix are not annotated in the log of a step.
+        ConsoleAnnotator<Object> annotator = new GlobalAnnotator.Factory().newInstance(node);
+        assertThat(
+                annotate(annotator, node, LOG.split("\n"), false),
+                is(List.of(LOG_TIMESTAMPS.get(0), LOG_TIMESTAMPS.get(3))));
+    }
+
+    /** Mock a build whose lines without a time-stamp prefix have an entry in the time-stamps file. */
+    private Run<?, ?> mockBuildWithTimestampsFile() throws Exception {
+        byte[] log = LOG.getBytes(StandardCharsets.UTF_8);
+        Run<?, ?> build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(folder);
+        when(build.getStartTimeInMillis()).thenReturn(1000L);
+        when(build.getLogInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(log));
+        AnnotatedLargeText<?> logText = mock(AnnotatedLargeText.class);
+        when(logText.length()).thenReturn((long) log.length);
+        doAnswer(invocation -> logText).when(build).getLogText();
+        try (TimestampsWriter writer = new TimestampsWriter(build)) {
+            writer.write(3000, 1);
+            writer.write(4000, 1);
+            writer.write(6000, 1);
+        }
+        return build;
+    }
+
+    /** Annotate the console log from the given position, as for the progressive console output. */
+    private static List<Timestamp> annotate(Run<?, ?> build, long logOffset, boolean serialize) {
+        int start = (int) (logOffset < 0 ? LOG.length() + logOffset : logOffset);
+        String[] lines = LOG.substring(start).split("\n");
+        return annotate(new GlobalAnnotator(logOffset), build, lines, serialize);
+    }
+
+    /** Annotate the given lines and return the time-stamps which were displayed. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Timestamp> annotate(
+            ConsoleAnnotator annotator, Object context, String[] lines, boolean serialize) {
+        List<Timestamp> timestamps = new ArrayList<>();
+        TimestampFormat format = mock(TimestampFormat.class);
+        doAnswer(invocation -> timestamps.add(invocation.getArgument(1)))
+                .when(format)
+                .markup(any(MarkupText.class), any(Timestamp.class));
+        try (MockedStatic<TimestampFormatProvider> mocked = mockStatic(TimestampFormatProvider.class)) {
+            mocked.when(TimestampFormatProvider::get).thenReturn(format);
+            for (String line : lines) {
+                if (serialize) {
+                    annotator = SerializationUtils.clone(annotator);
+                }
+                annotator = annotator.annotate(context, new MarkupText(line));
+            }
+        }
+        return timestamps;
+    }
+}
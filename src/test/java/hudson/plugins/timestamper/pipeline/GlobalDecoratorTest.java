@@ -0,0 +1,91 @@
+package hudson.plugins.timestamper.pipeline;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.plugins.timestamper.Timestamp;
+import hudson.plugins.timestamper.io.TimestampsReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for the {@link GlobalDecorator} class. */
+class GlobalDecoratorTest {
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void testDecorate() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        long before = System.currentTimeMillis();
+        try (OutputStream decorated = new GlobalDecorator().decorate(log)) {
+            for (int i = 0; i < 2000; i++) {
+                decorated.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            decorated.write(new byte[1000]);
+            decorated.write('\n');
+        }
+        long after = System.currentTimeMillis();
+
+        List<String> lines = log.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines, hasSize(2001));
+        long previous = before;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            assertThat(line, matchesPattern("\\[\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}Z\\] .*"));
+            if (i < 2000) {
+                assertThat(line.substring(27), is("line " + i));
+            } else {
+                assertThat(line.length(), is(27 + 1000));
+            }
+            Timestamp timestamp = GlobalAnnotator.parseTimestamp(line, 0).orElseThrow();
+            assertThat(timestamp.millisSinceEpoch, is(greaterThanOrEqualTo(previous)));
+            assertThat(timestamp.millisSinceEpoch, is(lessThanOrEqualTo(after)));
+            previous = timestamp.millisSinceEpoch;
+        }
+    }
+
+    @Test
+    void testDecorateWithTimestampsFile() throws Exception {
+        Run<?, ?> build = mock(Run.class);
+        when(build.getRootDir()).thenReturn(folder);
+        when(build.getExternalizableId()).thenReturn("pipeline#1");
+        when(build.getStartTimeInMillis()).thenReturn(1L);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        PipelineTimestamps.open(build);
+        try {
+            try (OutputStream decorated = new GlobalDecorator("pipeline#1").decorate(log)) {
+                decorated.write("a\nb\n".getBytes(StandardCharsets.UTF_8));
+            }
+            // e.g. a decorator running on an agent
+            try (OutputStream decorated = new GlobalDecorator("pipeline#2").decorate(log)) {
+                decorated.write("c\n".getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            PipelineTimestamps.close(build);
+        }
+
+        List<String> lines = log.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines.subList(0, 2), is(List.of("a", "b")));
+        assertThat(lines.get(2), matchesPattern("\\[\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}Z\\] c"));
+        try (TimestampsReader reader = new TimestampsReader(build)) {
+            assertThat(reader.read().isPresent(), is(true));
+            assertThat(reader.read().isPresent(), is(true));
+            assertThat(reader.read(), is(Optional.empty()));
+        }
+    }
+}
@@ -4,14 +4,19 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import hudson.model.Label;
+import hudson.plugins.timestamper.Timestamp;
 import hudson.plugins.timestamper.TimestamperApiTestUtil;
 import hudson.plugins.timestamper.TimestamperConfig;
+import hudson.plugins.timestamper.io.TimestampsReader;
 import java.io.BufferedReader;
 import java.io.StringReader;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import org.apache.commons.lang3.time.FastDateFormat;
 import org.htmlunit.WebClientUtil;
 import org.htmlunit.html.HtmlPage;
 import org.htmlunit.html.HtmlPreformattedText;
@@ -118,6 +123,63 @@ class PipelineTest {
         assertEquals(rawTimestamps, annotatedRawTimestamps);
     }
 
+    @Test
+    void globalDecoratorAnnotatorWithTimestampsFile() throws Exception {
+        TimestamperConfig config = TimestamperConfig.get();
+        config.setSystemTimeFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        config.save();
+        boolean enabled = PipelineTimestamps.ENABLED;
+        PipelineTimestamps.ENABLED = true;
+        try {
+            r.createOnlineSlave(Label.get("agent"));
+            WorkflowJob project = r.createProject(WorkflowJob.class);
+            project.setDefinition(new CpsFlowDefinition("""
+                    echo 'echo on the controller'
+                    node('agent') {
+                        echo 'echo on the agent'
+                        if (isUnix()) {
+                            sh 'echo sh on the agent'
+                        } else {
+                            bat 'echo sh on the agent'
+                        }
+                    }""", true));
+            WorkflowRun build = r.buildAndAssertSuccess(project);
+            r.assertLogContains("sh on the agent", build);
+
+            /*
+             * The time-stamp of each line of the console log is its prefix, or else the next entry
+             * of the time-stamps file.
+             */
+            FastDateFormat format = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS");
+            List<String> expectedTimestamps = new ArrayList<>();
+            int prefixed = 0;
+            int fromFile = 0;
+            try (TimestampsReader reader = new TimestampsReader(build)) {
+                for (String line : build.getLog(Integer.MAX_VALUE)) {
+                    Optional<Timestamp> timestamp = GlobalAnnotator.parseTimestamp(line, build.getStartTimeInMillis());
+                    if (timestamp.isPresent()) {
+                        prefixed++;
+                    } else {
+                        timestamp = reader.read();
+                        fromFile++;
+                    }
+                    assertTrue(timestamp.isPresent(), line);
+                    expectedTimestamps.add(format.format(timestamp.get().millisSinceEpoch));
+                }
+            }
+            assertTrue(prefixed > 0, "lines with a time-stamp prefix");
+            assertTrue(fromFile > 0, "lines with an entry in the time-stamps file");
+
+            HtmlPage page = r.createWebClient().getPage(build, "consoleFull");
+            WebClientUtil.waitForJSExec(page.getWebClient());
+            HtmlPreformattedText consoleOutput = page.getFirstByXPath("//pre[@class='console-output']");
+            List<String> annotatedTimestamps = getTimestamps(consoleOutput, "//span[@class='timestamp']");
+            assertEquals(expectedTimestamps, annotatedTimestamps, consoleOutput.asNormalizedText());
+        } finally {
+            PipelineTimestamps.ENABLED = enabled;
+        }
+    }
+
     private static List<String> getTimestamps(HtmlPreformattedText consoleOutput, String xpathExpr) {
         List<String> timestamps = new ArrayList<>();
 